@@ -0,0 +1,84 @@
+#!/usr/bin/env bash
+# ./gradlew bootJar cdsArchive && loadtest/startup.sh 10
+# Her varyantı RUNS kez başlatır. Process başlatıldıktan ilk GET /v1/user/{mail} 200 dönene kadar geçen süreyi ve o
+# andaki RSS'i ölçer, varyant başına medyan/min/max yazar. Tüm çalıştırmalar aynı dosya tabanlı H2 veritabanını
+# kullanır, kullanıcı ilk çalıştırmadan önce bir kez eklenir.
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+JAVA=${JAVA:-java}
+BOOT_JAR=${BOOT_JAR:-$(ls build/libs/secondhand-*.jar | grep -v -- '-plain.jar' | head -1)}
+CDS_DIR=${CDS_DIR:-build/cds}
+MAIL=startup@javaet.net
+DB_DIR=$(mktemp -d)
+trap 'rm -rf "$DB_DIR"' EXIT
+APP_ARGS=(--server.port="$PORT" --spring.datasource.url="jdbc:h2:file:$DB_DIR/startup" --spring.jpa.hibernate.ddl-auto=update)
+
+now_ms() {
+    if [[ -n ${EPOCHREALTIME:-} ]]; then
+        local t=${EPOCHREALTIME/[.,]/}
+        echo $((t / 1000))
+    else
+        echo $(($(date +%s%N) / 1000000))
+    fi
+}
+
+status() {
+    curl -s -o /dev/null -w '%{http_code}' "$@" || true
+}
+
+# run <çıktı> <java argümanları...> -> "ms rssKB"
+run() {
+    local start pid elapsed rss
+    start=$(now_ms)
+    "$JAVA" "$@" "${APP_ARGS[@]}" > /dev/null 2>&1 &
+    pid=$!
+    until [[ $(status "http://localhost:$PORT/v1/user/$MAIL") == 200 ]]; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "application exited before serving $MAIL" >&2
+            return 1
+        fi
+        sleep 0.01
+    done
+    elapsed=$(($(now_ms) - start))
+    rss=$(ps -o rss= -p "$pid" | tr -d ' ')
+    kill "$pid"
+    wait "$pid" || true
+    echo "$elapsed $rss"
+}
+
+seed() {
+    "$JAVA" -jar "$BOOT_JAR" "${APP_ARGS[@]}" > /dev/null 2>&1 &
+    local pid=$!
+    until [[ $(status "http://localhost:$PORT/v1/user?size=1") == 200 ]]; do sleep 0.1; done
+    status -X POST -H 'Content-Type: application/json' \
+        -d "{\"mail\":\"$MAIL\",\"firstName\":\"Startup\",\"lastName\":\"Benchmark\",\"middleName\":\"\"}" \
+        "http://localhost:$PORT/v1/user" > /dev/null
+    kill "$pid"
+    wait "$pid" || true
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { printf "median=%d min=%d max=%d", v[int((NR + 1) / 2)], v[1], v[NR] }'
+}
+
+report() {
+    local name=$1
+    shift
+    local results
+    results=$(for _ in $(seq "$RUNS"); do run "$@"; done)
+    printf '%-18s first GET ms %s  rss KB %s\n' "$name" "$(cut -d' ' -f1 <<< "$results" | median)" \
+        "$(cut -d' ' -f2 <<< "$results" | median)"
+}
+
+seed
+report default -jar "$BOOT_JAR"
+report fast-startup -jar "$BOOT_JAR" --spring.profiles.active=fast-startup
+if [[ -f $CDS_DIR/secondhand.jsa ]]; then
+    report cds -XX:SharedArchiveFile="$CDS_DIR/secondhand.jsa" -jar "$CDS_DIR/secondhand.jar"
+    report cds+fast-startup -XX:SharedArchiveFile="$CDS_DIR/secondhand.jsa" -jar "$CDS_DIR/secondhand.jar" \
+        --spring.profiles.active=fast-startup
+else
+    echo "$CDS_DIR/secondhand.jsa not found, run ./gradlew cdsArchive for the CDS variants" >&2
+fi
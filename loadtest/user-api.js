@@ -0,0 +1,28 @@
+// k6 run -e BASE_URL=http://localhost:8080 -e RATE=2000 -e USERS=100000 loadtest/user-api.js
+// Sabit bir istek hızı uygular. Böylece veritabanı yavaşladığında throughput'un mu düştüğü yoksa sadece latency'nin mi
+// arttığı görülebilir.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const USERS = parseInt(__ENV.USERS || '100000');
+
+export const options = {
+    scenarios: {
+        getUserByMail: {
+            executor: 'constant-arrival-rate',
+            rate: parseInt(__ENV.RATE || '2000'),
+            timeUnit: '1s',
+            duration: __ENV.DURATION || '2m',
+            preAllocatedVUs: 500,
+            maxVUs: 5000,
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+export default function () {
+    const i = Math.floor(Math.random() * USERS);
+    const res = http.get(`${BASE_URL}/v1/user/user${i}@javaet.net`);
+    check(res, { 'status is 200': (r) => r.status === 200 });
+}
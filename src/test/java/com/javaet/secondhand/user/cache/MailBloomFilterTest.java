@@ -0,0 +1,117 @@
+package com.javaet.secondhand.user.cache;
+
+import com.javaet.secondhand.user.dto.MailFilterStatsDto;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailBloomFilterTest {
+
+    @Test
+    void mightContain_itShouldHaveNoFalseNegativesAndFalsePositivesNearConfiguredRate() {
+        int size = 100_000;
+        MailBloomFilter filter = readyFilter(size, 0.01);
+        for(int i = 0; i < size; i++){
+            filter.add("user" + i + "@javaet.net");
+        }
+
+        for(int i = 0; i < size; i++){
+            assertTrue(filter.mightContain("user" + i + "@javaet.net"));
+        }
+        int falsePositives = 0;
+        for(int i = size; i < 2 * size; i++){
+            if(filter.mightContain("user" + i + "@javaet.net")){
+                falsePositives++;
+            }
+        }
+        double measured = (double) falsePositives / size;
+        assertTrue(measured < 0.015, "measured false positive rate: " + measured);
+        assertEquals(0.01, filter.expectedFpp(), 0.001);
+    }
+
+    @Test
+    void stats_itShouldReportSizeFromExpectedInsertionsAndFpp() {
+        MailFilterStatsDto stats = readyFilter(1_000_000, 0.01).stats();
+
+        //m = -n ln(0.01) / ln(2)^2 ~ 9.59 sayaç/mail, k = 7. 4 bit'lik sayaçlarla mail başına ~4.8 byte.
+        assertEquals(9_585_072, stats.getCounters());
+        assertEquals(7, stats.getHashFunctions());
+        assertEquals(stats.getCounters() / 2, stats.getMemoryBytes());
+    }
+
+    @Test
+    void remove_itShouldForgetMailButKeepOthers() {
+        MailBloomFilter filter = readyFilter(1000, 0.01);
+        filter.add("a@javaet.net");
+        filter.add("b@javaet.net");
+
+        filter.remove("a@javaet.net");
+
+        assertFalse(filter.mightContain("a@javaet.net"));
+        assertTrue(filter.mightContain("b@javaet.net"));
+        assertEquals(1, filter.stats().getElements());
+    }
+
+    @Test
+    void mightContain_whenNotBuiltYet_itShouldReturnTrue() {
+        MailBloomFilter filter = new MailBloomFilter(1000, 0.01);
+        assertTrue(filter.mightContain("a@javaet.net"));
+
+        filter.startBuild();
+        filter.finishBuild(false);
+        assertTrue(filter.mightContain("a@javaet.net"));
+    }
+
+    @Test
+    void remove_whileBuilding_itShouldBeIgnored() {
+        MailBloomFilter filter = new MailBloomFilter(1000, 0.01);
+        filter.startBuild();
+        filter.add("a@javaet.net");
+
+        //Tarama a'yı henüz görmemiş olabilir, çıkarmak başka mail'lerin sayaçlarını düşürebilirdi.
+        filter.remove("a@javaet.net");
+        filter.finishBuild(true);
+
+        assertTrue(filter.mightContain("a@javaet.net"));
+    }
+
+    @Test
+    void mightContain_itShouldIgnoreCaseAndAccents() {
+        MailBloomFilter filter = readyFilter(1000, 0.01);
+        filter.add("Ayşe.Yılmaz@JavaEt.net");
+
+        assertTrue(filter.mightContain("ayse.yilmaz@javaet.net"));
+        assertTrue(filter.mightContain(" AYSE.YILMAZ@JAVAET.NET"));
+    }
+
+    @Test
+    void remove_whenCounterIsSaturated_itShouldKeepMail() {
+        MailBloomFilter filter = readyFilter(1000, 0.01);
+        for(int i = 0; i < 20; i++){
+            filter.add("a@javaet.net");
+        }
+        for(int i = 0; i < 20; i++){
+            filter.remove("a@javaet.net");
+        }
+
+        assertTrue(filter.mightContain("a@javaet.net"));
+        assertTrue(filter.stats().getSaturatedCounters() > 0);
+    }
+
+    @Test
+    void mightContain_whenDisabled_itShouldAlwaysReturnTrue() {
+        MailBloomFilter filter = new MailBloomFilter(false, 1000, 0.01);
+        filter.startBuild();
+        filter.finishBuild(true);
+
+        assertTrue(filter.mightContain("a@javaet.net"));
+        assertEquals(8, filter.memoryBytes());
+    }
+
+    private static MailBloomFilter readyFilter(long expectedInsertions, double fpp){
+        MailBloomFilter filter = new MailBloomFilter(expectedInsertions, fpp);
+        filter.startBuild();
+        filter.finishBuild(true);
+        return filter;
+    }
+}
@@ -0,0 +1,106 @@
+package com.javaet.secondhand.user.cache;
+
+import com.javaet.secondhand.TestSupport;
+import com.javaet.secondhand.user.exception.UserNotFoundException;
+import com.javaet.secondhand.user.model.UserInformation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest extends TestSupport {
+
+    private UserCache userCache;
+
+    @BeforeEach
+    void setUp(){
+        userCache = new UserCache(100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testGet_whenUserIsNotCached_itShouldLoadOnceAndCountMissAndHit(){
+        String mail = "mail@javaet.net";
+        UserInformation user = generateUser(mail);
+        AtomicInteger loads = new AtomicInteger();
+
+        userCache.get(user.getMail(), key -> { loads.incrementAndGet(); return user; });
+        UserInformation result = userCache.get(user.getMail(), key -> { loads.incrementAndGet(); return user; });
+
+        assertSame(user,result);
+        assertEquals(1,loads.get());
+        assertEquals(1,userCache.stats().getHitCount());
+        assertEquals(1,userCache.stats().getMissCount());
+        assertEquals(1,userCache.stats().getSize());
+    }
+
+    @Test
+    void testInvalidate_itShouldRemoveUserByIdThroughMailIndex(){
+        UserInformation user = generateUser("mail@javaet.net");
+        userCache.put(user);
+
+        userCache.invalidate(user.getId());
+
+        AtomicInteger loads = new AtomicInteger();
+        userCache.get(user.getMail(), key -> { loads.incrementAndGet(); return user; });
+        assertEquals(1,loads.get());
+    }
+
+    @Test
+    void testInvalidate_whenIdIsNotCached_itShouldDoNothing(){
+        UserInformation user = generateUser("mail@javaet.net");
+        userCache.put(user);
+
+        userCache.invalidate(user.getId() + 1);
+
+        assertEquals(1,userCache.stats().getSize());
+    }
+
+    @Test
+    void testGet_whenMailDiffersInCase_itShouldShareOneEntryAndInvalidateIt(){
+        UserInformation user = generateUser("mail@javaet.net");
+        String upperCase = user.getMail().toUpperCase(Locale.ROOT);
+        AtomicInteger loads = new AtomicInteger();
+
+        userCache.get(upperCase, key -> { loads.incrementAndGet(); return user; });
+        userCache.get(user.getMail(), key -> { loads.incrementAndGet(); return user; });
+        assertEquals(1,loads.get());
+        assertSame(user,userCache.getIfPresent(upperCase));
+
+        userCache.invalidate(user.getId());
+
+        assertNull(userCache.getIfPresent(upperCase));
+        assertNull(userCache.getIfPresent(user.getMail()));
+    }
+
+    @Test
+    void testGet_whenUserIsInvalidatedWhileLoading_itShouldReturnLoadedUserWithoutCachingIt(){
+        UserInformation user = generateUser("mail@javaet.net");
+
+        UserInformation result = userCache.get(user.getMail(), key -> {
+            //Yükleme satırı okuduktan sonra bir yazma commit olup kullanıcıyı invalidate ediyor.
+            userCache.invalidate(user.getId());
+            return user;
+        });
+
+        assertSame(user,result);
+        assertNull(userCache.getIfPresent(user.getMail()));
+        AtomicInteger loads = new AtomicInteger();
+        userCache.get(user.getMail(), key -> { loads.incrementAndGet(); return user; });
+        assertEquals(1,loads.get());
+        assertSame(user,userCache.getIfPresent(user.getMail()));
+    }
+
+    @Test
+    void testGet_whenLoaderThrows_itShouldNotCacheAnything(){
+        assertThrows(UserNotFoundException.class, () -> userCache.get("missing@javaet.net", key -> {
+            throw new UserNotFoundException("User couldn't be found by following mail: "+key);
+        }));
+
+        assertEquals(0,userCache.stats().getSize());
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.javaet.secondhand.user.config;
+
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.dto.UserPageDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryFormatConfigTest {
+
+    private final BinaryFormatConfig config = new BinaryFormatConfig();
+    private final UserPageDto page = new UserPageDto(List.of(new UserDto("mail@javaet.net", "Ayşe", "Yılmaz", ""),
+            new UserDto("mail2@javaet.net", "Ali", "Kaya", "Can")), 2L);
+
+    @Test
+    void smile_itShouldWriteAndReadKotlinDtos() throws IOException {
+        assertRoundTrip(config.smileHttpMessageConverter(new Jackson2ObjectMapperBuilder()), MediaType.valueOf("application/x-jackson-smile"));
+    }
+
+    @Test
+    void cbor_itShouldWriteAndReadKotlinDtos() throws IOException {
+        assertRoundTrip(config.cborHttpMessageConverter(new Jackson2ObjectMapperBuilder()), MediaType.APPLICATION_CBOR);
+    }
+
+    private void assertRoundTrip(AbstractJackson2HttpMessageConverter converter, MediaType mediaType) throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(page, mediaType, output);
+
+        assertEquals(mediaType, output.getHeaders().getContentType());
+        assertEquals(page, converter.read(UserPageDto.class, new MockHttpInputMessage(output.getBodyAsBytes())));
+    }
+}
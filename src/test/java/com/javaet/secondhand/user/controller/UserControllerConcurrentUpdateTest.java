@@ -0,0 +1,79 @@
+package com.javaet.secondhand.user.controller;
+
+import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+//PUT tüm alanları değiştiriyor, aynı kullanıcıya eşzamanlı gelen PUT'larda son yazan kazanmalı, hiçbiri 500 almamalı.
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:user-concurrent-update;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+class UserControllerConcurrentUpdateTest {
+
+    private static final int UPDATES_PER_CLIENT = 50;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserInformationRepository userInformationRepository;
+
+    @Test
+    void updateUser_whenTwoClientsUpdateSameUserConcurrently_itShouldApplyBothWithoutConflict() throws Exception {
+        String mail = "concurrent@javaet.net";
+        userService.createUser(new CreateUserRequest(mail, "firstName", "lastName", ""));
+        userService.activateUser(userInformationRepository.findByMail(mail).orElseThrow().getId());
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<List<Integer>>> statuses = new ArrayList<>();
+            for(String lastName : List.of("first", "second")){
+                statuses.add(clients.submit(() -> {
+                    List<Integer> codes = new ArrayList<>();
+                    for(int i = 0; i < UPDATES_PER_CLIENT; i++){
+                        barrier.await(10, TimeUnit.SECONDS);
+                        codes.add(updateUser(mail, lastName + i));
+                    }
+                    return codes;
+                }));
+            }
+            for(Future<List<Integer>> clientStatuses : statuses){
+                clientStatuses.get(60, TimeUnit.SECONDS).forEach(status -> assertEquals(200, status));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+
+        //Aktivasyon ve 2 * UPDATES_PER_CLIENT güncelleme.
+        assertEquals(1 + 2 * UPDATES_PER_CLIENT, userInformationRepository.findByMail(mail).orElseThrow().getVersion());
+    }
+
+    private int updateUser(String mail, String lastName) throws Exception {
+        MvcResult result = mockMvc.perform(put("/v1/user/" + mail).contentType(MediaType.APPLICATION_JSON)
+                .content("{\"firstName\":\"firstName\",\"lastName\":\"" + lastName + "\",\"middleName\":\"\"}")).andReturn();
+        if(result.getRequest().isAsyncStarted()){
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result.getResponse().getStatus();
+    }
+}
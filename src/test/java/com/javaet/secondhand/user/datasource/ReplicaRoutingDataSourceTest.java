@@ -0,0 +1,112 @@
+package com.javaet.secondhand.user.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Primary ve replica için iki ayrı in-memory H2. Her birinde hangi veritabanına gidildiğini söyleyen bir satır var.
+class ReplicaRoutingDataSourceTest {
+
+    private DriverManagerDataSource primary;
+    private DriverManagerDataSource replica;
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+        new JdbcTemplate(replica).execute("CREATE TABLE replica_lag (seconds INT)");
+        new JdbcTemplate(replica).execute("INSERT INTO replica_lag VALUES (0)");
+
+        routingDataSource = new ReplicaRoutingDataSource(primary, Map.of("replica-0", replica), Duration.ofSeconds(5),
+                "SELECT seconds FROM replica_lag");
+        routingDataSource.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.unpin();
+        new JdbcTemplate(primary).execute("SHUTDOWN");
+        new JdbcTemplate(replica).execute("SHUTDOWN");
+    }
+
+    @Test
+    void readOnlyTransaction_itShouldReadFromReplica() {
+        assertEquals("replica", readOnlyTransactionTemplate.execute(status -> database()));
+        assertEquals(List.of("replica-0"), routingDataSource.getHealthyReplicas());
+    }
+
+    @Test
+    void readWriteTransactionAndNoTransaction_itShouldUsePrimary() {
+        assertEquals("primary", transactionTemplate.execute(status -> database()));
+        assertEquals("primary", database());
+    }
+
+    @Test
+    void pinnedToPrimary_itShouldReadFromPrimary() {
+        ReplicaRoutingDataSource.pinToPrimary();
+
+        assertEquals("primary", readOnlyTransactionTemplate.execute(status -> database()));
+
+        ReplicaRoutingDataSource.unpin();
+        assertEquals("replica", readOnlyTransactionTemplate.execute(status -> database()));
+    }
+
+    @Test
+    void whenReplicaLagsBehind_itShouldFailOverToPrimaryAndComeBackWhenCaughtUp() {
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 30");
+        routingDataSource.checkReplicas();
+
+        assertTrue(routingDataSource.getHealthyReplicas().isEmpty());
+        assertEquals("primary", readOnlyTransactionTemplate.execute(status -> database()));
+
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 1");
+        routingDataSource.checkReplicas();
+
+        assertEquals("replica", readOnlyTransactionTemplate.execute(status -> database()));
+    }
+
+    @Test
+    void whenReplicationIsStoppedOrReplicaIsDown_itShouldFailOverToPrimary() {
+        //Replikasyon durmuşsa MySQL Seconds_Behind_Source için NULL döner.
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = NULL");
+        routingDataSource.checkReplicas();
+        assertEquals("primary", readOnlyTransactionTemplate.execute(status -> database()));
+
+        new JdbcTemplate(replica).execute("DROP TABLE replica_lag");
+        routingDataSource.checkReplicas();
+        assertEquals("primary", readOnlyTransactionTemplate.execute(status -> database()));
+    }
+
+    private String database() {
+        return jdbcTemplate.queryForObject("SELECT name FROM which_database", String.class);
+    }
+
+    private static DriverManagerDataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE which_database (name VARCHAR(20))");
+        jdbcTemplate.update("INSERT INTO which_database VALUES (?)", name);
+        return dataSource;
+    }
+}
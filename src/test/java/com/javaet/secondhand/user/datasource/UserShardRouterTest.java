@@ -0,0 +1,61 @@
+package com.javaet.secondhand.user.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserShardRouterTest {
+
+    private final UserShardRouter router = new UserShardRouter(4, 4);
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+    }
+
+    @Test
+    void shardOfMail_itShouldIgnoreCaseAndMoveFewUsersWhenShardIsAdded() {
+        assertEquals(router.shardOf("Mail@Javaet.net"), router.shardOf("mail@javaet.net"));
+
+        //Jump hash: 4'ten 5 shard'a geçerken kullanıcılar ya yerinde kalıyor ya da yeni shard'a gidiyor.
+        UserShardRouter fiveShards = new UserShardRouter(5, 1);
+        int[] counts = new int[4];
+        int moved = 0;
+        for(int i = 0; i < 10000; i++){
+            String mail = "user" + i + "@javaet.net";
+            int shard = router.shardOf(mail);
+            counts[shard]++;
+            int newShard = fiveShards.shardOf(mail);
+            if(newShard != shard){
+                assertEquals(4, newShard);
+                moved++;
+            }
+        }
+        fiveShards.close();
+        for(int count : counts){
+            assertTrue(count > 2000 && count < 3000, "Uneven shard: " + count);
+        }
+        assertTrue(moved > 1500 && moved < 2500, "Moved: " + moved);
+    }
+
+    @Test
+    void shardOfId_itShouldDecodeEncodedIdAndRejectUnknownShards() {
+        assertEquals(42L, UserShardRouter.encodeId(42, 0));
+        assertEquals(3, router.shardOf(UserShardRouter.encodeId(42, 3)));
+        assertEquals(-1, router.shardOf(UserShardRouter.encodeId(42, 4)));
+        assertEquals(-1, router.shardOf(0L));
+    }
+
+    @Test
+    void onShards_itShouldRunOnEachShardAndReturnResultsInShardOrder() {
+        List<Integer> shards = router.onShards(List.of(0, 1, 2, 3), shard -> UserShardRouter.currentShard());
+
+        assertEquals(List.of(0, 1, 2, 3), shards);
+        assertEquals(0, UserShardRouter.currentShard());
+        assertEquals(2, (int) router.onShard(2, UserShardRouter::currentShard));
+        assertThrows(IllegalArgumentException.class, () -> router.onShard(4, () -> null));
+    }
+}
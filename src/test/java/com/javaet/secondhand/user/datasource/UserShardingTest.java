@@ -0,0 +1,121 @@
+package com.javaet.secondhand.user.datasource;
+
+import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.dto.UserPageDto;
+import com.javaet.secondhand.user.exception.UserNotFoundException;
+import com.javaet.secondhand.user.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Üç ayrı in-memory H2 shard. Schema hibernate'in shard 0 için ürettiği script'ten diğerlerine de kuruluyor.
+@SpringBootTest(properties = {
+        "user.datasource.sharding.enabled=true",
+        "user.datasource.sharding.shards[0].url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+        "user.datasource.sharding.shards[0].username=sa",
+        "user.datasource.sharding.shards[1].url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+        "user.datasource.sharding.shards[1].username=sa",
+        "user.datasource.sharding.shards[2].url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+        "user.datasource.sharding.shards[2].username=sa",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class UserShardingTest {
+
+    private static final int USERS = 30;
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserShardRouter userShardRouter;
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Test
+    void usersShouldBeSpreadOverShardsAndFoundByMailAndId() {
+        List<String> mails = createUsers("spread");
+
+        Set<Integer> usedShards = new HashSet<>();
+        for(String mail : mails){
+            int shard = userShardRouter.shardOf(mail);
+            usedShards.add(shard);
+            //Kullanıcı sadece mail'inin shard'ında var ve id'si o shard'ı gösteriyor.
+            for(int other = 0; other < userShardRouter.getShardCount(); other++){
+                List<Long> ids = shard(other).queryForList("SELECT id FROM user_information WHERE mail = ?", Long.class, mail);
+                if(other == shard){
+                    assertEquals(1, ids.size());
+                    assertEquals(shard, userShardRouter.shardOf(ids.get(0)));
+                }
+                else{
+                    assertTrue(ids.isEmpty());
+                }
+            }
+            assertEquals(mail, userService.getUserByMail(mail).getMail());
+        }
+        assertEquals(3, usedShards.size());
+
+        String mail = mails.get(0);
+        long id = idOf(mail);
+        userService.activateUser(id);
+        assertEquals(List.of(true), shard(userShardRouter.shardOf(mail))
+                .queryForList("SELECT is_active FROM user_information WHERE id = ?", Boolean.class, id));
+
+        userService.deleteUser(id);
+        assertThrows(UserNotFoundException.class, () -> userService.getUserByMail(mail));
+    }
+
+    @Test
+    void pagesShouldBeReadFromAllShardsInIdOrder() {
+        Set<String> mails = new HashSet<>(createUsers("page"));
+
+        List<UserDto> users = new ArrayList<>();
+        Long after = null;
+        do{
+            UserPageDto page = userService.getAllUser(after, 7);
+            users.addAll(page.getUsers());
+            after = page.getNextCursor();
+        }while(after != null);
+
+        List<Long> ids = new ArrayList<>();
+        users.stream().filter(user -> mails.contains(user.getMail())).forEach(user -> ids.add(idOf(user.getMail())));
+        assertEquals(USERS, ids.size());
+        List<Long> sorted = new ArrayList<>(ids);
+        sorted.sort(null);
+        assertEquals(sorted, ids);
+    }
+
+    @Test
+    void idOfUnknownShard_itShouldThrowUserNotFoundException() {
+        long id = UserShardRouter.encodeId(1, 5);
+
+        assertThrows(UserNotFoundException.class, () -> userService.deleteUser(id));
+        assertThrows(UserNotFoundException.class, () -> userService.activateUser(id));
+    }
+
+    private List<String> createUsers(String prefix) {
+        List<String> mails = new ArrayList<>();
+        for(int i = 0; i < USERS; i++){
+            String mail = prefix + i + "@javaet.net";
+            userService.createUser(new CreateUserRequest(mail, "firstName", "lastName", ""));
+            mails.add(mail);
+        }
+        return mails;
+    }
+
+    private long idOf(String mail) {
+        return shard(userShardRouter.shardOf(mail))
+                .queryForObject("SELECT id FROM user_information WHERE mail = ?", Long.class, mail);
+    }
+
+    private JdbcTemplate shard(int shard) {
+        return new JdbcTemplate(shardRoutingDataSource.getShards().get(shard));
+    }
+}
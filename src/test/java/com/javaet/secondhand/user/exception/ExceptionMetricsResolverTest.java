@@ -0,0 +1,69 @@
+package com.javaet.secondhand.user.exception;
+
+import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Exception sayaçları endpoint'e göre ayrı, endpoint ve repository timer'ları application.properties'deki percentile'larla.
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:user-metrics;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+class ExceptionMetricsResolverTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserInformationRepository userInformationRepository;
+
+    @Test
+    void userExceptions_itShouldBeCountedPerEndpoint() throws Exception {
+        userService.createUser(new CreateUserRequest("inactive@javaet.net", "firstName", "lastName", ""));
+
+        mockMvc.perform(get("/v1/user/missing@javaet.net")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/v1/user/missing@javaet.net")).andExpect(status().isNotFound());
+        mockMvc.perform(patch("/v1/user/missing@javaet.net").contentType("application/merge-patch+json")
+                .content("{\"lastName\":\"lastName2\"}")).andExpect(status().isNotFound());
+        mockMvc.perform(patch("/v1/user/inactive@javaet.net").contentType("application/merge-patch+json")
+                .content("{\"lastName\":\"lastName2\"}")).andExpect(status().isBadRequest());
+
+        assertEquals(2, exceptions("UserNotFoundException", "getUserByMail"));
+        assertEquals(1, exceptions("UserNotFoundException", "patchUser"));
+        assertEquals(1, exceptions("UserIsNotActiveException", "patchUser"));
+    }
+
+    @Test
+    void endpointAndRepositoryTimers_itShouldPublishPercentiles() throws Exception {
+        userService.createUser(new CreateUserRequest("active@javaet.net", "firstName", "lastName", ""));
+        userService.activateUser(userInformationRepository.findByMail("active@javaet.net").orElseThrow().getId());
+
+        mockMvc.perform(get("/v1/user/active@javaet.net")).andExpect(status().isOk());
+
+        Timer endpoint = meterRegistry.get("http.server.requests").tag("uri", "/v1/user/{mail}").tag("status", "200").timer();
+        assertEquals(1, endpoint.count());
+        assertEquals(3, endpoint.takeSnapshot().percentileValues().length);
+
+        Timer repository = meterRegistry.get("spring.data.repository.invocations")
+                .tag("repository", "UserInformationRepository").tag("method", "findDetachedByMail").timer();
+        assertTrue(repository.count() >= 1);
+        assertEquals(3, repository.takeSnapshot().percentileValues().length);
+    }
+
+    private double exceptions(String exception, String endpoint){
+        return meterRegistry.get("user.exceptions").tag("exception", exception).tag("endpoint", endpoint).counter().count();
+    }
+}
@@ -0,0 +1,80 @@
+package com.javaet.secondhand.user.export;
+
+import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.dto.UserExportDto;
+import com.javaet.secondhand.user.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Dosya gerçek bir Tomcat üzerinden (sendfile ile) ve Range isteğinde Spring'in Resource desteği ile indiriliyor.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.url=jdbc:h2:mem:user-export;DB_CLOSE_DELAY=-1")
+class UserExportDownloadTest {
+
+    @TempDir
+    static Path directory;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private UserService userService;
+
+    @DynamicPropertySource
+    static void exportDirectory(DynamicPropertyRegistry registry) {
+        registry.add("user.export.directory", directory::toString);
+    }
+
+    @Test
+    void completedExport_itShouldBeDownloadedAsIs() throws Exception {
+        for(int i = 0; i < 2000; i++){
+            userService.createUser(new CreateUserRequest("export" + i + "@javaet.net", "firstName" + i, "lastName" + i, ""));
+        }
+
+        ResponseEntity<UserExportDto> started = restTemplate.postForEntity("/v1/user/_exports?format=NDJSON", null, UserExportDto.class);
+        assertEquals(HttpStatus.ACCEPTED, started.getStatusCode());
+        String id = started.getBody().getId();
+        assertEquals("/v1/user/_exports/" + id, started.getHeaders().getLocation().toString());
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        UserExportDto export;
+        while((export = restTemplate.getForObject("/v1/user/_exports/" + id, UserExportDto.class)).getStatus() == UserExportStatus.RUNNING){
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+        assertEquals(UserExportStatus.COMPLETED, export.getStatus(), export.getError());
+        byte[] file = Files.readAllBytes(directory.resolve("users-" + id + ".ndjson.gz"));
+
+        ResponseEntity<byte[]> download = restTemplate.getForEntity("/v1/user/_exports/" + id + "/file", byte[].class);
+        assertEquals(HttpStatus.OK, download.getStatusCode());
+        assertEquals("application/gzip", download.getHeaders().getContentType().toString());
+        assertEquals(file.length, download.getHeaders().getContentLength());
+        assertArrayEquals(file, download.getBody());
+
+        HttpHeaders range = new HttpHeaders();
+        range.set(HttpHeaders.RANGE, "bytes=10-19");
+        ResponseEntity<byte[]> partial = restTemplate.exchange("/v1/user/_exports/" + id + "/file", HttpMethod.GET,
+                new HttpEntity<>(range), byte[].class);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, partial.getStatusCode());
+        assertEquals(10, partial.getBody().length);
+
+        restTemplate.delete("/v1/user/_exports/" + id);
+        assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity("/v1/user/_exports/" + id, String.class).getStatusCode());
+        assertFalse(Files.exists(directory.resolve("users-" + id + ".ndjson.gz")));
+    }
+}
@@ -0,0 +1,146 @@
+package com.javaet.secondhand.user.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.dto.UserExportDto;
+import com.javaet.secondhand.user.exception.UserExportInProgressException;
+import com.javaet.secondhand.user.exception.UserExportNotReadyException;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class UserExportServiceTest {
+
+    private static final long USERS = 1000;
+
+    @TempDir
+    Path directory;
+
+    private UserInformationRepository repository;
+    private UserExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UserInformationRepository.class);
+        when(repository.findMinId()).thenReturn(Optional.of(1L));
+        when(repository.findMaxId()).thenReturn(Optional.of(USERS));
+        when(repository.streamDetachedByIdBetween(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long from = invocation.getArgument(0);
+            long to = invocation.getArgument(1);
+            return LongStream.rangeClosed(from + 1, to).mapToObj(UserExportServiceTest::user);
+        });
+        exportService = new UserExportService(repository, UserShardRouter.singleShard(), mock(PlatformTransactionManager.class),
+                new ObjectMapper(), directory, 7, 3, 1, Duration.ofDays(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        exportService.close();
+    }
+
+    @Test
+    void csvExport_itShouldWriteEveryUserInIdOrderUnderOneHeader() throws IOException, InterruptedException {
+        UserExportDto export = exportService.startExport(UserExportFormat.CSV);
+        UserExportDto completed = awaitStatus(export.getId(), UserExportStatus.COMPLETED);
+
+        assertEquals(USERS, completed.getRowsWritten());
+        assertEquals(7, completed.getCompletedPartitions());
+        assertEquals(1.0, completed.getProgress());
+        Path file = exportService.getExportFile(export.getId());
+        assertEquals(Files.size(file), completed.getFileBytes());
+
+        List<String> lines = gunzip(file);
+        assertEquals("id,mail,firstName,lastName,middleName,active", lines.get(0));
+        assertEquals(USERS + 1, lines.size());
+        for(int i = 1; i <= USERS; i++){
+            assertEquals(i + ",user" + i + "@javaet.net,firstName" + i + ",lastName" + i + ",," + (i % 2 == 0), lines.get(i));
+        }
+        //Sadece export dosyası kalıyor, parçalar siliniyor.
+        try(Stream<Path> files = Files.list(directory)){
+            assertEquals(List.of(file), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void ndjsonExport_itShouldWriteOneUserPerLine() throws IOException, InterruptedException {
+        UserExportDto export = exportService.startExport(UserExportFormat.NDJSON);
+        awaitStatus(export.getId(), UserExportStatus.COMPLETED);
+
+        List<String> lines = gunzip(exportService.getExportFile(export.getId()));
+        assertEquals(USERS, lines.size());
+        ObjectMapper objectMapper = new ObjectMapper();
+        for(int i = 0; i < USERS; i++){
+            JsonNode user = objectMapper.readTree(lines.get(i));
+            assertEquals(i + 1, user.get("id").asLong());
+            assertEquals("user" + (i + 1) + "@javaet.net", user.get("mail").asText());
+        }
+    }
+
+    @Test
+    void deleteExport_whenRunning_itShouldCancelAndRemoveTemporaryFiles() throws IOException, InterruptedException {
+        //Hiç bitmeyen bir tablo.
+        when(repository.streamDetachedByIdBetween(anyLong(), anyLong()))
+                .thenAnswer(invocation -> LongStream.iterate(1, id -> id + 1).mapToObj(UserExportServiceTest::user));
+        UserExportDto export = exportService.startExport(UserExportFormat.CSV);
+        await(() -> exportService.getExport(export.getId()).getRowsWritten() > 0);
+
+        assertThrows(UserExportInProgressException.class, () -> exportService.startExport(UserExportFormat.CSV));
+        assertThrows(UserExportNotReadyException.class, () -> exportService.getExportFile(export.getId()));
+
+        exportService.deleteExport(export.getId());
+
+        awaitStatus(export.getId(), UserExportStatus.CANCELLED);
+        try(Stream<Path> files = Files.list(directory)){
+            assertEquals(0, files.count());
+        }
+    }
+
+    private UserExportDto awaitStatus(String id, UserExportStatus status) throws InterruptedException {
+        await(() -> exportService.getExport(id).getStatus() != UserExportStatus.RUNNING);
+        UserExportDto export = exportService.getExport(id);
+        assertEquals(status, export.getStatus(), export.getError());
+        return export;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while(!condition.getAsBoolean()){
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    //Art arda eklenmiş gzip member'ları GZIPInputStream tek akış olarak okuyor.
+    private static List<String> gunzip(Path file) throws IOException {
+        try(InputStream in = new GZIPInputStream(Files.newInputStream(file))){
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+        }
+    }
+
+    private static UserInformation user(long id){
+        return new UserInformation(id, "user" + id + "@javaet.net", "firstName" + id, "lastName" + id, "", id % 2 == 0, 0L);
+    }
+}
@@ -0,0 +1,105 @@
+package com.javaet.secondhand.user.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 20, 0.5, 2.0, now::get);
+
+    @Test
+    void tryAcquire_itShouldGiveLowerPrioritiesASmallerShareOfTheLimit() {
+        List<AdaptiveConcurrencyLimit.Permit> permits = new ArrayList<>();
+        for(int i = 0; i < 5; i++){
+            permits.add(limit.tryAcquire("getAllUsers", RequestPriority.BULK, false));
+        }
+
+        assertNull(limit.tryAcquire("getAllUsers", RequestPriority.BULK, false));
+        for(int i = 0; i < 4; i++){
+            assertNotNull(limit.tryAcquire("getUserByMail", RequestPriority.READ, true));
+        }
+        assertNull(limit.tryAcquire("getUserByMail", RequestPriority.READ, true));
+        assertNotNull(limit.tryAcquire("createUser", RequestPriority.WRITE, true));
+        assertNull(limit.tryAcquire("createUser", RequestPriority.WRITE, true));
+        assertEquals(10, limit.getInFlight());
+
+        limit.release(permits.get(0), false);
+        assertEquals(9, limit.getInFlight());
+    }
+
+    @Test
+    void release_whenLimitIsUsedAndLatencyIsNormal_itShouldIncreaseLimitByOne() {
+        List<AdaptiveConcurrencyLimit.Permit> permits = acquire(10);
+
+        completeAfter(permits, 10);
+
+        //İlk dört request limitin yarısı dolmadan başladı.
+        assertEquals(16, limit.getLimit());
+    }
+
+    @Test
+    void release_whenLimitIsNotUsed_itShouldKeepLimit() {
+        completeAfter(acquire(1), 10);
+        completeAfter(acquire(1), 10);
+
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    void release_whenRequestFails_itShouldDecreaseLimitMultiplicatively() {
+        limit.release(limit.tryAcquire("createUser", RequestPriority.WRITE, true), true);
+        assertEquals(5, limit.getLimit());
+
+        limit.release(limit.tryAcquire("createUser", RequestPriority.WRITE, true), true);
+        limit.release(limit.tryAcquire("createUser", RequestPriority.WRITE, true), true);
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    void release_whenLatencyExceedsEndpointBaseline_itShouldDecreaseLimit() {
+        for(int i = 0; i < 20; i++){
+            completeAfter(acquire(1), 10);
+        }
+        assertEquals(10, limit.getLimit());
+
+        //Başka bir endpoint'in kendi baseline'ı var, onun yavaş olması sinyal değil.
+        AdaptiveConcurrencyLimit.Permit slowEndpoint = limit.tryAcquire("searchUsers", RequestPriority.READ, true);
+        now.addAndGet(100);
+        limit.release(slowEndpoint, false);
+        assertEquals(10, limit.getLimit());
+
+        completeAfter(acquire(1), 25);
+        assertEquals(5, limit.getLimit());
+    }
+
+    @Test
+    void release_whenLatencyIsNotMeasured_itShouldOnlyReactToFailures() {
+        for(int i = 0; i < 20; i++){
+            completeAfter(acquire(1), 10);
+        }
+        AdaptiveConcurrencyLimit.Permit bulk = limit.tryAcquire("getUserByMail", RequestPriority.BULK, false);
+        now.addAndGet(1000);
+        limit.release(bulk, false);
+
+        assertEquals(10, limit.getLimit());
+    }
+
+    private List<AdaptiveConcurrencyLimit.Permit> acquire(int count){
+        List<AdaptiveConcurrencyLimit.Permit> permits = new ArrayList<>();
+        for(int i = 0; i < count; i++){
+            permits.add(limit.tryAcquire("getUserByMail", RequestPriority.WRITE, true));
+        }
+        return permits;
+    }
+
+    private void completeAfter(List<AdaptiveConcurrencyLimit.Permit> permits, long nanos){
+        now.addAndGet(nanos);
+        permits.forEach(permit -> limit.release(permit, false));
+    }
+}
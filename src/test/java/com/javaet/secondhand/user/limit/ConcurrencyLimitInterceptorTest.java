@@ -0,0 +1,115 @@
+package com.javaet.secondhand.user.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import javax.servlet.DispatcherType;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdaptiveConcurrencyLimit limit;
+    private ConcurrencyLimitInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        limit = new AdaptiveConcurrencyLimit(4, 2, 10, 0.5, 2.0);
+        interceptor = new ConcurrencyLimitInterceptor(limit, Map.of("importUsers", 1), Duration.ofSeconds(2));
+        interceptor.bindTo(meterRegistry);
+    }
+
+    @Test
+    void whenAdaptiveLimitIsFull_itShouldRejectWith503AndRetryAfter() throws Exception {
+        for(int i = 0; i < 4; i++){
+            assertTrue(interceptor.preHandle(request("POST"), new MockHttpServletResponse(), handler("createUser")));
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request("POST"), response, handler("createUser")));
+
+        assertEquals(503, response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+        assertEquals(1, meterRegistry.get("user.limiter.rejections").tag("reason", "limit").tag("priority", "write").counter().count());
+    }
+
+    @Test
+    void bulkEndpoints_itShouldBeRejectedBeforeWrites() throws Exception {
+        assertTrue(interceptor.preHandle(request("GET"), new MockHttpServletResponse(), handler("getAllUsers")));
+        assertTrue(interceptor.preHandle(request("GET"), new MockHttpServletResponse(), handler("getAllUsers")));
+
+        assertFalse(interceptor.preHandle(request("GET"), new MockHttpServletResponse(), handler("getAllUsers")));
+        assertTrue(interceptor.preHandle(request("POST"), new MockHttpServletResponse(), handler("createUser")));
+    }
+
+    @Test
+    void whenEndpointLimitIsFull_itShouldRejectWith429UntilPermitIsReleased() throws Exception {
+        MockHttpServletRequest first = request("POST");
+        assertTrue(interceptor.preHandle(first, new MockHttpServletResponse(), handler("importUsers")));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request("POST"), rejected, handler("importUsers")));
+        assertEquals(429, rejected.getStatus());
+        assertEquals("2", rejected.getHeader("Retry-After"));
+        assertEquals(1, limit.getInFlight());
+
+        interceptor.afterCompletion(first, new MockHttpServletResponse(), handler("importUsers"), null);
+        assertEquals(0, limit.getInFlight());
+        assertTrue(interceptor.preHandle(request("POST"), new MockHttpServletResponse(), handler("importUsers")));
+    }
+
+    @Test
+    void asyncDispatch_itShouldKeepThePermitUntilTheResponseIsWritten() throws Exception {
+        MockHttpServletRequest request = request("GET");
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), handler("getAllUsers")));
+        interceptor.afterConcurrentHandlingStarted(request, new MockHttpServletResponse(), handler("getAllUsers"));
+
+        request.setDispatcherType(DispatcherType.ASYNC);
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), handler("getAllUsers")));
+        assertEquals(1, limit.getInFlight());
+
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), handler("getAllUsers"), null);
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void whenRequestFailsWithServerError_itShouldLowerTheLimit() throws Exception {
+        MockHttpServletRequest request = request("POST");
+        interceptor.preHandle(request, new MockHttpServletResponse(), handler("createUser"));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setStatus(500);
+        interceptor.afterCompletion(request, response, handler("createUser"), null);
+
+        assertEquals(2, limit.getLimit());
+        assertEquals(2.0, meterRegistry.get("user.limiter.limit").gauge().value());
+    }
+
+    private static MockHttpServletRequest request(String method){
+        return new MockHttpServletRequest(method, "/v1/user");
+    }
+
+    private static HandlerMethod handler(String name) throws NoSuchMethodException {
+        return new HandlerMethod(new Endpoints(), Endpoints.class.getMethod(name));
+    }
+
+    static class Endpoints {
+        public void createUser(){
+        }
+
+        @EndpointPriority(RequestPriority.BULK)
+        public void getAllUsers(){
+        }
+
+        @EndpointPriority(RequestPriority.BULK)
+        public void importUsers(){
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.javaet.secondhand.user.outbox;
+
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.dto.UserChangeEventDto;
+import com.javaet.secondhand.user.dto.UserChangePageDto;
+import com.javaet.secondhand.user.dto.UserDtoConverter;
+import com.javaet.secondhand.user.exception.ChangeCursorExpiredException;
+import com.javaet.secondhand.user.model.UserChangeType;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserChangeEventRepository;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.service.UserChangeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*Relay kendi transaction'larını commit ve rollback ettiği için testler DataJpaTest'in transaction'ı dışında çalışıyor.*/
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = UserChangeRelayTest.Config.class)
+class UserChangeRelayTest {
+
+    /*UserInformationRepositoryTest'deki gibi, @Configuration değil.*/
+    @AutoConfigurationPackage(basePackages = "com.javaet.secondhand.user")
+    static class Config {
+    }
+
+    @Autowired
+    private UserInformationRepository userInformationRepository;
+
+    @Autowired
+    private UserChangeEventRepository userChangeEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final UserDtoConverter converter = new UserDtoConverter();
+    private final InMemoryUserChangeSink sink = new InMemoryUserChangeSink(100);
+    private UserChangeRelay relay;
+    private UserChangeService userChangeService;
+    private List<Long> ids;
+
+    @BeforeEach
+    void setUp() {
+        relay = new UserChangeRelay(userChangeEventRepository, sink, converter, UserShardRouter.singleShard(),
+                transactionManager, 2, Duration.ofDays(7));
+        userChangeService = new UserChangeService(userChangeEventRepository, converter, UserShardRouter.singleShard(),
+                transactionManager);
+        ids = userInformationRepository.saveAllAndFlush(IntStream.range(0, 5)
+                        .mapToObj(i -> new UserInformation("user" + i + "@javaet.net", "firstName", "lastName", "", false))
+                        .collect(Collectors.toList()))
+                .stream().map(UserInformation::getId).collect(Collectors.toList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        userChangeEventRepository.deleteAllInBatch();
+        userInformationRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void relay_itShouldPublishEventsInBatchesWithIncreasingPositions() {
+        userChangeEventRepository.insertEvents(UserChangeType.CREATED.name(), ids);
+        userInformationRepository.updateActive(ids.get(0), true);
+        userChangeEventRepository.insertEvents(UserChangeType.ACTIVATED.name(), List.of(ids.get(0)));
+
+        assertEquals(6, relay.relay());
+        assertEquals(0, relay.relay());
+
+        List<UserChangeEventDto> events = sink.getEvents();
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), events.stream().map(UserChangeEventDto::getPosition).collect(Collectors.toList()));
+        UserChangeEventDto activated = events.get(5);
+        assertEquals(UserChangeType.ACTIVATED, activated.getType());
+        assertEquals("user0@javaet.net", activated.getMail());
+        assertEquals(true, activated.getActive());
+        assertEquals(1L, activated.getVersion());
+    }
+
+    @Test
+    void relay_whenSinkFails_itShouldRetrySameEventsLater() {
+        UserChangeRelay failingRelay = new UserChangeRelay(userChangeEventRepository, events -> {
+            throw new IllegalStateException("sink is down");
+        }, converter, UserShardRouter.singleShard(), transactionManager, 10, Duration.ofDays(7));
+        userChangeEventRepository.insertEvents(UserChangeType.CREATED.name(), ids);
+
+        assertThrows(IllegalStateException.class, failingRelay::relay);
+
+        assertEquals(5, relay.relay());
+    }
+
+    @Test
+    void getChanges_itShouldPageByPositionAndRejectExpiredCursor() {
+        userChangeEventRepository.insertEvents(UserChangeType.CREATED.name(), ids);
+        relay.relay();
+
+        UserChangePageDto first = userChangeService.getChanges(null, 3);
+        UserChangePageDto second = userChangeService.getChanges(first.getNextCursor(), 3);
+        UserChangePageDto empty = userChangeService.getChanges(second.getNextCursor(), 3);
+
+        assertEquals(3, first.getChanges().size());
+        assertTrue(first.getHasMore());
+        assertEquals(2, second.getChanges().size());
+        assertFalse(second.getHasMore());
+        assertEquals(List.of(), empty.getChanges());
+        assertEquals(5L, empty.getNextCursor());
+
+        relay.deleteExpiredEvents();
+        assertEquals(5, userChangeEventRepository.count());
+        userChangeEventRepository.deletePublishedBefore(Instant.now().plusSeconds(1), 5L);
+        userChangeEventRepository.insertEvents(UserChangeType.UPDATED.name(), List.of(ids.get(1)));
+        relay.relay();
+        assertEquals(1, userChangeService.getChanges(5L, 3).getChanges().size());
+        assertEquals(2, userChangeService.getChanges(4L, 3).getChanges().size());
+        assertThrows(ChangeCursorExpiredException.class, () -> userChangeService.getChanges(3L, 3));
+    }
+}
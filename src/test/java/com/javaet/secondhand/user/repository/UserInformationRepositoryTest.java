@@ -0,0 +1,121 @@
+package com.javaet.secondhand.user.repository;
+
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.model.UserVersion;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*Sık kullanılan sorguların index kullandığını H2'nin EXPLAIN çıktısından kontrol ediyoruz. Elle yazılan
+* güncelleme sorguları da burada test ediliyor.*/
+@DataJpaTest
+@ContextConfiguration(classes = UserInformationRepositoryTest.Config.class)
+class UserInformationRepositoryTest {
+
+    /*SecondhandApplication'daki @ComponentScan slice test filtrelerini devre dışı bırakıp controller'ları da yüklüyor.
+    * Bu yüzden sadece entity ve repository'lerin bulunduğu paketi veren bir konfigürasyon kullanıyoruz. @Configuration
+    * değil, yoksa uygulamanın component scan'i bunu da buluyor.*/
+    @AutoConfigurationPackage(basePackages = "com.javaet.secondhand.user")
+    static class Config {
+    }
+
+    @Autowired
+    private UserInformationRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        repository.saveAllAndFlush(IntStream.range(0, 200)
+                .mapToObj(i -> new UserInformation("user" + i + "@javaet.net", "firstName", "lastName", "", i % 4 != 0))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void findActiveDetachedByIdGreaterThan_itShouldReturnOnlyActiveUsersInIdOrder() {
+        Long after = repository.findByMail("user10@javaet.net").orElseThrow().getId();
+
+        List<UserInformation> users = repository.findActiveDetachedByIdGreaterThan(after, PageRequest.of(0, 5));
+
+        assertEquals(List.of("user11@javaet.net", "user13@javaet.net", "user14@javaet.net", "user15@javaet.net", "user17@javaet.net"),
+                users.stream().map(UserInformation::getMail).collect(Collectors.toList()));
+    }
+
+    @Test
+    void findDetachedByIdGreaterThan_itShouldNotAddUsersToPersistenceContext() {
+        entityManager.clear();
+
+        List<UserInformation> users = repository.findDetachedByIdGreaterThan(0L, PageRequest.of(0, 10));
+
+        assertEquals(10, users.size());
+        assertEquals(0L, users.get(0).getVersion());
+        assertTrue(users.stream().noneMatch(entityManager::contains));
+        assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+    }
+
+    @Test
+    void streamAllAsDto_itShouldReturnUsersInIdOrder() {
+        try(Stream<UserDto> users = repository.streamAllAsDto()){
+            assertEquals(new UserDto("user0@javaet.net", "firstName", "lastName", ""), users.findFirst().orElseThrow());
+        }
+    }
+
+    @Test
+    void explainFindByMail_itShouldUseMailIndex() {
+        String plan = explain("select * from user_information where mail = 'user10@javaet.net'");
+
+        assertTrue(plan.contains("UX_USER_INFORMATION_MAIL"), plan);
+    }
+
+    @Test
+    void explainActiveUsersPage_itShouldUseActiveIdIndexForBothConditions() {
+        String plan = explain("select * from user_information where is_active = true and id > 10 order by id limit 51");
+
+        //H2 index ile hangi koşulların arandığını index adının yanındaki yorumda gösteriyor.
+        assertTrue(plan.matches("(?s).*IX_USER_INFORMATION_ACTIVE_ID: IS_ACTIVE = TRUE\\s+AND ID > .*"), plan);
+    }
+
+    @Test
+    void patchUser_itShouldUpdateOnlyGivenColumnsAndIncreaseVersion() {
+        Long id = repository.findByMail("user1@javaet.net").orElseThrow().getId();
+
+        int updated = repository.patchUser("user1@javaet.net", Map.of("middleName", "middleName"), new UserVersion(id, 0L));
+
+        assertEquals(1, updated);
+        assertEquals(Map.of("FIRST_NAME", "firstName", "MIDDLE_NAME", "middleName", "VERSION", 1L),
+                jdbcTemplate.queryForMap("select first_name, middle_name, version from user_information where id = ?", id));
+    }
+
+    @Test
+    void patchUser_whenVersionOrActiveDoesNotMatch_itShouldNotUpdate() {
+        Long id = repository.findByMail("user1@javaet.net").orElseThrow().getId();
+
+        assertEquals(0, repository.patchUser("user1@javaet.net", Map.of("firstName", "x"), new UserVersion(id, 1L)));
+        assertEquals(0, repository.patchUser("user0@javaet.net", Map.of("firstName", "x"), null));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from user_information where first_name = 'x'", Integer.class));
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+}
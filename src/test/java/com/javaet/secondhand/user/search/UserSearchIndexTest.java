@@ -0,0 +1,93 @@
+package com.javaet.secondhand.user.search;
+
+import com.javaet.secondhand.user.model.UserInformation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSearchIndexTest {
+
+    private UserSearchIndex userSearchIndex;
+
+    @BeforeEach
+    void setUp(){
+        userSearchIndex = new UserSearchIndex(true);
+        userSearchIndex.putAll(List.of(
+                new UserInformation(1L,"ayse.yilmaz@javaet.net","Ayşe","Yılmaz","",true),
+                new UserInformation(2L,"mehmet@javaet.net","Mehmet","Aysel","",true),
+                new UserInformation(3L,"kaya@javaet.net","Ali","Kayalı","Ayşe Nur",false),
+                new UserInformation(4L,"ali@javaet.net","Ali","Demir","",true)));
+    }
+
+    @Test
+    void testSearch_itShouldRankExactOverPrefixOverSubstringMatches(){
+        //1: ayşe tam eşleşme, 2: aysel prefix, 3: ayşe (göbek adı) tam eşleşme ama pasif
+        assertEquals(List.of(1L,3L,2L),ids(userSearchIndex.search("ayse",10,false)));
+        assertEquals(List.of(1L,2L),ids(userSearchIndex.search("AYSE",10,true)));
+    }
+
+    @Test
+    void testSearch_itShouldMatchSubstringsAndMailPrefix(){
+        assertEquals(List.of(3L),ids(userSearchIndex.search("yal",10,false)));
+        assertEquals(List.of(1L),ids(userSearchIndex.search("ayse.yil",10,false)));
+    }
+
+    @Test
+    void testSearch_whenThereAreManyTerms_allOfThemShouldMatch(){
+        assertEquals(List.of(4L),ids(userSearchIndex.search("ali dem",10,false)));
+        assertEquals(List.of(),ids(userSearchIndex.search("ali yilmaz",10,false)));
+    }
+
+    @Test
+    void testSearch_whenAllTermsAreShort_itShouldMatchNamePrefixesOnly(){
+        assertEquals(List.of(3L,4L),ids(userSearchIndex.search("al",10,false)));
+        assertEquals(List.of(),ids(userSearchIndex.search("li",10,false)));
+        assertEquals(List.of(),ids(userSearchIndex.search("a",10,false)));
+    }
+
+    @Test
+    void testSearch_itShouldReturnAtMostLimitUsers(){
+        assertEquals(List.of(3L),ids(userSearchIndex.search("ali",1,false)));
+    }
+
+    @Test
+    void testPut_whenUserIsUpdated_itShouldReplaceOldNames(){
+        userSearchIndex.put(new UserInformation(4L,"ali@javaet.net","Ali","Çelik","",true));
+
+        assertEquals(List.of(),ids(userSearchIndex.search("demir",10,false)));
+        assertEquals(List.of(4L),ids(userSearchIndex.search("celik",10,false)));
+        assertEquals(4,userSearchIndex.size());
+    }
+
+    @Test
+    void testSetActive_itShouldChangeActiveOnlyResults(){
+        userSearchIndex.setActive(List.of(3L),true);
+        userSearchIndex.setActive(List.of(4L),false);
+
+        assertEquals(List.of(3L),ids(userSearchIndex.search("ali",10,true)));
+    }
+
+    @Test
+    void testLoad_whenUserIsWrittenOrRemovedDuringBuild_itShouldNotOverwriteWithScannedVersion(){
+        UserSearchIndex index = new UserSearchIndex(true);
+        index.startBuild();
+        index.put(new UserInformation(1L,"ayse.yilmaz@javaet.net","Ayşe","Kaya","",true));
+        index.remove(2L);
+        index.load(List.of(
+                new UserInformation(1L,"ayse.yilmaz@javaet.net","Ayşe","Yılmaz","",true),
+                new UserInformation(2L,"mehmet@javaet.net","Mehmet","Aysel","",true)));
+        index.finishBuild();
+
+        assertEquals(List.of(1L),ids(index.search("kaya",10,false)));
+        assertEquals(List.of(),ids(index.search("mehmet",10,false)));
+        assertEquals(1,index.size());
+    }
+
+    private static List<Long> ids(List<UserInformation> users){
+        return users.stream().map(UserInformation::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,82 @@
+package com.javaet.secondhand.user.service;
+
+import com.javaet.secondhand.user.model.UserInformation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailLookupCoalescerTest {
+
+    private final MailLookupCoalescer coalescer = new MailLookupCoalescer();
+
+    @Test
+    void testLoad_whenMailIsAlreadyBeingLoaded_itShouldWaitForRunningQuery() throws Exception {
+        UserInformation a = new UserInformation(1L,"a@javaet.net","firstName","lastName","",true);
+        UserInformation b = new UserInformation(2L,"b@javaet.net","firstName","lastName","",true);
+        CountDownLatch firstQueryStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstQuery = new CountDownLatch(1);
+        List<Collection<String>> queries = new ArrayList<>();
+
+        CompletableFuture<Map<String, Optional<UserInformation>>> first = CompletableFuture.supplyAsync(() ->
+                coalescer.load(List.of("a@javaet.net"), mails -> {
+                    synchronized (queries) { queries.add(mails); }
+                    firstQueryStarted.countDown();
+                    await(releaseFirstQuery);
+                    return List.of(a);
+                }));
+        assertTrue(firstQueryStarted.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch secondQueryStarted = new CountDownLatch(1);
+        CompletableFuture<Map<String, Optional<UserInformation>>> second = CompletableFuture.supplyAsync(() ->
+                coalescer.load(List.of("a@javaet.net","b@javaet.net"), mails -> {
+                    synchronized (queries) { queries.add(mails); }
+                    secondQueryStarted.countDown();
+                    return List.of(b);
+                }));
+        //İkinci istek kendi sorgusunu attığında a@javaet.net'i devam eden sorgu olarak görmüş oluyor.
+        assertTrue(secondQueryStarted.await(5, TimeUnit.SECONDS));
+        releaseFirstQuery.countDown();
+
+        assertEquals(Map.of("a@javaet.net",Optional.of(a)),first.get(5, TimeUnit.SECONDS));
+        assertEquals(Map.of("a@javaet.net",Optional.of(a),"b@javaet.net",Optional.of(b)),second.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("a@javaet.net"),List.of("b@javaet.net")),queries);
+    }
+
+    @Test
+    void testLoad_whenQueryFails_itShouldReleaseMailsForNextLoad(){
+        assertThrows(IllegalStateException.class, () -> coalescer.load(List.of("a@javaet.net"), mails -> {
+            throw new IllegalStateException("db is down");
+        }));
+
+        Map<String, Optional<UserInformation>> result = coalescer.load(List.of("a@javaet.net"), mails -> List.of());
+
+        assertEquals(Map.of("a@javaet.net",Optional.empty()),result);
+    }
+
+    @Test
+    void testLoad_whenStoredMailDiffersInCase_itShouldMatchRequestedMail(){
+        UserInformation foo = new UserInformation(1L,"foo@javaet.net","firstName","lastName","",true);
+
+        Map<String, Optional<UserInformation>> result = coalescer.load(List.of("Foo@Javaet.net","bar@javaet.net"),
+                mails -> List.of(foo));
+
+        assertEquals(Map.of("Foo@Javaet.net",Optional.of(foo),"bar@javaet.net",Optional.empty()),result);
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
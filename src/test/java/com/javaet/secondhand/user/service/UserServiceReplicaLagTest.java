@@ -0,0 +1,64 @@
+package com.javaet.secondhand.user.service;
+
+import com.javaet.secondhand.user.datasource.ReplicaRoutingDataSource;
+import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*Replica ayrı bir in-memory H2, primary'den hiçbir şey almıyor. Gecikmesi 0 görünüyor, yani sağlıklı sayılıp okuma alıyor
+* ama içinde sadece testin kopyaladığı eski satırlar var.*/
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-replica-lag-primary;DB_CLOSE_DELAY=-1",
+        "user.datasource.routing.enabled=true",
+        "user.datasource.routing.lag-query=SELECT 0",
+        "user.datasource.routing.replicas[0].url=" + UserServiceReplicaLagTest.REPLICA_URL,
+        "user.datasource.routing.replicas[0].username=sa"
+})
+class UserServiceReplicaLagTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:user-replica-lag-replica;DB_CLOSE_DELAY=-1";
+    private static final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    //Uygulama açılırken yapılan okumalar da replica'ya gidebildiği için tablo context'ten önce oluşturulmalı.
+    static {
+        replica.execute("CREATE TABLE user_information (id BIGINT PRIMARY KEY, mail VARCHAR(255), first_name VARCHAR(255), " +
+                "last_name VARCHAR(255), middle_name VARCHAR(255), is_active BOOLEAN, version BIGINT)");
+    }
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserInformationRepository userInformationRepository;
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.unpin();
+    }
+
+    @Test
+    void getVersionedUserByMail_whenUserIsReadAfterWriteWhileReplicaLags_itShouldNotCacheReplicaRow() {
+        String mail = "lagging@javaet.net";
+        userService.createUser(new CreateUserRequest(mail, "firstName", "lastName", ""));
+        UserInformation created = userInformationRepository.findByMail(mail).orElseThrow();
+        //Replica kullanıcıyı aktivasyondan önceki haliyle almış, aktivasyonu henüz almamış.
+        replica.update("INSERT INTO user_information VALUES (?, ?, ?, ?, ?, ?, ?)", created.getId(), mail,
+                created.getFirstName(), created.getLastName(), created.getMiddleName(), created.getActive(),
+                created.getVersion());
+
+        userService.activateUser(created.getId());
+        String eTag = "\"" + created.getId() + "." + (created.getVersion() + 1) + "\"";
+
+        assertEquals(eTag, userService.getVersionedUserByMail(mail).getETag());
+        //Yazan client'ın sticky-window içindeki okuması, cache'den dönüyor.
+        ReplicaRoutingDataSource.pinToPrimary();
+        assertEquals(eTag, userService.getVersionedUserByMail(mail).getETag());
+    }
+}
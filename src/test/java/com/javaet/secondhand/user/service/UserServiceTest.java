@@ -1,20 +1,54 @@
 package com.javaet.secondhand.user.service;
 
 import com.javaet.secondhand.TestSupport;
+import com.javaet.secondhand.user.cache.MailBloomFilter;
+import com.javaet.secondhand.user.cache.UserCache;
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.dto.BulkImportFailureDto;
+import com.javaet.secondhand.user.dto.BulkImportResultDto;
+import com.javaet.secondhand.user.dto.BulkUpdateResultDto;
 import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.dto.PurgeProgressDto;
 import com.javaet.secondhand.user.dto.UpdateUserRequest;
+import com.javaet.secondhand.user.dto.UserBatchDto;
 import com.javaet.secondhand.user.dto.UserDto;
 import com.javaet.secondhand.user.dto.UserDtoConverter;
+import com.javaet.secondhand.user.dto.UserPageDto;
+import com.javaet.secondhand.user.dto.Versioned;
+import com.javaet.secondhand.user.exception.InvalidPatchException;
+import com.javaet.secondhand.user.exception.InvalidSearchQueryException;
+import com.javaet.secondhand.user.exception.TooManyMailsException;
+import com.javaet.secondhand.user.exception.UserAlreadyExistsException;
 import com.javaet.secondhand.user.exception.UserIsNotActiveException;
 import com.javaet.secondhand.user.exception.UserNotFoundException;
+import com.javaet.secondhand.user.exception.UserSearchDisabledException;
+import com.javaet.secondhand.user.exception.UserVersionMismatchException;
+import com.javaet.secondhand.user.model.UserChangeType;
 import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.model.UserVersion;
+import com.javaet.secondhand.user.repository.UserChangeEventRepository;
 import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.search.UserSearchIndex;
+import com.javaet.secondhand.user.snapshot.UserSnapshot;
 import org.junit.Before;
 import org.junit.Test;
-import org.springframework.test.util.ReflectionTestUtils;
-
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.BDDMockito.willThrow;
@@ -37,6 +71,12 @@ public class UserServiceTest extends TestSupport {
     //@Mock
     //@MockBean
     private UserInformationRepository repository;
+    private UserChangeEventRepository changeEventRepository;
+    private EntityManager entityManager;
+    private UserCache userCache;
+    private UserSearchIndex userSearchIndex;
+    private MailBloomFilter mailBloomFilter;
+    private UserSnapshot userSnapshot;
     //@InjectMocks
     private UserService userService;
 
@@ -54,8 +94,27 @@ public class UserServiceTest extends TestSupport {
         //MockitoAnnotations.initMocks(this);
         converter = mock(UserDtoConverter.class);
         repository = mock(UserInformationRepository.class);
+        changeEventRepository = mock(UserChangeEventRepository.class);
+        entityManager = mock(EntityManager.class);
+        userCache = new UserCache(100, Duration.ofMinutes(1));
+        userSearchIndex = new UserSearchIndex(true);
+        //Kapalı filter her mail için "olabilir" diyor, diğer testler repository mock'larına gidiyor.
+        mailBloomFilter = new MailBloomFilter(false,1000,0.01);
+        userSnapshot = new UserSnapshot(mock(UserChangeService.class),false,Path.of("user-snapshot.bin"));
+
+        userService = newUserService();
+    }
+
+    private UserService newUserService(){
+        return new UserService(repository,changeEventRepository,converter,entityManager,userCache,userSearchIndex,
+                mailBloomFilter,userSnapshot,UserShardRouter.singleShard(),mock(PlatformTransactionManager.class),2);
+    }
 
-        userService = new UserService(repository,converter);
+    private void useReadyMailFilter(String... mails){
+        mailBloomFilter = new MailBloomFilter(true,1000,0.01);
+        mailBloomFilter.addAll(List.of(mails));
+        mailBloomFilter.finishBuild(true);
+        userService = newUserService();
     }
 
     @Test
@@ -65,39 +124,259 @@ public class UserServiceTest extends TestSupport {
         List<UserDto> userDtoList = generateUserDtoList(userList);
 
         //Condition
-        when(repository.findAll()).thenReturn(userList);
+        when(repository.findDetachedByIdGreaterThan(0L, PageRequest.of(0,11))).thenReturn(userList);
         when(converter.convert(userList)).thenReturn(userDtoList);
 
         //ServiceCall
-        List<UserDto> result = userService.getAllUser();
+        UserPageDto result = userService.getAllUser(null,10);
 
         //Equality
-        assertEquals(userDtoList,result);
-        verify(repository).findAll();
+        assertEquals(new UserPageDto(userDtoList,null),result);
+        verify(repository).findDetachedByIdGreaterThan(0L, PageRequest.of(0,11));
         verify(converter).convert(userList);
     }
 
+    @Test
+    public void testAllUsers_whenThereAreMoreUsersThanPageSize_itShouldReturnNextCursor(){
+        List<UserInformation> userList = generateUsers();
+        List<UserInformation> page = userList.subList(0,4);
+        List<UserDto> userDtoList = generateUserDtoList(page);
+
+        when(repository.findDetachedByIdGreaterThan(0L, PageRequest.of(0,5))).thenReturn(userList);
+        when(converter.convert(page)).thenReturn(userDtoList);
+
+        UserPageDto result = userService.getAllUser(0L,4);
+
+        assertEquals(new UserPageDto(userDtoList,page.get(3).getId()),result);
+    }
+
+    @Test
+    public void testAllUsers_whenSizeIsBiggerThanMaxPageSize_itShouldUseMaxPageSize(){
+        when(repository.findDetachedByIdGreaterThan(5L, PageRequest.of(0,UserService.MAX_PAGE_SIZE + 1))).thenReturn(List.of());
+
+        userService.getAllUser(5L,100_000);
+
+        verify(repository).findDetachedByIdGreaterThan(5L, PageRequest.of(0,UserService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    public void testGetActiveUsers_itShouldReadActiveUsersPageAndReturnNextCursor(){
+        List<UserInformation> userList = generateUsers();
+        List<UserInformation> page = userList.subList(0,4);
+        List<UserDto> userDtoList = generateUserDtoList(page);
+
+        when(repository.findActiveDetachedByIdGreaterThan(7L, PageRequest.of(0,5))).thenReturn(userList);
+        when(converter.convert(page)).thenReturn(userDtoList);
+
+        UserPageDto result = userService.getActiveUsers(7L,4);
+
+        assertEquals(new UserPageDto(userDtoList,page.get(3).getId()),result);
+        verify(repository).findActiveDetachedByIdGreaterThan(7L, PageRequest.of(0,5));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void testStreamAllUsers_itShouldPassProjectedUsersWithoutLoadingEntities(){
+        List<UserDto> userDtoList = generateUserDtoList(generateUsers());
+        List<UserDto> result = new ArrayList<>();
+
+        when(repository.streamAllAsDto()).thenReturn(userDtoList.stream());
+
+        userService.streamAllUsers(result::add);
+
+        assertEquals(userDtoList,result);
+        verifyNoInteractions(converter,entityManager);
+    }
+
     @Test
     public void testGetUserByMail_whenUserMailExists_itShouldReturnsUserDto(){
         String mail = "mail@javaet.net";
         UserInformation user = generateUser(mail);
         UserDto userDto = generateUserDto(mail);
 
-        when(repository.findByMail(mail)).thenReturn(Optional.of(user));
+        when(repository.findDetachedByMail(mail)).thenReturn(Optional.of(user));
         when(converter.convert(user)).thenReturn(userDto);
 
         UserDto result = userService.getUserByMail(mail);
 
         assertEquals(userDto,result);
-        verify(repository).findByMail(mail);
+        verify(repository).findDetachedByMail(mail);
         verify(converter).convert(user);
     }
 
+    @Test
+    public void testGetUserByMail_whenUserIsAlreadyCached_itShouldNotQueryRepositoryAgain(){
+        String mail = "mail@javaet.net";
+        UserInformation user = generateUser(mail);
+        UserDto userDto = generateUserDto(mail);
+
+        when(repository.findDetachedByMail(mail)).thenReturn(Optional.of(user));
+        when(converter.convert(user)).thenReturn(userDto);
+
+        userService.getUserByMail(mail);
+        UserDto result = userService.getUserByMail(mail);
+
+        assertEquals(userDto,result);
+        verify(repository,times(1)).findDetachedByMail(mail);
+        assertEquals(1,userService.getUserCacheStats().getHitCount());
+        assertEquals(1,userService.getUserCacheStats().getMissCount());
+    }
+
+    @Test
+    public void testGetUserETag_whenUserIsCached_itShouldNotQueryRepository(){
+        String mail = "mail@javaet.net";
+        UserInformation user = new UserInformation(userId,mail,"firstName","lastName","",true,3L);
+
+        when(repository.findDetachedByMail(mail)).thenReturn(Optional.of(user));
+        when(converter.convert(user)).thenReturn(generateUserDto(mail));
+
+        Versioned<UserDto> versioned = userService.getVersionedUserByMail(mail);
+        String eTag = userService.getUserETag(mail);
+
+        assertEquals("\"" + userId + ".3\"",eTag);
+        assertEquals(versioned.getETag(),eTag);
+        verify(repository,times(1)).findDetachedByMail(mail);
+        verify(repository,never()).findVersionByMail(mail);
+    }
+
+    @Test
+    public void testGetUserETag_whenUserIsNotCached_itShouldReadOnlyVersion(){
+        String mail = "mail@javaet.net";
+
+        when(repository.findVersionByMail(mail)).thenReturn(Optional.of(new UserVersion(userId,5L)));
+
+        assertEquals("\"" + userId + ".5\"",userService.getUserETag(mail));
+        verify(repository,never()).findDetachedByMail(mail);
+    }
+
+    @Test(expected = UserNotFoundException.class)
+    public void testGetUserETag_whenUserMailDoesNotExist_itShouldThrowUserNotFoundException(){
+        when(repository.findVersionByMail("mail@javaet.net")).thenReturn(Optional.empty());
+
+        userService.getUserETag("mail@javaet.net");
+    }
+
+    @Test
+    public void testGetUserPageETag_itShouldMatchPageETagAndChangeWhenAUserVersionChanges(){
+        List<UserInformation> users = List.of(new UserInformation(1L,"a@javaet.net","a","a","",true,0L),
+                new UserInformation(2L,"b@javaet.net","b","b","",true,0L));
+        List<UserVersion> versions = List.of(new UserVersion(1L,0L),new UserVersion(2L,0L));
+
+        when(repository.findDetachedByIdGreaterThan(0L, PageRequest.of(0,11))).thenReturn(users);
+        when(repository.findVersionsByIdGreaterThan(0L, PageRequest.of(0,11))).thenReturn(versions);
+        when(repository.findActiveVersionsByIdGreaterThan(0L, PageRequest.of(0,11)))
+                .thenReturn(List.of(new UserVersion(1L,0L),new UserVersion(2L,1L)));
+
+        String eTag = userService.getUserPageETag(null,10,false);
+
+        assertEquals(userService.getUserPage(null,10,false).getETag(),eTag);
+        assertNotEquals(eTag,userService.getUserPageETag(null,10,true));
+    }
+
+    @Test
+    public void testPatchUser_itShouldUpdateOnlyGivenFieldsWithoutLoadingUserFirst(){
+        String mail = "mail@javaet.net";
+        UserInformation patched = new UserInformation(userId,mail,"firstName","lastName","",true,4L);
+        Map<String, Object> patch = new HashMap<>();
+        patch.put("middleName", null);
+        patch.put("firstName", "firstName");
+
+        when(repository.patchUser(mail, Map.of("middleName", "", "firstName", "firstName"), new UserVersion(userId,3L))).thenReturn(1);
+        when(repository.findByMail(mail)).thenReturn(Optional.of(patched));
+        when(converter.convert(patched)).thenReturn(generateUserDto(mail));
+
+        Versioned<UserDto> result = userService.patchUser(mail, patch, "\"" + userId + ".3\"");
+
+        assertEquals("\"" + userId + ".4\"",result.getETag());
+        assertEquals(generateUserDto(mail),result.getValue());
+        assertSame(patched,userCache.getIfPresent(mail));
+        verify(repository,times(1)).findByMail(mail);
+    }
+
+    @Test(expected = UserVersionMismatchException.class)
+    public void testPatchUser_whenVersionDoesNotMatch_itShouldThrowUserVersionMismatchException(){
+        String mail = "mail@javaet.net";
+
+        when(repository.patchUser(mail, Map.of("lastName", "lastName"), new UserVersion(userId,3L))).thenReturn(0);
+        when(repository.findByMail(mail)).thenReturn(Optional.of(new UserInformation(userId,mail,"firstName","lastName","",true,5L)));
+
+        userService.patchUser(mail, Map.of("lastName", "lastName"), "\"" + userId + ".3\"");
+    }
+
+    @Test(expected = UserIsNotActiveException.class)
+    public void testPatchUser_whenUserIsNotActive_itShouldThrowUserIsNotActiveException(){
+        String mail = "mail@javaet.net";
+
+        when(repository.patchUser(mail, Map.of("lastName", "lastName"), null)).thenReturn(0);
+        when(repository.findByMail(mail)).thenReturn(Optional.of(new UserInformation(userId,mail,"firstName","lastName","",false,0L)));
+
+        userService.patchUser(mail, Map.of("lastName", "lastName"), null);
+    }
+
+    @Test
+    public void testPatchUser_whenPatchIsInvalid_itShouldThrowInvalidPatchExceptionWithoutQueryingRepository(){
+        Map<String, Object> removeFirstName = new HashMap<>();
+        removeFirstName.put("firstName", null);
+
+        assertThrows(InvalidPatchException.class, () -> userService.patchUser("mail@javaet.net", Map.of("mail", "x@javaet.net"), null));
+        assertThrows(InvalidPatchException.class, () -> userService.patchUser("mail@javaet.net", Map.of("firstName", 1), null));
+        assertThrows(InvalidPatchException.class, () -> userService.patchUser("mail@javaet.net", removeFirstName, null));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    public void testGetUserByMail_whenCachedUserIsDeactivated_itShouldReloadUser(){
+        String mail = "mail@javaet.net";
+        UserInformation user = new UserInformation(userId,mail,"firstName","lastName","",true);
+
+        when(repository.findDetachedByMail(mail)).thenReturn(Optional.of(user));
+        when(repository.updateActive(userId,false)).thenReturn(1);
+
+        userService.getUserByMail(mail);
+        userService.deactivateUser(userId);
+        userService.getUserByMail(mail);
+
+        verify(repository,times(2)).findDetachedByMail(mail);
+    }
+
+    @Test
+    public void testGetUserByMail_whenUserIsReadWithDifferentCasesAndDeactivated_itShouldReloadEverySpelling(){
+        String mail = "mail@javaet.net";
+        UserInformation user = new UserInformation(userId,mail,"firstName","lastName","",true);
+
+        when(repository.findDetachedByMail(anyString())).thenReturn(Optional.of(user));
+        when(repository.updateActive(userId,false)).thenReturn(1);
+
+        userService.getUserByMail("Mail@javaet.net");
+        userService.getUserByMail(mail);
+        verify(repository,times(1)).findDetachedByMail(anyString());
+
+        userService.deactivateUser(userId);
+        userService.getUserByMail("MAIL@javaet.net");
+        userService.getUserByMail(mail);
+
+        verify(repository,times(2)).findDetachedByMail(anyString());
+    }
+
+    @Test
+    public void testGetUserByMail_whenUserIsReadWithDifferentCasesAndDeleted_itShouldEvictEverySpelling(){
+        UserInformation user = new UserInformation(userId,"mail@javaet.net","firstName","lastName","",true);
+
+        when(repository.findDetachedByMail(anyString())).thenReturn(Optional.of(user));
+        when(repository.deleteUserById(userId)).thenReturn(1);
+
+        userService.getUserByMail("Mail@javaet.net");
+        userService.deleteUser(userId);
+
+        assertNull(userCache.getIfPresent("Mail@javaet.net"));
+        assertNull(userCache.getIfPresent("mail@javaet.net"));
+    }
+
     @Test(expected = UserNotFoundException.class)
     public void testGetUserByMail_whenUserMailDoesNotExists_itShouldThrowUserNotFoundException(){
         String mail = "mail@javaet.net";
 
-        when(repository.findByMail(mail)).thenReturn(Optional.empty());
+        when(repository.findDetachedByMail(mail)).thenReturn(Optional.empty());
 
         //assertThrows(UserNotFoundException.class, () -> userService.getUserByMail(mail));
         //JUnit5 için yukarıdaki kullanım hata vermez. Ama JUnit4'de verebilir.
@@ -105,7 +384,7 @@ public class UserServiceTest extends TestSupport {
         when(userService.getUserByMail(mail)).thenThrow(UserNotFoundException.class);
         //JUnit4 için hata vermeyecek kullanım bu.
 
-        verify(repository).findByMail(mail);
+        verify(repository).findDetachedByMail(mail);
         verifyNoInteractions(converter);
 
         /*JUnit5'de yukarıdaki Test anatasyonunun içerisindeki expected parametresini vermene gerek yok.
@@ -113,6 +392,34 @@ public class UserServiceTest extends TestSupport {
         * etmeye çalıştığımız exception fırlatılıyor.*/
     }
 
+    @Test
+    public void testGetUsersByMail_itShouldReadCachedUsersFromCacheAndOthersInOneQuery(){
+        UserInformation cached = new UserInformation(1L,"a@javaet.net","firstName","lastName","",true);
+        UserInformation stored = new UserInformation(2L,"b@javaet.net","firstName","lastName","",true);
+        UserDto cachedDto = new UserDto("a@javaet.net","firstName","lastName","");
+        UserDto storedDto = new UserDto("b@javaet.net","firstName","lastName","");
+        userCache.put(cached);
+
+        when(repository.findDetachedByMailIn(List.of("b@javaet.net","c@javaet.net"))).thenReturn(List.of(stored));
+        when(converter.convert(cached)).thenReturn(cachedDto);
+        when(converter.convert(stored)).thenReturn(storedDto);
+
+        UserBatchDto result = userService.getUsersByMail(List.of("a@javaet.net","b@javaet.net","c@javaet.net","b@javaet.net"));
+
+        assertEquals(new UserBatchDto(List.of(cachedDto,storedDto),List.of("c@javaet.net")),result);
+        verify(repository).findDetachedByMailIn(List.of("b@javaet.net","c@javaet.net"));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test(expected = TooManyMailsException.class)
+    public void testGetUsersByMail_whenTooManyMailsAreRequested_itShouldThrowTooManyMailsException(){
+        List<String> mails = IntStream.rangeClosed(0,UserService.MAX_BATCH_MAILS)
+                .mapToObj(i -> i + "@javaet.net")
+                .collect(Collectors.toList());
+
+        userService.getUsersByMail(mails);
+    }
+
     @Test
     public void testCreateUser_itShouldReturnCreatedUserDto(){
         String mail = "mail@javaet.net";
@@ -132,25 +439,98 @@ public class UserServiceTest extends TestSupport {
         verify(converter).convert(savedUser);
     }
 
+    @Test
+    public void testImportUsers_itShouldSaveNewUsersInBatchesAndReportDuplicates(){
+        List<CreateUserRequest> requests = List.of(
+                new CreateUserRequest("a@javaet.net","firstName","lastName",""),
+                new CreateUserRequest("a@javaet.net","firstName","lastName",""),
+                new CreateUserRequest("b@javaet.net","firstName","lastName",""),
+                new CreateUserRequest("c@javaet.net","firstName","lastName",""),
+                new CreateUserRequest("","firstName","lastName",""));
+        UserInformation a = new UserInformation("a@javaet.net","firstName","lastName","",false);
+        UserInformation b = new UserInformation("b@javaet.net","firstName","lastName","",false);
+
+        when(repository.findExistingMails(List.of("a@javaet.net","b@javaet.net"))).thenReturn(List.of());
+        when(repository.findExistingMails(List.of("c@javaet.net"))).thenReturn(List.of("c@javaet.net"));
+        when(repository.saveAllAndFlush(List.of(a,b))).thenReturn(List.of(
+                new UserInformation(1L,"a@javaet.net","firstName","lastName","",false),
+                new UserInformation(2L,"b@javaet.net","firstName","lastName","",false)));
+
+        BulkImportResultDto result = userService.importUsers(requests.iterator());
+
+        assertEquals(5,result.getReceived());
+        assertEquals(2,result.getImported());
+        assertEquals(3,result.getFailed());
+        assertEquals(List.of(
+                new BulkImportFailureDto(2,"a@javaet.net","Mail is duplicated in the import"),
+                new BulkImportFailureDto(5,"","Mail is required"),
+                new BulkImportFailureDto(4,"c@javaet.net","Mail already exists")),result.getFailures());
+        verify(repository).saveAllAndFlush(List.of(a,b));
+        verify(entityManager).clear();
+        assertEquals(2,userSearchIndex.size());
+    }
+
+    @Test
+    public void testImportUsers_whenMailsDifferOnlyInCase_itShouldReportThemWithoutHittingUniqueIndex(){
+        List<CreateUserRequest> requests = List.of(
+                new CreateUserRequest("a@javaet.net","firstName","lastName",""),
+                new CreateUserRequest("A@Javaet.net","firstName","lastName",""),
+                new CreateUserRequest("b@javaet.net","firstName","lastName",""));
+        UserInformation a = new UserInformation("a@javaet.net","firstName","lastName","",false);
+
+        //Kayıtlı yazılış farklı, collation yine de eşleştiriyor.
+        when(repository.findExistingMails(List.of("a@javaet.net","b@javaet.net"))).thenReturn(List.of("B@javaet.net"));
+        when(repository.saveAllAndFlush(List.of(a))).thenReturn(List.of(
+                new UserInformation(1L,"a@javaet.net","firstName","lastName","",false)));
+
+        BulkImportResultDto result = userService.importUsers(requests.iterator());
+
+        assertEquals(1,result.getImported());
+        assertEquals(List.of(
+                new BulkImportFailureDto(2,"A@Javaet.net","Mail is duplicated in the import"),
+                new BulkImportFailureDto(3,"b@javaet.net","Mail already exists")),result.getFailures());
+        verify(repository,times(1)).saveAllAndFlush(anyList());
+    }
+
+    @Test
+    public void testImportUsers_whenBatchHitsUniqueConstraint_itShouldRetryRowsOneByOne(){
+        List<CreateUserRequest> requests = List.of(
+                new CreateUserRequest("a@javaet.net","firstName","lastName",""),
+                new CreateUserRequest("b@javaet.net","firstName","lastName",""));
+        UserInformation a = new UserInformation("a@javaet.net","firstName","lastName","",false);
+        UserInformation b = new UserInformation("b@javaet.net","firstName","lastName","",false);
+
+        when(repository.findExistingMails(anyCollection())).thenReturn(List.of());
+        when(repository.saveAllAndFlush(List.of(a,b))).thenThrow(DataIntegrityViolationException.class);
+        when(repository.saveAllAndFlush(List.of(b))).thenThrow(DataIntegrityViolationException.class);
+
+        BulkImportResultDto result = userService.importUsers(requests.iterator());
+
+        assertEquals(1,result.getImported());
+        assertEquals(List.of(new BulkImportFailureDto(2,"b@javaet.net","Mail already exists")),result.getFailures());
+        verify(repository).saveAllAndFlush(List.of(a));
+    }
+
     @Test
     public void testUpdateUser_whenUserMailExistAndUserIsActive_itShouldReturnUpdateUserDto(){
         String mail = "mail@javaet.net";
         UpdateUserRequest request = new UpdateUserRequest("firstName2","lastName2","middleName");
-        UserInformation user = new UserInformation(1L,mail,"firstName","lastName","",true);
-        UserInformation updatedUser = new UserInformation(1L,mail,"firstName2","lastName2","middleName",true);
+        Map<String, String> changes = Map.of("firstName","firstName2","lastName","lastName2","middleName","middleName");
         UserInformation savedUser = new UserInformation(1L,mail,"firstName2","lastName2","middleName",true);
         UserDto userDto = new UserDto(mail,"firstName2","lastName2","middleName");
 
-        when(repository.findByMail(mail)).thenReturn(Optional.of(user));
-        when(repository.save(updatedUser)).thenReturn(savedUser);
+        when(repository.patchUser(mail,changes,null)).thenReturn(1);
+        when(repository.findByMail(mail)).thenReturn(Optional.of(savedUser));
         when(converter.convert(savedUser)).thenReturn(userDto);
 
         UserDto result = userService.updateUser(mail,request);
 
         assertEquals(userDto,result);
 
-        verify(repository).findByMail(mail);
-        verify(repository).save(updatedUser);
+        //Kullanıcı önceden okunmuyor, UPDATE'de version koşulu yok.
+        verify(repository).patchUser(mail,changes,null);
+        verify(repository,never()).save(any(UserInformation.class));
+        verify(changeEventRepository).insertEventsByMail(UserChangeType.UPDATED.name(),mail);
         verify(converter).convert(savedUser);
     }
 
@@ -183,113 +563,242 @@ public class UserServiceTest extends TestSupport {
 
     @Test
     public void testDeactivateUser_whenUserIdExists_itShouldUpdateUserByActive(){
-        String mail = "mail@javaet.net";
-        UserInformation user = new UserInformation(1L,mail,"firstName","lastName","",true);
-        UserInformation savedUser = new UserInformation(1L,mail,"firstName","lastName","",false);
-
-        when(repository.findById(userId)).thenReturn(Optional.of(user));
+        when(repository.updateActive(userId,false)).thenReturn(1);
 
         userService.deactivateUser(userId);
 
-        verify(repository).findById(userId);
-        verify(repository).save(savedUser);
+        verify(repository).updateActive(userId,false);
+        verifyNoMoreInteractions(repository);
         /*Testi yapılan metod void metod olduğu için verification tarafını verify ile yapacağız.*/
     }
 
     @Test(expected = UserNotFoundException.class)
     public void testDeactivateUser_whenUserIdDoesNotExists_itShouldThrowUserNotFoundException(){
+        /*Artık kullanıcıyı önceden yüklemiyoruz. UPDATE hiçbir satırı etkilemezse kullanıcı yok demektir.*/
+        when(repository.updateActive(userId,false)).thenReturn(0);
 
-        var mockedUserService = mock(UserService.class);
-        when(repository.findById(userId)).thenReturn(Optional.empty());
+        userService.deactivateUser(userId);
+    }
 
-        //JUnit4'de void metod ile exception throwing test edeceksen bu şekilde test edebilirsin.
-        //userService new'leyerek oluşturulduğundan tek başına when içerisine dahil edemedik.
-        //Önceki testlerde userService.metodÇağrısı şeklinde ilerlendiğinden bu sorun daha önce karşımıza çıkmadı.
-        doThrow(UserNotFoundException.class).when(mockedUserService).deactivateUser(userId);
+    @Test
+    public void testActivateUser_whenUserIdExists_itShouldUpdateUserByActiveTrue(){
+        when(repository.updateActive(userId,true)).thenReturn(1);
 
-        /*Yukarıda mockladığın servis üzerinden hatayı fırlatıyorsun ama mockladığın servis üzerinden hatayı fırlattığın
-        * metoda gitmezsen burada testin fail olur çünkü metodun kendisine gerçek anlamda gitmediğin için doThrow ile
-        * (yada başka birşeyle metod void değilse) hatanın kendisini fırlatıp kenara çekilmiş oluyorsun fırlattığın hatayı
-        * metodun kendisine gidip kullanman gerekli.*/
-        mockedUserService.deactivateUser(userId);
+        userService.activateUser(userId);
 
-        verify(repository).findById(userId);
+        verify(repository).updateActive(userId,true);
         verifyNoMoreInteractions(repository);
     }
 
+    @Test(expected = UserNotFoundException.class)
+    public void testActivateUser_whenUserIdDoesNotExists_itShouldThrowUserNotFoundException(){
+        when(repository.updateActive(userId,true)).thenReturn(0);
+
+        userService.activateUser(userId);
+    }
+
     @Test
-    public void testActivateUser_whenUserIdExists_itShouldUpdateUserByActiveTrue(){
-        String mail = "mail@javaet.net";
-        UserInformation user = new UserInformation(1L,mail,"firstName","lastName","",false);
-        UserInformation savedUser = new UserInformation(1L,mail,"firstName","lastName","",true);
+    public void testActivateUsers_itShouldUpdateDistinctIdsInOneStatement(){
+        when(repository.updateActiveByIdIn(Set.of(1L,2L,3L),true)).thenReturn(2);
 
-        when(repository.findById(userId)).thenReturn(Optional.of(user));
+        BulkUpdateResultDto result = userService.activateUsers(List.of(1L,2L,2L,3L));
 
-        userService.activateUser(userId);
+        assertEquals(new BulkUpdateResultDto(3,2),result);
+        verify(repository).updateActiveByIdIn(Set.of(1L,2L,3L),true);
+    }
 
-        verify(repository).findById(userId);
-        verify(repository).save(savedUser);
+    @Test
+    public void testDeactivateUsers_whenIdListIsEmpty_itShouldNotQueryRepository(){
+        BulkUpdateResultDto result = userService.deactivateUsers(List.of());
+
+        assertEquals(new BulkUpdateResultDto(0,0),result);
+        verifyNoInteractions(repository);
     }
 
-    @Test(expected = UserNotFoundException.class)
-    public void testActivateUser_whenUserIdDoesNotExists_itShouldThrowUserNotFoundException(){
+    @Test
+    public void testDeleteUser_whenUserIdExist_itShouldDeleteUserWithOneStatement(){
+        when(repository.deleteUserById(userId)).thenReturn(1);
 
-        var mockedUserService = mock(UserService.class);
-        when(repository.findById(userId)).thenReturn(Optional.empty());
+        userService.deleteUser(userId);
+
+        verify(repository).deleteUserById(userId);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void testDeleteUser_itShouldWriteDeletedEventBeforeDeletingUser(){
+        when(repository.deleteUserById(userId)).thenReturn(1);
+
+        userService.deleteUser(userId);
 
-        doThrow(UserNotFoundException.class).when(mockedUserService).activateUser(userId);
+        //Event silinmeden önceki satırdan okunuyor, sıra önemli.
+        InOrder inOrder = inOrder(changeEventRepository,repository);
+        inOrder.verify(changeEventRepository).insertEvents(UserChangeType.DELETED.name(),List.of(userId));
+        inOrder.verify(repository).deleteUserById(userId);
+    }
 
-        mockedUserService.activateUser(userId);
+    @Test
+    public void testMutations_itShouldWriteChangeEventsForChangedUsers(){
+        CreateUserRequest request = new CreateUserRequest("mail@javaet.net","firstName","lastName","");
+        when(repository.save(any(UserInformation.class))).thenReturn(new UserInformation(1L,"mail@javaet.net","firstName","lastName","",false));
+        when(repository.updateActive(2L,false)).thenReturn(1);
+
+        userService.createUser(request);
+        userService.deactivateUser(2L);
+        userService.activateUsers(List.of(3L,4L,3L));
+
+        verify(changeEventRepository).insertEvents(UserChangeType.CREATED.name(),List.of(1L));
+        verify(changeEventRepository).insertEvents(UserChangeType.DEACTIVATED.name(),List.of(2L));
+        verify(changeEventRepository).insertEvents(UserChangeType.ACTIVATED.name(),Set.of(3L,4L));
+    }
+
+    @Test(expected = UserNotFoundException.class)
+    public void testDeleteUser_whenUserIdDoesNotExists_itShouldThrowUserNotFoundException(){
+        /*Önceden existsById ile kontrol ediliyordu. Artık DELETE hiçbir satırı silmezse exception fırlatılıyor.*/
+        when(repository.deleteUserById(userId)).thenReturn(0);
 
-        verify(repository).findById(userId);
+        userService.deleteUser(userId);
+    }
+
+    @Test
+    public void testPurgeUsers_itShouldDeleteDistinctIdsInChunksAndReportProgress(){
+        List<Long> ids = LongStream.rangeClosed(1,UserService.PURGE_CHUNK_SIZE + 500).boxed().collect(Collectors.toList());
+        List<Long> idsWithDuplicates = new ArrayList<>(ids);
+        idsWithDuplicates.add(1L);
+        List<PurgeProgressDto> progress = new ArrayList<>();
+
+        when(repository.deleteUsersByIdIn(ids.subList(0,UserService.PURGE_CHUNK_SIZE))).thenReturn(UserService.PURGE_CHUNK_SIZE - 1);
+        when(repository.deleteUsersByIdIn(ids.subList(UserService.PURGE_CHUNK_SIZE,ids.size()))).thenReturn(500);
+
+        PurgeProgressDto result = userService.purgeUsers(idsWithDuplicates,progress::add);
+
+        int requested = UserService.PURGE_CHUNK_SIZE + 500;
+        assertEquals(List.of(new PurgeProgressDto(requested,UserService.PURGE_CHUNK_SIZE,UserService.PURGE_CHUNK_SIZE - 1),
+                new PurgeProgressDto(requested,requested,requested - 1)),progress);
+        assertEquals(new PurgeProgressDto(requested,requested,requested - 1),result);
+        verify(repository,times(2)).deleteUsersByIdIn(anyCollection());
         verifyNoMoreInteractions(repository);
     }
 
     @Test
-    public void testDeleteUser_whenUserIdExist_itShouldDeleteUser(){
-        /*Bu case'de hoca testin daha kolay olması için backend kodunu değiştirdi ben değiştirmedim.*/
+    public void testPurgeUsers_itShouldEvictDeletedUsersFromCache(){
         String mail = "mail@javaet.net";
-        var mockedUserService = mock(UserService.class);
-        UserInformation user = new UserInformation(1L,mail,"firstName","lastName","",false);
+        UserInformation user = new UserInformation(userId,mail,"firstName","lastName","",true);
+
+        when(repository.findDetachedByMail(mail)).thenReturn(Optional.of(user));
+        when(repository.deleteUsersByIdIn(List.of(userId))).thenReturn(1);
+
+        userService.getUserByMail(mail);
+        userService.purgeUsers(List.of(userId),progress -> {});
+
+        assertNull(userCache.getIfPresent(mail));
+    }
+
+    @Test
+    public void testGetUserByMail_whenMailFilterSaysMailDoesNotExist_itShouldNotQueryRepository(){
+        useReadyMailFilter("other@javaet.net");
+
+        assertThrows(UserNotFoundException.class,() -> userService.getUserByMail("mail@javaet.net"));
+        assertThrows(UserNotFoundException.class,() -> userService.getUserETag("mail@javaet.net"));
+        assertEquals(new UserBatchDto(List.of(),List.of("mail@javaet.net")),userService.getUsersByMail(List.of("mail@javaet.net")));
+        assertTrue(userService.isMailAvailable("mail@javaet.net"));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    public void testIsMailAvailable_whenMailFilterSaysMailMayExist_itShouldQueryRepository(){
+        useReadyMailFilter("mail@javaet.net");
+        when(repository.existsByMail("mail@javaet.net")).thenReturn(true);
+
+        assertFalse(userService.isMailAvailable("mail@javaet.net"));
+    }
+
+    @Test
+    public void testCreateUser_whenMailAlreadyExists_itShouldThrowUserAlreadyExistsException(){
+        useReadyMailFilter("mail@javaet.net");
+        when(repository.save(any(UserInformation.class))).thenThrow(DataIntegrityViolationException.class);
+        when(repository.existsByMail("mail@javaet.net")).thenReturn(true);
+
+        assertThrows(UserAlreadyExistsException.class,
+                () -> userService.createUser(new CreateUserRequest("mail@javaet.net","firstName","lastName","")));
+        //Filter'da zaten olan mail çıkarılmamalı.
+        assertTrue(mailBloomFilter.mightContain("mail@javaet.net"));
+    }
 
-        when(repository.findById(userId)).thenReturn(Optional.of(user));
-        doNothing().when(repository).deleteById(userId);
-        when(ReflectionTestUtils.invokeMethod(userService,"doesUserExist",userId)).thenReturn(true);
+    @Test
+    public void testCreateUser_whenSaveFailsForNewMail_itShouldRemoveMailFromFilterAndRethrow(){
+        useReadyMailFilter();
+        when(repository.save(any(UserInformation.class))).thenThrow(DataIntegrityViolationException.class);
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> userService.createUser(new CreateUserRequest("mail@javaet.net","firstName","lastName","")));
+        assertFalse(mailBloomFilter.mightContain("mail@javaet.net"));
+        verify(repository,never()).existsByMail(anyString());
+    }
+
+    @Test
+    public void testCreateAndDeleteUser_itShouldUpdateMailFilter(){
+        useReadyMailFilter();
+        UserInformation savedUser = new UserInformation(userId,"mail@javaet.net","firstName","lastName","",false);
+        when(repository.save(any(UserInformation.class))).thenReturn(savedUser);
+        when(repository.findMailsByIdIn(List.of(userId))).thenReturn(List.of("mail@javaet.net"));
+        when(repository.deleteUserById(userId)).thenReturn(1);
+
+        userService.createUser(new CreateUserRequest("mail@javaet.net","firstName","lastName",""));
+        assertTrue(mailBloomFilter.mightContain("mail@javaet.net"));
 
-        doNothing().when(mockedUserService).deleteUser(userId);
         userService.deleteUser(userId);
+        assertFalse(mailBloomFilter.mightContain("mail@javaet.net"));
+    }
 
-        /*Aşağıdaki 2 satırı Wanted but not invoked: .... However, there was exactly ...(sayı olur) interaction with this mock: hatasını
-        * aşmak için ekledik.*/
-        repository.findById(userId);
-        repository.deleteById(userId);
+    @Test
+    public void testSearchUsers_itShouldFindCreatedUpdatedAndActivatedUsersWithoutQueryingRepository(){
+        UserInformation created = new UserInformation(userId,"mail@javaet.net","Ayşe","Yılmaz","",false);
+        UserInformation updated = new UserInformation(userId,"mail@javaet.net","Ayşe","Kaya","",true);
+        UserDto dto = new UserDto("mail@javaet.net","Ayşe","Kaya","");
+
+        when(repository.save(any(UserInformation.class))).thenReturn(created);
+        when(repository.updateActive(userId,true)).thenReturn(1);
+        userService.createUser(new CreateUserRequest("mail@javaet.net","Ayşe","Yılmaz",""));
+        assertEquals(List.of(),userService.searchUsers("ayse",10,true));
+
+        userService.activateUser(userId);
+        when(repository.findByMail("mail@javaet.net")).thenReturn(Optional.of(updated));
+        when(repository.patchUser(eq("mail@javaet.net"),anyMap(),isNull())).thenReturn(1);
+        userService.updateUser("mail@javaet.net",new UpdateUserRequest("Ayşe","Kaya",""));
+        when(converter.convert(List.of(updated))).thenReturn(List.of(dto));
 
-        /*org.mockito.exceptions.verification.TooManyActualInvocations: hatasından dolayı aşağısı yoruma alındı.
-        * yukarıdaki işte invocation yapıyor. Aşağıdaki verify etme durumuda.*/
-        //verify(repository).findById(userId);
-        //verify(repository).deleteById(userId);
+        assertEquals(List.of(dto),userService.searchUsers("ayse kay",10,true));
+        assertEquals(List.of(),userService.searchUsers("yilmaz",10,false));
     }
 
-    @Test(expected = UserNotFoundException.class)
-    public void testDeleteUser_whenUserIdDoesNotExists_itShouldThrowUserNotFoundException(){
+    @Test
+    public void testSearchUsers_whenUserIsDeleted_itShouldNotReturnUser(){
+        UserInformation user = new UserInformation(userId,"mail@javaet.net","firstName","lastName","",true);
+        userSearchIndex.put(user);
+        when(repository.deleteUserById(userId)).thenReturn(1);
 
-        var mockedUserService = mock(UserService.class);
+        userService.deleteUser(userId);
+
+        when(converter.convert(List.<UserInformation>of())).thenReturn(List.of());
+        assertEquals(List.of(),userService.searchUsers("first",10,false));
+    }
 
-        //when(repository.findById(userId)).thenReturn(Optional.empty());
-        //doNothing().when(repository).deleteById(userId);
-        //when(ReflectionTestUtils.invokeMethod(userService,"doesUserExist",userId)).thenReturn(false);
-        doNothing().when(mockedUserService).deleteUser(userId);
-        when(ReflectionTestUtils.invokeMethod(userService,"doesUserExist",userId)).thenThrow(UserNotFoundException.class);
-        //doThrow(UserNotFoundException.class).when(mockedUserService).deleteUser(userId);
+    @Test
+    public void testSearchUsers_whenSearchIndexIsDisabled_itShouldThrowUserSearchDisabledException(){
+        userSearchIndex = new UserSearchIndex(false);
+        userService = newUserService();
+        when(repository.save(any(UserInformation.class))).thenReturn(new UserInformation(userId,"mail@javaet.net","Ayşe","Yılmaz","",false));
 
-        mockedUserService.deleteUser(userId);
-        //repository.findById(userId);
-        ReflectionTestUtils.invokeMethod(userService,"doesUserExist",userId);
+        userService.createUser(new CreateUserRequest("mail@javaet.net","Ayşe","Yılmaz",""));
 
-        verify(repository).findById(userId);
-        verifyNoMoreInteractions(repository);
+        assertEquals(0,userSearchIndex.size());
+        assertThrows(UserSearchDisabledException.class,() -> userService.searchUsers("ayse",10,false));
+    }
 
-        //Bu test metodu pass oluyor ama istediğimiz gibi else girip hata fırlatmıyor tekrar bakılacak...
+    @Test(expected = InvalidSearchQueryException.class)
+    public void testSearchUsers_whenQueryIsTooShort_itShouldThrowInvalidSearchQueryException(){
+        userService.searchUsers(" a ",10,false);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package com.javaet.secondhand.user.service;
+
+import com.javaet.secondhand.user.dto.UpdateUserRequest;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.exception.UserIsNotActiveException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserUpdateCoalescerTest {
+
+    private final List<String> writes = new ArrayList<>();
+    private UserUpdateCoalescer coalescer;
+
+    @AfterEach
+    void tearDown() {
+        coalescer.close();
+    }
+
+    @Test
+    void testSubmit_whenUpdatesArriveInWindow_itShouldWriteOnlyLastOne() throws Exception {
+        coalescer = new UserUpdateCoalescer(recordingWriter(null, null), true, Duration.ofMillis(200), 2);
+
+        CompletableFuture<UserDto> first = coalescer.submit("a@javaet.net", request("1"));
+        CompletableFuture<UserDto> second = coalescer.submit("a@javaet.net", request("2"));
+        CompletableFuture<UserDto> other = coalescer.submit("b@javaet.net", request("3"));
+
+        UserDto expected = new UserDto("a@javaet.net", "firstName", "lastName", "2");
+        assertEquals(expected, first.get(5, TimeUnit.SECONDS));
+        assertEquals(expected, second.get(5, TimeUnit.SECONDS));
+        assertEquals("3", other.get(5, TimeUnit.SECONDS).getMiddleName());
+        synchronized (writes) {
+            assertEquals(2, writes.size());
+            assertTrue(writes.containsAll(List.of("a@javaet.net=2", "b@javaet.net=3")));
+        }
+    }
+
+    @Test
+    void testSubmit_whenWriteIsRunning_itShouldWriteNextUpdatesAfterItInOrder() throws Exception {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        coalescer = new UserUpdateCoalescer(recordingWriter(writeStarted, releaseWrite), true, Duration.ZERO, 2);
+
+        CompletableFuture<UserDto> first = coalescer.submit("a@javaet.net", request("1"));
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        //İlk yazma sürerken gelenler ikinci thread'de paralel yazılmıyor, ilkinden sonra birlikte yazılıyor.
+        CompletableFuture<UserDto> second = coalescer.submit("a@javaet.net", request("2"));
+        CompletableFuture<UserDto> third = coalescer.submit("a@javaet.net", request("3"));
+        releaseWrite.countDown();
+
+        assertEquals("1", first.get(5, TimeUnit.SECONDS).getMiddleName());
+        assertEquals("3", second.get(5, TimeUnit.SECONDS).getMiddleName());
+        assertEquals("3", third.get(5, TimeUnit.SECONDS).getMiddleName());
+        synchronized (writes) {
+            assertEquals(List.of("a@javaet.net=1", "a@javaet.net=3"), writes);
+        }
+    }
+
+    @Test
+    void testSubmit_whenMailDiffersInCase_itShouldUseSameQueue() throws Exception {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        coalescer = new UserUpdateCoalescer(recordingWriter(writeStarted, releaseWrite), true, Duration.ZERO, 2);
+
+        CompletableFuture<UserDto> first = coalescer.submit("a@javaet.net", request("1"));
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        //Veritabanı için aynı kullanıcı, ikinci thread'de paralel yazılmamalı.
+        CompletableFuture<UserDto> second = coalescer.submit("A@Javaet.net", request("2"));
+        CompletableFuture<UserDto> third = coalescer.submit(" a@JAVAET.NET", request("3"));
+        releaseWrite.countDown();
+
+        assertEquals("1", first.get(5, TimeUnit.SECONDS).getMiddleName());
+        assertEquals("3", second.get(5, TimeUnit.SECONDS).getMiddleName());
+        assertEquals("3", third.get(5, TimeUnit.SECONDS).getMiddleName());
+        synchronized (writes) {
+            assertEquals(List.of("a@javaet.net=1", "a@javaet.net=3"), writes);
+        }
+    }
+
+    @Test
+    void testSubmit_whenWriteFails_itShouldFailAllCoalescedUpdates() {
+        coalescer = new UserUpdateCoalescer((mail, request) -> {
+            throw new UserIsNotActiveException();
+        }, true, Duration.ofMillis(100), 1);
+
+        CompletableFuture<UserDto> first = coalescer.submit("a@javaet.net", request("1"));
+        CompletableFuture<UserDto> second = coalescer.submit("a@javaet.net", request("2"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UserIsNotActiveException.class, e.getCause());
+        assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testClose_itShouldWritePendingUpdates() throws Exception {
+        coalescer = new UserUpdateCoalescer(recordingWriter(null, null), true, Duration.ofMillis(500), 1);
+
+        CompletableFuture<UserDto> pending = coalescer.submit("a@javaet.net", request("1"));
+        coalescer.close();
+
+        assertTrue(pending.isDone());
+        assertEquals("1", pending.get().getMiddleName());
+        assertThrows(IllegalStateException.class, () -> coalescer.submit("a@javaet.net", request("2")));
+    }
+
+    private BiFunction<String, UpdateUserRequest, UserDto> recordingWriter(CountDownLatch started, CountDownLatch release){
+        return (mail, request) -> {
+            synchronized (writes) {
+                writes.add(mail + "=" + request.getMiddleName());
+            }
+            if(started != null){
+                started.countDown();
+                await(release);
+            }
+            return new UserDto(mail, request.getFirstName(), request.getLastName(), request.getMiddleName());
+        };
+    }
+
+    private static UpdateUserRequest request(String middleName){
+        return new UpdateUserRequest("firstName", "lastName", middleName);
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.javaet.secondhand.user.snapshot;
+
+import com.javaet.secondhand.user.dto.UserChangeEventDto;
+import com.javaet.secondhand.user.dto.UserChangePageDto;
+import com.javaet.secondhand.user.exception.ChangeCursorExpiredException;
+import com.javaet.secondhand.user.model.UserChangeType;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.service.UserChangeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class UserSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private Path path;
+    private UserChangeService userChangeService;
+
+    @BeforeEach
+    void setUp() {
+        path = directory.resolve("user-snapshot.bin");
+        userChangeService = mock(UserChangeService.class);
+        when(userChangeService.getChanges(anyLong(), anyInt())).thenReturn(new UserChangePageDto(List.of(), 10, false));
+    }
+
+    @Test
+    void write_itShouldFindEveryUserByMailRegardlessOfScanOrder() throws IOException {
+        List<UserInformation> users = new ArrayList<>();
+        for(int i = 0; i < 5000; i++){
+            users.add(new UserInformation((long) i + 1, "user" + i + "@javaet.net", "firstName" + i, null, "", i % 2 == 0, (long) i));
+        }
+        users.add(new UserInformation(6000L, "şule.çelik@javaet.net", "Şule", "Çelik", "", true, 0L));
+        Collections.shuffle(users, new Random(42));
+
+        assertEquals(users.size(), UserSnapshotFile.write(path, 10, Instant.now(), users.iterator()));
+        UserSnapshotFile file = UserSnapshotFile.open(path);
+
+        assertEquals(users.size(), file.size());
+        assertEquals(10, file.getBasePosition());
+        for(UserInformation user : users){
+            UserInformation found = file.find(user.getMail());
+            assertEquals(user.getId(), found.getId());
+            assertEquals(user.getVersion(), found.getVersion());
+            assertEquals(user.getActive(), found.getActive());
+            assertEquals(user.getFirstName(), found.getFirstName());
+            assertEquals(user.getLastName(), found.getLastName());
+            assertEquals("", found.getMiddleName());
+        }
+        assertNull(file.find("none@javaet.net"));
+        assertNull(file.find("USER1@javaet.net"));
+        assertFalse(Files.exists(directory.resolve("user-snapshot.bin.tmp")));
+    }
+
+    @Test
+    void open_whenFileIsNotASnapshot_itShouldFail() throws IOException {
+        Files.write(path, new byte[64]);
+
+        assertThrows(IOException.class, () -> UserSnapshotFile.open(path));
+    }
+
+    @Test
+    void find_itShouldApplyChangesAfterSnapshot() throws IOException {
+        writeSnapshot(user(1L, "a@javaet.net", "A", 0L), user(2L, "b@javaet.net", "B", 0L), user(3L, "c@javaet.net", "C", 0L));
+        when(userChangeService.getChanges(10L, UserChangeService.MAX_CHANGES_LIMIT)).thenReturn(new UserChangePageDto(List.of(
+                event(11, UserChangeType.UPDATED, user(1L, "a@javaet.net", "A2", 1L)),
+                event(12, UserChangeType.DELETED, user(2L, "b@javaet.net", "B", 0L)),
+                event(13, UserChangeType.CREATED, user(4L, "d@javaet.net", "D", 0L)),
+                //Snapshot'a zaten girmiş eski bir değişikliğin tekrarı.
+                event(14, UserChangeType.UPDATED, user(3L, "c@javaet.net", "old", 0L))), 14, false));
+        UserSnapshot snapshot = loadedSnapshot();
+
+        assertEquals("A2", snapshot.find("a@javaet.net").orElseThrow().getFirstName());
+        assertTrue(snapshot.find("b@javaet.net").isEmpty());
+        assertEquals(4L, snapshot.find("d@javaet.net").orElseThrow().getId());
+        assertEquals("C", snapshot.find("c@javaet.net").orElseThrow().getFirstName());
+    }
+
+    @Test
+    void find_whenUserIsRecreatedAfterDeletion_itShouldReturnNewUser() throws IOException {
+        writeSnapshot(user(1L, "a@javaet.net", "A", 3L));
+        UserSnapshot snapshot = loadedSnapshot();
+
+        snapshot.put(user(5L, "a@javaet.net", "new", 0L));
+        //Silme event'i yeni kullanıcıdan sonra gelse de eski id'ye ait.
+        when(userChangeService.getChanges(10L, UserChangeService.MAX_CHANGES_LIMIT)).thenReturn(new UserChangePageDto(List.of(
+                event(11, UserChangeType.DELETED, user(1L, "a@javaet.net", "A", 3L))), 11, false));
+        snapshot.catchUp();
+
+        assertEquals("new", snapshot.find("a@javaet.net").orElseThrow().getFirstName());
+    }
+
+    @Test
+    void find_whenUserIsChangedById_itShouldNotReturnSnapshotRecordUntilChangeArrives() throws IOException {
+        writeSnapshot(user(1L, "a@javaet.net", "A", 0L));
+        UserSnapshot snapshot = loadedSnapshot();
+
+        snapshot.invalidate(List.of(1L));
+        assertTrue(snapshot.find("a@javaet.net").isEmpty());
+
+        when(userChangeService.getChanges(10L, UserChangeService.MAX_CHANGES_LIMIT)).thenReturn(new UserChangePageDto(List.of(
+                event(11, UserChangeType.ACTIVATED, user(1L, "a@javaet.net", "A", 1L))), 11, false));
+        snapshot.catchUp();
+        assertEquals(1L, snapshot.find("a@javaet.net").orElseThrow().getVersion());
+    }
+
+    @Test
+    void find_whenChangesAfterSnapshotAreNotRetained_itShouldNotUseSnapshot() throws IOException {
+        writeSnapshot(user(1L, "a@javaet.net", "A", 0L));
+        when(userChangeService.getChanges(10L, UserChangeService.MAX_CHANGES_LIMIT))
+                .thenThrow(new ChangeCursorExpiredException("expired"));
+        UserSnapshot snapshot = loadedSnapshot();
+
+        assertFalse(snapshot.isReady());
+        assertTrue(snapshot.find("a@javaet.net").isEmpty());
+    }
+
+    @Test
+    void find_whenDisabledOrNoFileExists_itShouldReturnEmpty() throws IOException {
+        UserSnapshot withoutFile = loadedSnapshot();
+        assertTrue(withoutFile.find("a@javaet.net").isEmpty());
+
+        writeSnapshot(user(1L, "a@javaet.net", "A", 0L));
+        UserSnapshot disabled = new UserSnapshot(userChangeService, false, path);
+        disabled.load();
+        assertEquals(Optional.empty(), disabled.find("a@javaet.net"));
+        verifyNoInteractions(userChangeService);
+    }
+
+    private UserSnapshot loadedSnapshot(){
+        UserSnapshot snapshot = new UserSnapshot(userChangeService, true, path);
+        snapshot.load();
+        return snapshot;
+    }
+
+    private void writeSnapshot(UserInformation... users) throws IOException {
+        UserSnapshotFile.write(path, 10, Instant.now(), List.of(users).iterator());
+    }
+
+    private static UserInformation user(Long id, String mail, String firstName, Long version){
+        return new UserInformation(id, mail, firstName, "lastName", "", true, version);
+    }
+
+    private static UserChangeEventDto event(long position, UserChangeType type, UserInformation user){
+        return new UserChangeEventDto(position, type, user.getId(), user.getMail(), user.getFirstName(), user.getLastName(),
+                user.getMiddleName(), user.getActive(), user.getVersion(), Instant.now());
+    }
+}
@@ -0,0 +1,8 @@
+package com.javaet.secondhand.user;
+
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/*Benchmarklar user modülünü SecondhandApplication olmadan ayağa kaldırabilsin diye. Sadece jmh source set'inde var.*/
+@SpringBootApplication
+public class UserBenchmarkApplication {
+}
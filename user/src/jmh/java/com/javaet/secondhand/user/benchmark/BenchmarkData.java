@@ -0,0 +1,57 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.model.UserInformation;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+final class BenchmarkData {
+
+    private static final String[] FIRST_NAMES = {"Ayşe", "Fatma", "Emine", "Hatice", "Zeynep", "Elif", "Meryem", "Şerife",
+            "Zehra", "Sultan", "Mehmet", "Mustafa", "Ahmet", "Ali", "Hüseyin", "Hasan", "İbrahim", "İsmail", "Osman", "Yusuf",
+            "Murat", "Ömer", "Ramazan", "Halil", "Süleyman", "Abdullah", "Mahmut", "Recep", "Salih", "Kemal", "Burak",
+            "Emre", "Can", "Deniz", "Ece", "Selin", "Büşra", "Gizem", "Merve", "Tuğba"};
+    private static final String[] LAST_NAMES = {"Yılmaz", "Kaya", "Demir", "Şahin", "Çelik", "Yıldız", "Yıldırım",
+            "Öztürk", "Aydın", "Özdemir", "Arslan", "Doğan", "Kılıç", "Aslan", "Çetin", "Kara", "Koç", "Kurt", "Özkan",
+            "Şimşek", "Polat", "Korkmaz", "Karataş", "Güneş", "Erdoğan", "Yalçın", "Aksoy", "Acar", "Turan", "Bulut",
+            "Güler", "Tekin", "Kaplan", "Keskin", "Avcı", "Uçar", "Sarı", "Ünal", "Bozkurt", "Işık"};
+
+    private BenchmarkData() {
+    }
+
+    static String mail(int i){
+        return "user" + i + "@javaet.net";
+    }
+
+    static List<UserInformation> users(int size){
+        return IntStream.range(0, size)
+                .mapToObj(i -> new UserInformation((long) i + 1, mail(i), "firstName" + i, "lastName" + i, "", i % 2 == 0))
+                .collect(Collectors.toList());
+    }
+
+    //Arama benchmarkı için gerçekçi isim dağılımı. İsimler çok tekrar ettiği için yaygın isim aramaları binlerce aday döner.
+    static List<UserInformation> namedUsers(int size){
+        Random random = new Random(42);
+        return IntStream.range(0, size)
+                .mapToObj(i -> new UserInformation((long) i + 1, mail(i), FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                        LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                        random.nextInt(10) == 0 ? FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] : "", i % 2 == 0))
+                .collect(Collectors.toList());
+    }
+
+    static List<UserDto> userDtos(int size){
+        return IntStream.range(0, size)
+                .mapToObj(i -> new UserDto(mail(i), "firstName" + i, "lastName" + i, ""))
+                .collect(Collectors.toList());
+    }
+
+    static List<CreateUserRequest> createUserRequests(int size){
+        return IntStream.range(0, size)
+                .mapToObj(i -> new CreateUserRequest(mail(i), "firstName" + i, "lastName" + i, ""))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,38 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.dto.UserDtoConverter;
+import com.javaet.secondhand.user.model.UserInformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserDtoConverterBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private final UserDtoConverter converter = new UserDtoConverter();
+    private UserInformation user;
+    private List<UserInformation> users;
+
+    @Setup
+    public void setUp(){
+        users = BenchmarkData.users(size);
+        user = users.get(0);
+    }
+
+    @Benchmark
+    public UserDto convertSingle(){
+        return converter.convert(user);
+    }
+
+    @Benchmark
+    public List<UserDto> convertList(){
+        return converter.convert(users);
+    }
+}
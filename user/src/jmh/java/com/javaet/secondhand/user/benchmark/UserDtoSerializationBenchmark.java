@@ -0,0 +1,78 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.kotlin.KotlinModule;
+import com.javaet.secondhand.user.dto.UserDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/*GET /v1/user'in desteklediği formatlar. serializeListGzip server.compression açıkken Tomcat'in yaptığı işin
+* (varsayılan seviyede gzip) maliyetini de ekliyor. Kablodaki byte sayıları setUp'da bir kere yazdırılıyor.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserDtoSerializationBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private ObjectReader listReader;
+    private List<UserDto> users;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = objectMapper(format).registerModule(new KotlinModule.Builder().build());
+        listReader = objectMapper.readerFor(new TypeReference<List<UserDto>>() {});
+        users = BenchmarkData.userDtos(size);
+        serialized = objectMapper.writeValueAsBytes(users);
+        System.out.printf("%nformat=%s size=%d bytes=%d gzipBytes=%d%n", format, size, serialized.length, gzip(serialized).length);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return objectMapper.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] serializeListGzip() throws IOException {
+        return gzip(objectMapper.writeValueAsBytes(users));
+    }
+
+    @Benchmark
+    public List<UserDto> deserializeList() throws IOException {
+        return listReader.readValue(serialized);
+    }
+
+    private static ObjectMapper objectMapper(String format){
+        switch (format){
+            case "smile":
+                return new ObjectMapper(new SmileFactory());
+            case "cbor":
+                return new ObjectMapper(new CBORFactory());
+            default:
+                return new ObjectMapper();
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)){
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
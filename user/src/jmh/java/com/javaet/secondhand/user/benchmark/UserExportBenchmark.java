@@ -0,0 +1,103 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.UserBenchmarkApplication;
+import com.javaet.secondhand.user.dto.UserExportDto;
+import com.javaet.secondhand.user.export.UserExportFormat;
+import com.javaet.secondhand.user.export.UserExportService;
+import com.javaet.secondhand.user.export.UserExportStatus;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*Tüm tablonun export'u, bir iterasyon bir export. Süre dosya birleştirme dahil, her iterasyonun sonunda satır/sn ve
+* dosya boyutu yazılıyor. threads=1 paralel okumasız hali.
+*
+* 10M kullanıcı heap'e sığmadığı için H2 in-memory değil dosya olarak açılıyor. Tablo importUsers yerine tek bir
+* INSERT ... SELECT ile dolduruluyor, import her kullanıcıyı outbox'a da yazıyor. Dosya temp dizininde kalıyor, sonraki
+* trial'lar (ve çalıştırmalar) aynı tabloyu kullanıyor.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class UserExportBenchmark {
+
+    private static final int INSERT_CHUNK = 1_000_000;
+
+    @Param({"10000000"})
+    private int size;
+
+    @Param({"CSV", "NDJSON"})
+    private UserExportFormat format;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private UserExportService userExportService;
+    private UserExportDto lastExport;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path database = Path.of(System.getProperty("java.io.tmpdir"), "user-export-benchmark-" + size);
+        directory = Files.createTempDirectory("user-export-benchmark");
+        context = new SpringApplicationBuilder(UserBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:file:" + database.toAbsolutePath(),
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--user.scheduling.enabled=false",
+                        "--user.export.directory=" + directory.resolve("exports"),
+                        "--user.export.threads=" + threads,
+                        "--logging.level.root=WARN");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Long users = jdbcTemplate.queryForObject("select count(*) from user_information", Long.class);
+        if(users == null || users != size){
+            jdbcTemplate.update("delete from user_information");
+            for(int from = 1; from <= size; from += INSERT_CHUNK){
+                jdbcTemplate.update("insert into user_information (id, mail, first_name, last_name, middle_name, is_active, version) " +
+                        "select x, concat('user', x, '@javaet.net'), concat('firstName', x), concat('lastName', x), '', " +
+                        "mod(x, 2) = 0, 0 from system_range(?, ?)", from, Math.min(size, from + INSERT_CHUNK - 1));
+            }
+        }
+        userExportService = context.getBean(UserExportService.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteExport(){
+        if(lastExport != null){
+            System.out.printf("%nexport rows=%d rows/s=%d bytes=%d%n", lastExport.getRowsWritten(),
+                    lastExport.getRowsPerSecond(), lastExport.getFileBytes());
+            userExportService.deleteExport(lastExport.getId());
+            lastExport = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public UserExportDto export() throws InterruptedException {
+        String id = userExportService.startExport(format).getId();
+        UserExportDto export;
+        while((export = userExportService.getExport(id)).getStatus() == UserExportStatus.RUNNING){
+            Thread.sleep(10);
+        }
+        if(export.getStatus() != UserExportStatus.COMPLETED){
+            throw new IllegalStateException("Export " + export.getStatus() + ": " + export.getError());
+        }
+        lastExport = export;
+        return export;
+    }
+}
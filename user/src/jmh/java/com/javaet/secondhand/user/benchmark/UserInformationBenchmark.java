@@ -0,0 +1,46 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.model.UserInformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserInformationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private UserInformation user;
+    private UserInformation equalUser;
+    private List<UserInformation> users;
+
+    @Setup
+    public void setUp(){
+        users = BenchmarkData.users(size);
+        user = users.get(0);
+        equalUser = new UserInformation(user.getId(), user.getMail(), user.getFirstName(), user.getLastName(),
+                user.getMiddleName(), user.getActive());
+    }
+
+    @Benchmark
+    public boolean equalsSameValues(){
+        return user.equals(equalUser);
+    }
+
+    @Benchmark
+    public int hashCodeSingle(){
+        return user.hashCode();
+    }
+
+    /*equals ve hashCode'un birlikte en çok kullanıldığı yer, HashSet'e ekleme.*/
+    @Benchmark
+    public Set<UserInformation> addAllToHashSet(){
+        return new HashSet<>(users);
+    }
+}
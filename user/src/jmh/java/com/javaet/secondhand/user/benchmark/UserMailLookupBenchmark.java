@@ -0,0 +1,81 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.UserBenchmarkApplication;
+import com.javaet.secondhand.user.cache.MailBloomFilter;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.exception.UserNotFoundException;
+import com.javaet.secondhand.user.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*Olmayan bir mail'in okunması ve kayıt formundaki "mail boşta mı" kontrolü, mail filter kapalı ve açıkken.
+* Filter expected-insertions=size ile boyutlanıyor, yani dolu haldeki yanlış pozitif oranı ~%1. Setup'da size kadar
+* olmayan mail ile ölçülen yanlış pozitif oranı ve filter'ın belleği yazdırılıyor.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserMailLookupBenchmark {
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean mailFilter;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = new SpringApplicationBuilder(UserBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:user-mail-lookup-benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "--spring.jpa.properties.hibernate.order_inserts=true",
+                        "--user.mail-filter.enabled=" + mailFilter,
+                        "--user.mail-filter.expected-insertions=" + size,
+                        "--logging.level.root=WARN");
+        userService = context.getBean(UserService.class);
+        userService.importUsers(BenchmarkData.createUserRequests(size).iterator());
+
+        if(mailFilter){
+            MailBloomFilter filter = context.getBean(MailBloomFilter.class);
+            int falsePositives = 0;
+            for(int i = size; i < 2 * size; i++){
+                if(filter.mightContain(BenchmarkData.mail(i))){
+                    falsePositives++;
+                }
+            }
+            System.out.printf("%nelements=%d memory=%d bytes expectedFpp=%.4f measuredFpp=%.4f%n",
+                    filter.stats().getElements(), filter.memoryBytes(), filter.expectedFpp(), (double) falsePositives / size);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public UserDto missingUser(){
+        try {
+            return userService.getUserByMail(missingMail());
+        } catch (UserNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public boolean mailAvailable(){
+        return userService.isMailAvailable(missingMail());
+    }
+
+    private String missingMail(){
+        return BenchmarkData.mail(size + ThreadLocalRandom.current().nextInt(size));
+    }
+}
@@ -0,0 +1,107 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.UserBenchmarkApplication;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.dto.UserDtoConverter;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+/*Okuma endpoint'lerinin entity yükleyip UserDtoConverter ile dönüştürmesi (entity) ile sorgudan doğrudan
+* detached nesne ya da UserDto oluşturması (projection) karşılaştırılıyor. İkisi de readOnly transaction'da.
+* page en büyük sayfayı (500), streamAll tüm tabloyu okuyor. B/op için gc profiler'ın gc.alloc.rate.norm'una bakılmalı.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserReadProjectionBenchmark {
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    @Param({"entity", "projection"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+    private UserInformationRepository repository;
+    private UserDtoConverter converter;
+    private EntityManager entityManager;
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = new SpringApplicationBuilder(UserBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:user-projection-benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "--spring.jpa.properties.hibernate.order_inserts=true",
+                        "--logging.level.root=WARN");
+        repository = context.getBean(UserInformationRepository.class);
+        converter = context.getBean(UserDtoConverter.class);
+        entityManager = context.getBean(EntityManager.class);
+        readOnlyTransactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransactionTemplate.setReadOnly(true);
+
+        context.getBean(UserService.class).importUsers(BenchmarkData.createUserRequests(size).iterator());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public List<UserDto> page(){
+        long after = ThreadLocalRandom.current().nextInt(size - UserService.MAX_PAGE_SIZE);
+        PageRequest pageable = PageRequest.of(0, UserService.MAX_PAGE_SIZE + 1);
+        return readOnlyTransactionTemplate.execute(status -> {
+            if("entity".equals(mode)){
+                //Değişiklikten önceki findByIdGreaterThanOrderByIdAsc'in ürettiği sorgu.
+                List<UserInformation> users = entityManager
+                        .createQuery("select u from UserInformation u where u.id > :id order by u.id", UserInformation.class)
+                        .setParameter("id", after)
+                        .setMaxResults(pageable.getPageSize())
+                        .getResultList();
+                return converter.convert(users);
+            }
+            return converter.convert(repository.findDetachedByIdGreaterThan(after, pageable));
+        });
+    }
+
+    @Benchmark
+    public void streamAll(Blackhole blackhole){
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            if("entity".equals(mode)){
+                //Değişiklikten önceki streamAllUsers.
+                try(Stream<UserInformation> users = entityManager
+                        .createQuery("select u from UserInformation u order by u.id", UserInformation.class)
+                        .setHint(HINT_FETCH_SIZE, 500)
+                        .getResultStream()){
+                    users.forEach(user -> {
+                        blackhole.consume(converter.convert(user));
+                        entityManager.detach(user);
+                    });
+                }
+                return;
+            }
+            try(Stream<UserDto> users = repository.streamAllAsDto()){
+                users.forEach(blackhole::consume);
+            }
+        });
+    }
+}
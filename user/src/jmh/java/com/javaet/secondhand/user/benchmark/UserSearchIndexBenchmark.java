@@ -0,0 +1,45 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.search.UserSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*SampleTime modunda p50/p99 gibi yüzdelikler de raporlanıyor.
+* ./gradlew :user:jmh -Pjmh.includes=UserSearchIndexBenchmark*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserSearchIndexBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int size;
+
+    //Yaygın isim, iki terim, isim içinde geçen parça, seçici mail prefix'i ve 2 karakterlik prefix.
+    @Param({"ayse", "ayse yil", "demi", "user12345@", "ay"})
+    private String query;
+
+    private UserSearchIndex userSearchIndex;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        List<UserInformation> users = BenchmarkData.namedUsers(size);
+        userSearchIndex = new UserSearchIndex(true);
+        for(int from = 0; from < users.size(); from += 10_000){
+            userSearchIndex.putAll(users.subList(from, Math.min(from + 10_000, users.size())));
+        }
+    }
+
+    @Benchmark
+    public List<UserInformation> searchTop20(){
+        return userSearchIndex.search(query, 20, false);
+    }
+
+    @Benchmark
+    public List<UserInformation> searchTop20ActiveOnly(){
+        return userSearchIndex.search(query, 20, true);
+    }
+}
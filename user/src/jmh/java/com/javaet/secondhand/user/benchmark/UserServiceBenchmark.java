@@ -0,0 +1,86 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.UserBenchmarkApplication;
+import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.dto.UpdateUserRequest;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.dto.UserPageDto;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/*UserService'in okuma ve yazma yollarını gömülü H2 üzerinde ölçer. cacheTtl=0s iken cache'e konan kayıt hemen
+* expire oluyor ve getUserByMail her seferinde veritabanına gidiyor, böylece cache'li ve cache'siz yol ayrı görülebiliyor.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"0s", "10m"})
+    private String cacheTtl;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private List<Long> ids;
+    private final AtomicLong createdUsers = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        //properties(...) default property olarak ekleniyor ve application.properties onları ezebiliyor, o yüzden argüman veriyoruz.
+        context = new SpringApplicationBuilder(UserBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:user-benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "--spring.jpa.properties.hibernate.order_inserts=true",
+                        "--user.cache.time-to-live=" + cacheTtl,
+                        "--logging.level.root=WARN");
+        userService = context.getBean(UserService.class);
+
+        userService.importUsers(BenchmarkData.createUserRequests(size).iterator());
+        ids = context.getBean(UserInformationRepository.class).findAll().stream()
+                .map(UserInformation::getId)
+                .collect(Collectors.toList());
+        userService.activateUsers(ids);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public UserDto getUserByMail(){
+        return userService.getUserByMail(BenchmarkData.mail(ThreadLocalRandom.current().nextInt(size)));
+    }
+
+    @Benchmark
+    public UserPageDto getAllUserPage(){
+        return userService.getAllUser(ids.get(ThreadLocalRandom.current().nextInt(ids.size())), UserService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public UserDto createUser(){
+        long i = createdUsers.incrementAndGet();
+        return userService.createUser(new CreateUserRequest("created" + i + "@javaet.net", "firstName", "lastName", ""));
+    }
+
+    @Benchmark
+    public UserDto updateUser(){
+        int i = ThreadLocalRandom.current().nextInt(size);
+        return userService.updateUser(BenchmarkData.mail(i), new UpdateUserRequest("firstName" + i, "lastName" + i,
+                String.valueOf(System.nanoTime())));
+    }
+}
@@ -0,0 +1,97 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.UserBenchmarkApplication;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.service.UserService;
+import com.javaet.secondhand.user.snapshot.UserSnapshotWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*Deploy'dan sonra yeni açılan bir instance'ın ilk istekleri. Trial başında tablo doldurulup snapshot yazılıyor. Her
+* iterasyonda aynı veritabanına bağlanan yeni bir context açılıyor (cache'ler boş) ve ilk requests kadar mail okuması
+* tek seferde ölçülüyor. snapshot=false'da hepsi veritabanına gidiyor. Okumalar birbirinden farklı mail'ler, yani
+* ölçülen sürenin tamamı cache'lerin soğuk olduğu bölge.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserSnapshotWarmStartBenchmark {
+
+    private static final String DATASOURCE_URL = "--spring.datasource.url=jdbc:h2:mem:user-snapshot-benchmark;DB_CLOSE_DELAY=-1";
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"10000"})
+    private int requests;
+
+    @Param({"false", "true"})
+    private boolean snapshot;
+
+    private Path snapshotPath;
+    private ConfigurableApplicationContext writerContext;
+    private ConfigurableApplicationContext context;
+    private int[] mails;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        snapshotPath = Files.createTempDirectory("user-snapshot-benchmark").resolve("user-snapshot.bin");
+        writerContext = new SpringApplicationBuilder(UserBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(DATASOURCE_URL,
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "--spring.jpa.properties.hibernate.order_inserts=true",
+                        "--user.snapshot.path=" + snapshotPath,
+                        "--logging.level.root=WARN");
+        writerContext.getBean(UserService.class).importUsers(BenchmarkData.createUserRequests(size).iterator());
+        int written = writerContext.getBean(UserSnapshotWriter.class).write();
+        System.out.printf("%nsnapshot users=%d bytes=%d%n", written, Files.size(snapshotPath));
+
+        List<Integer> shuffled = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        Collections.shuffle(shuffled, new Random(42));
+        mails = shuffled.subList(0, requests).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Setup(Level.Iteration)
+    public void startInstance(){
+        context = new SpringApplicationBuilder(UserBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(DATASOURCE_URL,
+                        "--spring.jpa.hibernate.ddl-auto=none",
+                        "--user.snapshot.enabled=" + snapshot,
+                        "--user.snapshot.path=" + snapshotPath,
+                        "--logging.level.root=WARN");
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopInstance(){
+        context.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writerContext.close();
+        Files.deleteIfExists(snapshotPath);
+    }
+
+    @Benchmark
+    public void firstRequests(Blackhole blackhole){
+        UserService userService = context.getBean(UserService.class);
+        for(int i : mails){
+            UserDto user = userService.getUserByMail(BenchmarkData.mail(i));
+            blackhole.consume(user);
+        }
+    }
+}
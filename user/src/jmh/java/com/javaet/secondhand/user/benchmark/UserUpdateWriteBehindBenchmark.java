@@ -0,0 +1,80 @@
+package com.javaet.secondhand.user.benchmark;
+
+import com.javaet.secondhand.user.UserBenchmarkApplication;
+import com.javaet.secondhand.user.dto.UpdateUserRequest;
+import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.service.UserService;
+import com.javaet.secondhand.user.service.UserUpdateCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*Aynı kullanıcılara yoğun PUT. hotUsers kaç farklı kullanıcının güncellendiği, az olduğunda aynı kullanıcıya eşzamanlı
+* güncelleme artıyor. writeBehind=false updateUser'ı doğrudan çağırıyor, true ise UserUpdateCoalescer'a verip yazılmasını
+* bekliyor (Prefer: return=representation ile aynı). Her güncelleme commit'i beklediği için iki taraf da aynı
+* dayanıklılıkta. Doğrudan yazmada aynı kullanıcıya eşzamanlı güncellemeler satır kilidini sırayla bekliyor.
+* Write-behind'da kaç güncellemenin kaç yazmaya indiği tearDown'da yazdırılıyor.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class UserUpdateWriteBehindBenchmark {
+
+    @Param({"10", "10000"})
+    private int hotUsers;
+
+    @Param({"false", "true"})
+    private boolean writeBehind;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private UserUpdateCoalescer userUpdateCoalescer;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = new SpringApplicationBuilder(UserBenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:user-write-behind-benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=500",
+                        "--spring.jpa.properties.hibernate.order_inserts=true",
+                        "--user.write-behind.enabled=" + writeBehind,
+                        "--user.write-behind.window=10ms",
+                        "--logging.level.root=WARN");
+        userService = context.getBean(UserService.class);
+        userUpdateCoalescer = context.getBean(UserUpdateCoalescer.class);
+
+        userService.importUsers(BenchmarkData.createUserRequests(hotUsers).iterator());
+        userService.activateUsers(context.getBean(UserInformationRepository.class).findAll().stream()
+                .map(UserInformation::getId)
+                .collect(Collectors.toList()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        if(writeBehind){
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+            System.out.printf("%nhotUsers=%d updates=%.0f writes=%.0f%n", hotUsers,
+                    registry.get("user.write.behind.updates").functionCounter().count(),
+                    registry.get("user.write.behind.writes").functionCounter().count());
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public UserDto updateUser(){
+        int i = ThreadLocalRandom.current().nextInt(hotUsers);
+        UpdateUserRequest request = new UpdateUserRequest("firstName" + i, "lastName" + i, String.valueOf(System.nanoTime()));
+        if(writeBehind){
+            return userUpdateCoalescer.submit(BenchmarkData.mail(i), request).join();
+        }
+        return userService.updateUser(BenchmarkData.mail(i), request);
+    }
+}
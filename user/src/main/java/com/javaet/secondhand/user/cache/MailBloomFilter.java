@@ -0,0 +1,281 @@
+package com.javaet.secondhand.user.cache;
+
+import com.javaet.secondhand.user.dto.MailFilterStatsDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/*Kayıtlı mail'lerin bellekte tutulan counting Bloom filter'ı. mightContain false dönerse o mail kesinlikle yok,
+* veritabanına gitmeye gerek kalmıyor. true dönerse var ya da yanlış pozitif, veritabanına bakılıyor.
+*
+* Silme de desteklensin diye her pozisyon bit değil 4 bit'lik bir sayaç, bir long'da 16 sayaç var. Sayaçlar CAS ile
+* artırılıp azaltılıyor, okumalar ve yazmalar birbirini beklemiyor. 15'e ulaşan sayaç bir daha azaltılmıyor, o
+* pozisyon kalıcı olarak dolu sayılıyor (sadece yanlış pozitif demek).
+*
+* Boyut expected-insertions ve fpp'den hesaplanıyor: m = -n ln(p) / ln(2)^2 sayaç, k = m/n ln(2) hash. Hash'ler
+* mail'in 64 bit'lik hash'inden double hashing ile (h1 + i*h2) türetiliyor.
+*
+* Yanlış negatif yanlış bir 404 demek, bu yüzden:
+* - Filter UserService'in yazmalarından önce dolu olmalı. Startup'ta MailBloomFilterInitializer tabloyu tarayana kadar
+*   ready değil, mightContain her mail için true dönüyor.
+* - Yaratmadan önce ekleniyor, silmede commit'ten sonra çıkarılıyor. Tarama sürerken silmeler uygulanmıyor, tarama o
+*   satırı görmüş de olabilir görmemiş de, eklenmemiş bir mail'i çıkarmak başka mail'lerin sayaçlarını düşürürdü.
+* - Mail'ler MySQL collation'ı gibi büyük/küçük harf ve aksan farkını yok sayacak şekilde normalize ediliyor. Fazla
+*   normalize etmek sadece yanlış pozitif üretir.
+*
+* Arama index'i gibi sadece bu instance'ın yazmalarını görüyor, başka instance'ın yarattığı kullanıcıya yanlış 404
+* döner. Bu yüzden varsayılan olarak kapalı, tabloya tek bir instance'ın yazdığı kurulumlarda
+* user.mail-filter.enabled=true ile açılmalı.*/
+@Component
+public class MailBloomFilter implements MeterBinder {
+
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final long counterCount;
+    private final int hashCount;
+    private final AtomicLongArray words;
+
+    private final AtomicLong elements = new AtomicLong();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder definiteMisses = new LongAdder();
+    private final LongAdder saturatedCounters = new LongAdder();
+    private volatile boolean building;
+    private volatile boolean ready;
+
+    @Autowired
+    public MailBloomFilter(@Value("${user.mail-filter.enabled:false}") boolean enabled,
+                           @Value("${user.mail-filter.expected-insertions:1000000}") long expectedInsertions,
+                           @Value("${user.mail-filter.fpp:0.01}") double fpp) {
+        if(expectedInsertions <= 0 || fpp <= 0 || fpp >= 1){
+            throw new IllegalArgumentException("expected-insertions must be positive and fpp between 0 and 1");
+        }
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        long counters = enabled ? (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))) : 1;
+        this.counterCount = roundUpToWord(counters);
+        this.hashCount = Math.max(1, (int) Math.round((double) counters / expectedInsertions * Math.log(2)));
+        this.words = new AtomicLongArray((int) (counterCount / COUNTERS_PER_WORD));
+    }
+
+    MailBloomFilter(long expectedInsertions, double fpp) {
+        this(true, expectedInsertions, fpp);
+    }
+
+    /*false -> mail kesinlikle yok. Filter kapalıysa ya da henüz dolmadıysa her zaman true.*/
+    public boolean mightContain(String mail){
+        if(!ready){
+            return true;
+        }
+        lookups.increment();
+        long hash1 = hash(mail);
+        long hash2 = secondHash(hash1);
+        for(int i = 0; i < hashCount; i++){
+            if(counter(index(hash1 + i * hash2)) == 0){
+                definiteMisses.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(String mail){
+        if(!enabled){
+            return;
+        }
+        long hash1 = hash(mail);
+        long hash2 = secondHash(hash1);
+        for(int i = 0; i < hashCount; i++){
+            increment(index(hash1 + i * hash2));
+        }
+        elements.incrementAndGet();
+    }
+
+    public void addAll(Collection<String> mails){
+        mails.forEach(this::add);
+    }
+
+    /*Sadece add ile eklenmiş (ya da taramada görülmüş) bir mail için çağrılmalı.*/
+    public void remove(String mail){
+        if(!enabled || building){
+            return;
+        }
+        long hash1 = hash(mail);
+        long hash2 = secondHash(hash1);
+        for(int i = 0; i < hashCount; i++){
+            decrement(index(hash1 + i * hash2));
+        }
+        elements.decrementAndGet();
+    }
+
+    public void removeAll(Collection<String> mails){
+        mails.forEach(this::remove);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void startBuild(){
+        building = true;
+    }
+
+    /*Tarama hata ile biterse filter ready olmuyor, okumalar veritabanına gitmeye devam ediyor.*/
+    public void finishBuild(boolean succeeded){
+        building = false;
+        ready = enabled && succeeded;
+    }
+
+    /*Şu anki eleman sayısı ile beklenen yanlış pozitif oranı: (1 - e^(-kn/m))^k.*/
+    public double expectedFpp(){
+        long n = Math.max(0, elements.get());
+        return Math.pow(1 - Math.exp(-(double) hashCount * n / counterCount), hashCount);
+    }
+
+    public long memoryBytes(){
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public MailFilterStatsDto stats(){
+        return new MailFilterStatsDto(enabled, ready, expectedInsertions, fpp, Math.max(0, elements.get()), counterCount,
+                hashCount, memoryBytes(), expectedFpp(), lookups.sum(), definiteMisses.sum(), saturatedCounters.sum());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("user.mail.filter.elements", elements, AtomicLong::get)
+                .description("Mails added to the mail filter").register(registry);
+        Gauge.builder("user.mail.filter.expected.fpp", this, MailBloomFilter::expectedFpp)
+                .description("Expected false positive rate at the current element count").register(registry);
+        Gauge.builder("user.mail.filter.memory", this, MailBloomFilter::memoryBytes)
+                .baseUnit("bytes").description("Memory used by the mail filter counters").register(registry);
+        FunctionCounter.builder("user.mail.filter.lookups", lookups, LongAdder::sum)
+                .description("Mail filter lookups").register(registry);
+        FunctionCounter.builder("user.mail.filter.definite.misses", definiteMisses, LongAdder::sum)
+                .description("Lookups answered without a query").register(registry);
+    }
+
+    private int counter(long index){
+        long word = words.get((int) (index / COUNTERS_PER_WORD));
+        return (int) ((word >>> shift(index)) & COUNTER_MASK);
+    }
+
+    private void increment(long index){
+        int wordIndex = (int) (index / COUNTERS_PER_WORD);
+        int shift = shift(index);
+        while(true){
+            long word = words.get(wordIndex);
+            long counter = (word >>> shift) & COUNTER_MASK;
+            if(counter == COUNTER_MASK){
+                return;
+            }
+            if(words.compareAndSet(wordIndex, word, word + (1L << shift))){
+                if(counter + 1 == COUNTER_MASK){
+                    saturatedCounters.increment();
+                }
+                return;
+            }
+        }
+    }
+
+    private void decrement(long index){
+        int wordIndex = (int) (index / COUNTERS_PER_WORD);
+        int shift = shift(index);
+        while(true){
+            long word = words.get(wordIndex);
+            long counter = (word >>> shift) & COUNTER_MASK;
+            //Dolmuş sayacın kaç kez artırıldığını bilmiyoruz, 0 ise zaten eklenmemiş bir şey çıkarılıyor.
+            if(counter == COUNTER_MASK || counter == 0){
+                return;
+            }
+            if(words.compareAndSet(wordIndex, word, word - (1L << shift))){
+                return;
+            }
+        }
+    }
+
+    private long index(long hash){
+        return Math.floorMod(hash, counterCount);
+    }
+
+    private static int shift(long index){
+        return (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+    }
+
+    private static long roundUpToWord(long counters){
+        return (counters + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD * COUNTERS_PER_WORD;
+    }
+
+    /*MySQL collation'ına göre aynı olan mail'ler için aynı değer. MailLookupCoalescer sorgu sonuçlarını istenen mail'lerle
+    * bununla eşleştiriyor.*/
+    public static String normalize(String mail){
+        String lowerCase = mail.trim().toLowerCase(Locale.ROOT).replace('ı', 'i');
+        return COMBINING_MARKS.matcher(Normalizer.normalize(lowerCase, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    /*FNV-1a, ardından murmur3'ün fmix64'ü ile karıştırılıyor. Mail'lerin neredeyse hepsi ASCII, onlar kopya string
+    * oluşturulmadan küçük harfe çevrilerek hash'leniyor. Diğerleri önce normalize ediliyor. UserShardRouter kullanıcının
+    * shard'ını da bundan seçiyor, değiştirilirse sharding açıkken kullanıcılar başka shard'da aranır.*/
+    public static long hash(String mail){
+        String value = isPlainAscii(mail) ? mail : normalize(mail);
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c >= 'A' && c <= 'Z'){
+                c += 'a' - 'A';
+            }
+            hash ^= c;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static boolean isPlainAscii(String mail){
+        int length = mail.length();
+        if(length == 0 || mail.charAt(0) <= ' ' || mail.charAt(length - 1) <= ' '){
+            return false;
+        }
+        for(int i = 0; i < length; i++){
+            if(mail.charAt(i) >= 0x80){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Tek sayı olsun ki adımlar counterCount'un bir bölenine takılıp aynı pozisyonlarda dönmesin.
+    private static long secondHash(long hash1){
+        return mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1;
+    }
+
+    private static long mix(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
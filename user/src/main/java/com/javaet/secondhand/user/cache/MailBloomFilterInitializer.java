@@ -0,0 +1,65 @@
+package com.javaet.secondhand.user.cache;
+
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.stream.Stream;
+
+/*Uygulama ayağa kalktıktan sonra mail kolonu bir kez taranıp filter dolduruluyor. Tarama bitene kadar filter her
+* mail için "olabilir" diyor, okumalar veritabanına gidiyor. Bu sırada yaratılan kullanıcılar filter'a doğrudan
+* ekleniyor. Tarama primary'den yapılıyor, replica'nın gecikmesi yüzünden yeni bir mail kaçırılmasın. Sharding açıksa
+* shard'lar sırayla taranıyor.*/
+@Component
+public class MailBloomFilterInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailBloomFilterInitializer.class);
+
+    private final MailBloomFilter mailBloomFilter;
+    private final UserInformationRepository userInformationRepository;
+    private final UserShardRouter userShardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    public MailBloomFilterInitializer(MailBloomFilter mailBloomFilter, UserInformationRepository userInformationRepository,
+                                      UserShardRouter userShardRouter, PlatformTransactionManager transactionManager) {
+        this.mailBloomFilter = mailBloomFilter;
+        this.userInformationRepository = userInformationRepository;
+        this.userShardRouter = userShardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build(){
+        if(!mailBloomFilter.isEnabled()){
+            return;
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        mailBloomFilter.startBuild();
+        try {
+            for(int shard : userShardRouter.allShards()){
+                userShardRouter.runOnShard(shard, () -> transactionTemplate.executeWithoutResult(status -> {
+                    try(Stream<String> mails = userInformationRepository.streamAllMails()){
+                        mails.forEach(mailBloomFilter::add);
+                    }
+                }));
+            }
+            succeeded = true;
+        } catch (RuntimeException e) {
+            logger.error("Mail filter could not be built, mail lookups will query the database", e);
+        } finally {
+            mailBloomFilter.finishBuild(succeeded);
+        }
+        if(succeeded){
+            logger.info(String.format("Mail filter built with %d mails in %d ms, %d bytes, expected false positive rate %.4f",
+                    mailBloomFilter.stats().getElements(), (System.nanoTime() - start) / 1_000_000,
+                    mailBloomFilter.memoryBytes(), mailBloomFilter.expectedFpp()));
+        }
+    }
+}
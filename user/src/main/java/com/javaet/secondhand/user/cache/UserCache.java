@@ -0,0 +1,123 @@
+package com.javaet.secondhand.user.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.javaet.secondhand.user.dto.UserCacheStatsDto;
+import com.javaet.secondhand.user.model.UserInformation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+@Component
+public class UserCache implements MeterBinder {
+
+    /*Yükleme süren bir kullanıcı bu süreden daha önce invalidate edildiyse yüklenen hali eski olamaz.*/
+    private static final Duration INVALIDATION_MEMORY = Duration.ofMinutes(1);
+
+    /*Normalize edilmiş mail -> kullanıcı. Boyut ve TTL ile sınırlı. MySQL collation'ı büyük/küçük harf ve aksanları
+    * ayırt etmediği için Foo@x.com ve foo@x.com aynı kullanıcı, cache'de de tek kayıt. UserInformation'da setter
+    * olmadığı için cache'deki nesne değiştirilemez, aynı instance'ı güvenle paylaşabiliyoruz.*/
+    private final Cache<String, UserInformation> usersByMail;
+
+    /*deleteUser ve changeActivateUser sadece id alıyor. Hangi mail'i silmemiz gerektiğini bu index'den buluyoruz.
+    * Key normalize edildiği için bir kullanıcının cache'de tek bir kaydı var. Sadece cache'de olan kullanıcılar için
+    * tutuluyor, cache'den düşen kayıt index'den de siliniyor.*/
+    private final ConcurrentMap<Long, String> mailsById = new ConcurrentHashMap<>();
+
+    /*Id -> invalidate edildiği andaki sayaç. Yükleme başladıktan sonra invalidate edilen kullanıcının yüklenen hali
+    * commit'ten önce okunmuş olabilir, cache'e konmuyor.*/
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Cache<Long, Long> invalidatedIds = Caffeine.newBuilder()
+            .expireAfterWrite(INVALIDATION_MEMORY)
+            .build();
+
+    public UserCache(@Value("${user.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${user.cache.time-to-live:10m}") Duration timeToLive) {
+        this.usersByMail = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .evictionListener((String mail, UserInformation user, RemovalCause cause) -> {
+                    if(user != null){
+                        mailsById.remove(user.getId(), mail);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /*Cache'de yoksa loader ile yüklenir, loader'a istenen mail olduğu gibi verilir. Aynı kullanıcı için eşzamanlı gelen
+    * istekler tek bir yüklemeyi bekler. Loader exception fırlatırsa (UserNotFoundException gibi) hiçbir şey
+    * cache'lenmez. Yükleme sürerken kullanıcı invalidate edildiyse yüklenen hali döner ama cache'lenmez.*/
+    public UserInformation get(String mail, Function<String, UserInformation> loader){
+        while(true){
+            long startedAt = invalidations.get();
+            UserInformation[] stale = new UserInformation[1];
+            UserInformation user = usersByMail.get(MailBloomFilter.normalize(mail), key -> {
+                UserInformation loaded = loader.apply(mail);
+                //Index'e invalidation kontrolünden önce ekleniyor. Kontrol invalidate'i kaçırırsa invalidate bu
+                //kaydı index'de bulup yüklemenin bitmesini bekleyerek cache'den siliyor.
+                mailsById.put(loaded.getId(), key);
+                Long invalidatedAt = invalidatedIds.getIfPresent(loaded.getId());
+                if(invalidatedAt != null && invalidatedAt > startedAt){
+                    mailsById.remove(loaded.getId(), key);
+                    stale[0] = loaded;
+                    return null;
+                }
+                return loaded;
+            });
+            if(user != null){
+                return user;
+            }
+            if(stale[0] != null){
+                return stale[0];
+            }
+            //Başka bir isteğin cache'lenmeyen yüklemesini bekledik, kendimiz yüklüyoruz.
+        }
+    }
+
+    public UserInformation getIfPresent(String mail){
+        return usersByMail.getIfPresent(MailBloomFilter.normalize(mail));
+    }
+
+    public void put(UserInformation user){
+        String key = MailBloomFilter.normalize(user.getMail());
+        mailsById.put(user.getId(), key);
+        usersByMail.put(key, user);
+    }
+
+    public void invalidate(Long id){
+        invalidatedIds.put(id, invalidations.incrementAndGet());
+        String key = mailsById.remove(id);
+        if(key != null){
+            usersByMail.invalidate(key);
+        }
+    }
+
+    public void invalidateAll(){
+        usersByMail.invalidateAll();
+        mailsById.clear();
+    }
+
+    /*MeterBinder olduğu için Spring Boot cache'i kendisi registry'e bağlıyor. cache.gets{result=hit|miss},
+    * cache.evictions ve cache.size metrikleri cache=usersByMail tag'i ile prometheus'da görünüyor.*/
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, usersByMail, "usersByMail");
+    }
+
+    public UserCacheStatsDto stats(){
+        CacheStats stats = usersByMail.stats();
+        return new UserCacheStatsDto(stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate(),
+                usersByMail.estimatedSize());
+    }
+}
@@ -0,0 +1,30 @@
+package com.javaet.secondhand.user.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/*Accept: application/x-jackson-smile ya da application/cbor gönderen servislere aynı DTO'lar binary olarak dönüyor,
+* Content-Type ile aynı formatlarda body de kabul ediliyor. Field isimleri her kayıtta tekrar yazılmadığı ve
+* sayılar metne çevrilmediği için büyük listelerde hem CPU hem byte tasarrufu sağlıyor.
+*
+* Spring bu converter'ları classpath'de görünce kendisi de ekliyor ama kendi ObjectMapper'ı ile. Burada Spring Boot'un
+* builder'ını kullanıyoruz, kotlin modülü ve spring.jackson.* ayarları JSON ile aynı kalıyor. Boot aynı tipteki
+* varsayılan converter'ın yerine bunları koyuyor.*/
+@Configuration
+public class BinaryFormatConfig {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder){
+        return new MappingJackson2SmileHttpMessageConverter(builder.createXmlMapper(false).factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder){
+        return new MappingJackson2CborHttpMessageConverter(builder.createXmlMapper(false).factory(new CBORFactory()).build());
+    }
+}
@@ -0,0 +1,42 @@
+package com.javaet.secondhand.user.config;
+
+import com.javaet.secondhand.user.limit.AdaptiveConcurrencyLimit;
+import com.javaet.secondhand.user.limit.ConcurrencyLimitInterceptor;
+import com.javaet.secondhand.user.limit.ConcurrencyLimitProperties;
+import com.javaet.secondhand.user.limit.OverloadExceptionResolver;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/*UserController önündeki adaptif eşzamanlılık limiti. user.limiter.enabled=false ile kapatılabilir.*/
+@Configuration
+@ConditionalOnProperty(name = "user.limiter.enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+public class ConcurrencyLimitConfig implements WebMvcConfigurer {
+
+    private final ConcurrencyLimitProperties properties;
+
+    public ConcurrencyLimitConfig(ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+    }
+
+    @Bean
+    public ConcurrencyLimitInterceptor concurrencyLimitInterceptor(){
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties.getInitialLimit(), properties.getMinLimit(),
+                properties.getMaxLimit(), properties.getBackoffRatio(), properties.getLatencyTolerance());
+        return new ConcurrencyLimitInterceptor(limit, properties.getEndpointLimits(), properties.getRetryAfter());
+    }
+
+    @Bean
+    public OverloadExceptionResolver overloadExceptionResolver(){
+        return new OverloadExceptionResolver(properties.getRetryAfter());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(concurrencyLimitInterceptor()).addPathPatterns("/v1/user/**");
+    }
+}
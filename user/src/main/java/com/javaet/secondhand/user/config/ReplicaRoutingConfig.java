@@ -0,0 +1,69 @@
+package com.javaet.secondhand.user.config;
+
+import com.javaet.secondhand.user.datasource.PrimaryStickinessFilter;
+import com.javaet.secondhand.user.datasource.ReplicaRoutingDataSource;
+import com.javaet.secondhand.user.datasource.ReplicaRoutingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*user.datasource.routing.enabled=true ise readOnly transaction'lar replica'lara gidiyor. Kapalıyken Boot'un tek
+* DataSource'u kullanılıyor, hiçbir şey değişmiyor.*/
+@Configuration
+@ConditionalOnProperty(name = "user.datasource.routing.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaRoutingProperties.class)
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties){
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             ReplicaRoutingProperties properties){
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ReplicaRoutingProperties.Replica> replicaProperties = properties.getReplicas();
+        for(int i = 0; i < replicaProperties.size(); i++){
+            replicas.put("replica-" + i, replicaDataSource("replica-" + i, replicaProperties.get(i)));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, properties.getMaxLag(), properties.getLagQuery());
+    }
+
+    //Hibernate, Flyway ve repository'ler bunu kullanıyor. Bağlantı ilk sorguda, transaction'ın readOnly olduğu belli
+    //olduktan sonra alınıyor.
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource){
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    public PrimaryStickinessFilter primaryStickinessFilter(ReplicaRoutingProperties properties){
+        return new PrimaryStickinessFilter(properties.getStickyWindow(), Clock.systemUTC());
+    }
+
+    private static HikariDataSource replicaDataSource(String name, ReplicaRoutingProperties.Replica replica){
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(name);
+        dataSource.setJdbcUrl(replica.getUrl());
+        dataSource.setUsername(replica.getUsername());
+        dataSource.setPassword(replica.getPassword());
+        dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+}
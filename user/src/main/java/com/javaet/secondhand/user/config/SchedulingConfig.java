@@ -0,0 +1,32 @@
+package com.javaet.secondhand.user.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*UserChangeRelay'in periyodik işleri. user.scheduling.enabled=false ile kapatılabilir, örneğin relay'in sadece bir
+* instance'da çalışması isteniyorsa.*/
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "user.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+
+    /*spring.main.lazy-initialization açıkken (fast-startup profili) hiç inject edilmeyen bean'ler oluşturulmuyor,
+    * @Scheduled metotları da hiç çalışmıyordu. @Scheduled metodu olan bean'ler lazy yapılmıyor.*/
+    @Bean
+    public static LazyInitializationExcludeFilter scheduledBeansLazyInitializationExcludeFilter(){
+        return (beanName, beanDefinition, beanType) -> {
+            AtomicBoolean scheduled = new AtomicBoolean();
+            ReflectionUtils.doWithMethods(beanType, method -> scheduled.set(true),
+                    method -> AnnotatedElementUtils.hasAnnotation(method, Scheduled.class));
+            return scheduled.get();
+        };
+    }
+}
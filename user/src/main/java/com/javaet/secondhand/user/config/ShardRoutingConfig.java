@@ -0,0 +1,138 @@
+package com.javaet.secondhand.user.config;
+
+import com.javaet.secondhand.user.datasource.ShardRoutingDataSource;
+import com.javaet.secondhand.user.datasource.ShardRoutingProperties;
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/*user.datasource.sharding.enabled=true ise kullanıcılar mail'lerinin hash'ine göre birden fazla veritabanına
+* dağıtılıyor (UserShardRouter). Kapalıyken tek shard var, Boot'un DataSource'u kullanılıyor ve hiçbir şey değişmiyor.*/
+@Configuration
+@EnableConfigurationProperties(ShardRoutingProperties.class)
+public class ShardRoutingConfig {
+
+    @Bean
+    public UserShardRouter userShardRouter(ShardRoutingProperties properties){
+        if(!properties.isEnabled()){
+            return UserShardRouter.singleShard();
+        }
+        return new UserShardRouter(properties.getShards().size(), properties.getQueryThreads());
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "user.datasource.sharding.enabled", havingValue = "true")
+    static class Sharded {
+
+        private static final Logger logger = LoggerFactory.getLogger(Sharded.class);
+        private static final Set<String> CREATE_MODES = Set.of("create", "create-drop");
+
+        //Hibernate'in shard 0 için ürettiği schema script'i, diğer shard'larda da çalıştırılıyor.
+        private final StringWriter schemaScript = new StringWriter();
+
+        /*Replica'lar, snapshot ve change akışındaki tek cursor tek bir veritabanı varsayıyor.*/
+        Sharded(@Value("${user.datasource.routing.enabled:false}") boolean replicaRouting,
+                @Value("${user.snapshot.enabled:false}") boolean snapshot,
+                @Value("${user.snapshot.writer.enabled:false}") boolean snapshotWriter) {
+            if(replicaRouting || snapshot || snapshotWriter){
+                throw new IllegalStateException("user.datasource.sharding can't be used together with "
+                        + "user.datasource.routing or user.snapshot");
+            }
+        }
+
+        @Bean
+        public ShardRoutingDataSource shardRoutingDataSource(ShardRoutingProperties properties){
+            if(properties.getShards().isEmpty()){
+                throw new IllegalStateException("user.datasource.sharding.shards must have at least one shard");
+            }
+            List<DataSource> shards = new ArrayList<>();
+            List<ShardRoutingProperties.Shard> shardProperties = properties.getShards();
+            for(int i = 0; i < shardProperties.size(); i++){
+                shards.add(shardDataSource("shard-" + i, shardProperties.get(i)));
+            }
+            return new ShardRoutingDataSource(shards);
+        }
+
+        //Hibernate ve repository'ler bunu kullanıyor. Bağlantı ilk sorguda, shard seçildikten sonra alınıyor.
+        @Bean
+        @Primary
+        public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource){
+            return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+        }
+
+        /*ddl-auto create/create-drop iken (lokalde, testlerde) hibernate tabloları sadece shard 0'da oluşturuyor.
+        * Aynı DDL bir script olarak da yazdırılıp diğer shard'larda çalıştırılıyor. Production'da schema her shard'a
+        * db/migration script'leri ile uygulanmalı.*/
+        @Bean
+        public HibernatePropertiesCustomizer shardSchemaScript(){
+            return properties -> {
+                Object ddlAuto = properties.get(AvailableSettings.HBM2DDL_AUTO);
+                if(CREATE_MODES.contains(String.valueOf(ddlAuto))){
+                    //Script ayarı varken hibernate ddl-auto'yu dikkate almıyor, shard 0 için ayrıca veriliyor.
+                    properties.put(AvailableSettings.HBM2DDL_DATABASE_ACTION, ddlAuto);
+                    //ddl-auto create gibi önce siliyor, shard'lar bir önceki çalışmadan kalmış olabilir.
+                    properties.put(AvailableSettings.HBM2DDL_SCRIPTS_ACTION, "drop-and-create");
+                    properties.put(AvailableSettings.HBM2DDL_SCRIPTS_DROP_TARGET, schemaScript);
+                    properties.put(AvailableSettings.HBM2DDL_SCRIPTS_CREATE_TARGET, schemaScript);
+                    properties.put(AvailableSettings.HBM2DDL_DELIMITER, ";");
+                }
+            };
+        }
+
+        //Initializer'lar ApplicationReadyEvent'de tüm shard'ları taradığı için ondan önce.
+        @Bean
+        public ApplicationListener<ContextRefreshedEvent> shardSchemaInitializer(EntityManagerFactory entityManagerFactory,
+                                                                                 ShardRoutingDataSource shardRoutingDataSource){
+            return event -> {
+                //EntityManagerFactory arka planda kuruluyorsa (fast-startup) script bitene kadar bekliyor.
+                entityManagerFactory.getMetamodel();
+                String script = schemaScript.toString();
+                if(script.isBlank()){
+                    return;
+                }
+                List<DataSource> shards = shardRoutingDataSource.getShards();
+                for(int shard = 1; shard < shards.size(); shard++){
+                    ResourceDatabasePopulator populator =
+                            new ResourceDatabasePopulator(new ByteArrayResource(script.getBytes(StandardCharsets.UTF_8)));
+                    //Hibernate de shard 0'da hata veren statement'ları (drop if exists, user tablosu) atlıyor.
+                    populator.setContinueOnError(true);
+                    populator.execute(shards.get(shard));
+                }
+                logger.info(String.format("Schema created on %d additional shards", shards.size() - 1));
+                schemaScript.getBuffer().setLength(0);
+            };
+        }
+
+        private static HikariDataSource shardDataSource(String name, ShardRoutingProperties.Shard shard){
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName(name);
+            dataSource.setJdbcUrl(shard.getUrl());
+            dataSource.setUsername(shard.getUsername());
+            dataSource.setPassword(shard.getPassword());
+            dataSource.setMaximumPoolSize(shard.getMaximumPoolSize());
+            return dataSource;
+        }
+    }
+}
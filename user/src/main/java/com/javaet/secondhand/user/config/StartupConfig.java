@@ -0,0 +1,27 @@
+package com.javaet.secondhand.user.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*user.startup.exit-after-ready=true ile uygulama ayağa kalkar kalkmaz kapanıyor. Gradle'ın cdsArchive task'ı
+* CDS arşivini bu şekilde bir eğitim çalıştırmasında startup sırasında yüklenen class'lardan üretiyor.*/
+@Configuration
+@ConditionalOnProperty(name = "user.startup.exit-after-ready", havingValue = "true")
+public class StartupConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupConfig.class);
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> exitAfterReady(){
+        return event -> {
+            logger.info("user.startup.exit-after-ready is set, exiting");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package com.javaet.secondhand.user.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*user.execution.mode=virtual ise Tomcat'in sabit worker pool'u yerine her request kendi virtual thread'inde çalışıyor.
+* JDBC beklerken thread'ler carrier thread'i bırakıyor, MySQL yavaşladığında bütün worker'ların bloklanması
+* throughput'u düşürmüyor. Bu durumda eşzamanlılığı sınırlayan şey Hikari pool'u oluyor, pool boyutu
+* application-virtual-threads.properties'de.
+*
+* Proje Java 11 ile derleniyor. Executors.newVirtualThreadPerTaskExecutor reflection ile çağrılıyor, uygulama
+* JDK 21+ ile çalıştırılmazsa uyarı loglanıyor ve klasik thread-per-request modeli ile devam ediliyor.
+*
+* Tomcat 9 ve JDBC driver'ları I/O sırasında monitor tuttuğu için request'ler carrier thread'lere pinleniyor. Carrier
+* sayısı varsayılan olarak CPU sayısı kadar, connection pool'dan azsa aynı anda CPU sayısı kadar request işlenebiliyor
+* ve servis çöküyor (README'deki yük testi). Bu yüzden -Djdk.virtualThreadScheduler.parallelism connection pool
+* boyutundan küçükse de klasik modelle devam ediliyor.*/
+@Configuration
+@ConditionalOnProperty(name = "user.execution.mode", havingValue = "virtual")
+public class VirtualThreadConfig implements WebMvcConfigurer, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    private static final String PARALLELISM_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+
+    private final ExecutorService virtualThreadExecutor;
+
+    public VirtualThreadConfig(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+        int carrierThreads = carrierThreads();
+        if(carrierThreads < connectionPoolSize){
+            logger.warn("user.execution.mode=virtual needs at least as many carrier threads as database connections, "
+                    + "carrier threads: " + carrierThreads + ", connections: " + connectionPoolSize + ". Start the JVM with -D"
+                    + PARALLELISM_PROPERTY + "=" + connectionPoolSize + ". Falling back to Tomcat's worker pool");
+            this.virtualThreadExecutor = null;
+        } else {
+            this.virtualThreadExecutor = newVirtualThreadPerTaskExecutor().orElse(null);
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(){
+        return protocolHandler -> {
+            if(virtualThreadExecutor != null){
+                protocolHandler.setExecutor(virtualThreadExecutor);
+                logger.info("Tomcat requests will run on virtual threads");
+            }
+        };
+    }
+
+    //StreamingResponseBody gibi async response'lar da virtual thread'de yazılsın.
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if(virtualThreadExecutor != null){
+            configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if(virtualThreadExecutor != null){
+            virtualThreadExecutor.shutdown();
+        }
+    }
+
+    //JDK'nın virtual thread scheduler'ı property verilmezse CPU sayısı kadar carrier thread açıyor.
+    static int carrierThreads(){
+        String parallelism = System.getProperty(PARALLELISM_PROPERTY);
+        if(parallelism != null){
+            try {
+                return Integer.parseInt(parallelism.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid " + PARALLELISM_PROPERTY + ": " + parallelism);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    static Optional<ExecutorService> newVirtualThreadPerTaskExecutor(){
+        try {
+            return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (NoSuchMethodException e) {
+            logger.warn("user.execution.mode=virtual needs JDK 21 or newer, running on " + Runtime.version()
+                    + ". Falling back to Tomcat's worker pool");
+            return Optional.empty();
+        } catch (InvocationTargetException | IllegalAccessException e) {
+            //JDK 19/20'de metod var ama --enable-preview olmadan UnsupportedOperationException fırlatıyor.
+            logger.warn("Virtual threads couldn't be created, falling back to Tomcat's worker pool", e);
+            return Optional.empty();
+        }
+    }
+}
@@ -1,33 +1,177 @@
 package com.javaet.secondhand.user.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.javaet.secondhand.user.dto.BulkImportResultDto;
+import com.javaet.secondhand.user.dto.BulkUpdateResultDto;
 import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.dto.MailAvailabilityDto;
+import com.javaet.secondhand.user.dto.MailFilterStatsDto;
+import com.javaet.secondhand.user.dto.PurgeProgressDto;
 import com.javaet.secondhand.user.dto.UpdateUserRequest;
+import com.javaet.secondhand.user.dto.UserBatchDto;
+import com.javaet.secondhand.user.dto.UserCacheStatsDto;
+import com.javaet.secondhand.user.dto.UserChangePageDto;
 import com.javaet.secondhand.user.dto.UserDto;
+import com.javaet.secondhand.user.dto.UserExportDto;
+import com.javaet.secondhand.user.dto.UserPageDto;
+import com.javaet.secondhand.user.dto.Versioned;
+import com.javaet.secondhand.user.export.UserExportFormat;
+import com.javaet.secondhand.user.export.UserExportService;
+import com.javaet.secondhand.user.limit.EndpointPriority;
+import com.javaet.secondhand.user.limit.RequestPriority;
+import com.javaet.secondhand.user.service.UserChangeService;
 import com.javaet.secondhand.user.service.UserService;
+import com.javaet.secondhand.user.service.UserUpdateCoalescer;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/v1/user")
 public class UserController {
 
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RETURN_REPRESENTATION = "return=representation";
+    private static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+    //Tomcat'in sendfile request attribute'ları (org.apache.coyote.Constants).
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final UserService userService;
+    private final UserChangeService userChangeService;
+    private final UserUpdateCoalescer userUpdateCoalescer;
+    private final UserExportService userExportService;
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper = CsvMapper.builder().findAndAddModules().build();
 
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserChangeService userChangeService,
+                          UserUpdateCoalescer userUpdateCoalescer, UserExportService userExportService,
+                          ObjectMapper objectMapper) {
         this.userService = userService;
+        this.userChangeService = userChangeService;
+        this.userUpdateCoalescer = userUpdateCoalescer;
+        this.userExportService = userExportService;
+        this.objectMapper = objectMapper;
     }
 
+    @EndpointPriority(RequestPriority.BULK)
     @GetMapping
-    public ResponseEntity<List<UserDto>> getAllUsers(){
-        return ResponseEntity.ok(userService.getAllUser());
+    public ResponseEntity<UserPageDto> getAllUsers(@RequestParam(value = "after", required = false) Long after,
+                                                   @RequestParam(value = "size", defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int size,
+                                                   WebRequest request){
+        return userPage(after, size, false, request);
+    }
+
+    @EndpointPriority(RequestPriority.BULK)
+    @GetMapping("/active")
+    public ResponseEntity<UserPageDto> getActiveUsers(@RequestParam(value = "after", required = false) Long after,
+                                                      @RequestParam(value = "size", defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int size,
+                                                      WebRequest request){
+        return userPage(after, size, true, request);
+    }
+
+    /*If-None-Match gelirse önce sadece ETag hesaplanıyor. Eşleşirse 304 dönüyor, kullanıcılar hiç okunmuyor.*/
+    private ResponseEntity<UserPageDto> userPage(Long after, int size, boolean activeOnly, WebRequest request){
+        if(request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(userService.getUserPageETag(after, size, activeOnly))){
+            return null;
+        }
+        Versioned<UserPageDto> page = userService.getUserPage(after, size, activeOnly);
+        return ResponseEntity.ok().eTag(page.getETag()).varyBy(HttpHeaders.ACCEPT).body(page.getValue());
+    }
+
+    /*Accept application/x-ndjson ise her satıra bir kullanıcı, application/json ise chunked bir json array yazılıyor.
+    * İki durumda da kullanıcılar okundukça response'a yazılıyor, liste oluşturulmuyor.*/
+    @EndpointPriority(RequestPriority.BULK)
+    @GetMapping(value = "/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamAllUsers(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept){
+        boolean asArray = accept != null && accept.contains(MediaType.APPLICATION_JSON_VALUE)
+                && !accept.contains(MediaType.APPLICATION_NDJSON_VALUE);
+
+        StreamingResponseBody body = outputStream -> {
+            try(SequenceWriter writer = asArray
+                    ? objectMapper.writer().writeValuesAsArray(outputStream)
+                    : objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)){
+                userService.streamAllUsers(user -> {
+                    try {
+                        writer.write(user);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(asArray ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /*Son okunan cursor'dan sonraki değişiklikler. Örn: /v1/user/changes?after=1500&limit=500
+    * Cursor outbox retention'ından daha eski kaldıysa 410 dönüyor, consumer tam tarama yapıp after vermeden başlamalı.
+    * Sharding açıksa akış shard başına, örn: /v1/user/changes?shard=2&after=1500*/
+    @GetMapping("/changes")
+    public ResponseEntity<UserChangePageDto> getChanges(@RequestParam(value = "after", required = false) Long after,
+                                                        @RequestParam(value = "limit", defaultValue = "" + UserChangeService.DEFAULT_CHANGES_LIMIT) int limit,
+                                                        @RequestParam(value = "shard", defaultValue = "0") int shard){
+        return ResponseEntity.ok(userChangeService.getChanges(shard, after, limit));
     }
 
     @GetMapping("/{mail}")
-    public ResponseEntity<UserDto> getUserByMail(@PathVariable("mail") String mail){
-        return ResponseEntity.ok(userService.getUserByMail(mail));
+    public ResponseEntity<UserDto> getUserByMail(@PathVariable("mail") String mail, WebRequest request){
+        if(request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(userService.getUserETag(mail))){
+            return null;
+        }
+        Versioned<UserDto> user = userService.getVersionedUserByMail(mail);
+        return ResponseEntity.ok().eTag(user.getETag()).varyBy(HttpHeaders.ACCEPT).body(user.getValue());
+    }
+
+    /*Kısmi isim veya mail ile arama. Örn: /v1/user/search?q=ayşe yıl&limit=10&activeOnly=true*/
+    @GetMapping("/search")
+    public ResponseEntity<List<UserDto>> searchUsers(@RequestParam("q") String query,
+                                                     @RequestParam(value = "limit", defaultValue = "" + UserService.DEFAULT_SEARCH_LIMIT) int limit,
+                                                     @RequestParam(value = "activeOnly", defaultValue = "false") boolean activeOnly){
+        return ResponseEntity.ok(userService.searchUsers(query, limit, activeOnly));
+    }
+
+    /*Kayıt formunda mail'in boşta olup olmadığı. Örn: /v1/user/_available?mail=ayse@javaet.net
+    * Çoğu yeni mail veritabanına gitmeden cevaplanıyor. Kesin cevap değil, kayıt sırasında mail alınmışsa POST 409 döner.*/
+    @GetMapping("/_available")
+    public ResponseEntity<MailAvailabilityDto> isMailAvailable(@RequestParam("mail") String mail){
+        return ResponseEntity.ok(new MailAvailabilityDto(mail, userService.isMailAvailable(mail)));
+    }
+
+    //POST ama okuma.
+    @EndpointPriority(RequestPriority.READ)
+    @PostMapping("/_batch")
+    public ResponseEntity<UserBatchDto> getUsersByMail(@RequestBody List<String> mails){
+        return ResponseEntity.ok(userService.getUsersByMail(mails));
     }
 
     @PostMapping
@@ -35,9 +179,52 @@ public class UserController {
         return ResponseEntity.ok(userService.createUser(createUserRequest));
     }
 
+    /*Body bir json array veya header satırı olan (mail,firstName,lastName,middleName) bir csv olabilir.
+    * İki durumda da body satır satır okunuyor, tüm dosya belleğe alınmıyor.*/
+    @EndpointPriority(RequestPriority.BULK)
+    @PostMapping(value = "/_bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkImportResultDto> importUsers(InputStream body) throws IOException {
+        try(MappingIterator<CreateUserRequest> requests = objectMapper.readerFor(CreateUserRequest.class).readValues(body)){
+            return ResponseEntity.ok(userService.importUsers(requests));
+        }
+    }
+
+    @EndpointPriority(RequestPriority.BULK)
+    @PostMapping(value = "/_bulk", consumes = "text/csv")
+    public ResponseEntity<BulkImportResultDto> importUsersFromCsv(InputStream body) throws IOException {
+        try(MappingIterator<CreateUserRequest> requests = csvMapper.readerFor(CreateUserRequest.class)
+                .with(CsvSchema.emptySchema().withHeader())
+                .readValues(body)){
+            return ResponseEntity.ok(userService.importUsers(requests));
+        }
+    }
+
+    /*user.write-behind.enabled=true ise güncelleme UserUpdateCoalescer'a veriliyor ve yazılmasını beklemeden 202 dönüyor.
+    * Yazmanın commit olduğunu bilmesi gereken client'lar Prefer: return=representation gönderir, response güncelleme
+    * yazılınca kaydedilen kullanıcıyla döner. Beklerken Tomcat thread'i tutulmuyor.*/
     @PutMapping("/{mail}")
-    public ResponseEntity<UserDto> updateUser(@PathVariable("mail") String mail,@RequestBody UpdateUserRequest updateUserRequest){
-        return ResponseEntity.ok(userService.updateUser(mail,updateUserRequest));
+    public CompletableFuture<ResponseEntity<UserDto>> updateUser(@PathVariable("mail") String mail,
+                                                                 @RequestHeader(value = PREFER, required = false) String prefer,
+                                                                 @RequestBody UpdateUserRequest updateUserRequest){
+        if(!userUpdateCoalescer.isEnabled()){
+            return CompletableFuture.completedFuture(ResponseEntity.ok(userService.updateUser(mail,updateUserRequest)));
+        }
+        userService.checkUserIsUpdatable(mail);
+        CompletableFuture<UserDto> written = userUpdateCoalescer.submit(mail, updateUserRequest);
+        if(prefer != null && prefer.contains(RETURN_REPRESENTATION)){
+            return written.thenApply(user -> ResponseEntity.ok().header(PREFERENCE_APPLIED, RETURN_REPRESENTATION).body(user));
+        }
+        return CompletableFuture.completedFuture(ResponseEntity.accepted().build());
+    }
+
+    /*JSON merge patch. Sadece gönderilen alanlar güncelleniyor, null gönderilen middleName siliniyor.
+    * If-Match ile GET'te dönen ETag gönderilirse arada değişmiş kullanıcı için 412 dönüyor.*/
+    @PatchMapping(value = "/{mail}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<UserDto> patchUser(@PathVariable("mail") String mail,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestBody Map<String, Object> patch){
+        Versioned<UserDto> user = userService.patchUser(mail, patch, ifMatch);
+        return ResponseEntity.ok().eTag(user.getETag()).varyBy(HttpHeaders.ACCEPT).body(user.getValue());
     }
 
     @PatchMapping("/deactivateUser/{id}")
@@ -52,12 +239,106 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
+    @EndpointPriority(RequestPriority.BULK)
+    @PatchMapping("/deactivateUsers")
+    public ResponseEntity<BulkUpdateResultDto> deactivateUsers(@RequestBody List<Long> ids){
+        return ResponseEntity.ok(userService.deactivateUsers(ids));
+    }
+
+    @EndpointPriority(RequestPriority.BULK)
+    @PatchMapping("/activateUsers")
+    public ResponseEntity<BulkUpdateResultDto> activateUsers(@RequestBody List<Long> ids){
+        return ResponseEntity.ok(userService.activateUsers(ids));
+    }
+
     @DeleteMapping ("/{id}")
     public ResponseEntity<Void> deleteUser(@PathVariable("id") Long id){
         userService.deleteUser(id);
         return ResponseEntity.ok().build();
     }
 
+    /*Toplu silme. Her chunk silindikten sonra ilerleme bir ndjson satırı olarak yazılıp flush ediliyor,
+    * son satır işin sonucu.*/
+    @EndpointPriority(RequestPriority.BULK)
+    @PostMapping(value = "/_purge", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> purgeUsers(@RequestBody List<Long> ids){
+        StreamingResponseBody body = outputStream -> {
+            try(SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)){
+                PurgeProgressDto result = userService.purgeUsers(ids, progress -> {
+                    try {
+                        writer.write(progress);
+                        writer.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if(result.getProcessed() == 0){
+                    writer.write(result);
+                }
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /*Tüm kullanıcıların gzip'li csv veya ndjson export'u. İş arka planda çalışıyor, 202 ile dönen id ile ilerlemesi
+    * izlenip (GET /_exports/{id}) bitince dosyası indiriliyor. DELETE çalışan export'u iptal ediyor, bitmiş olanı siliyor.
+    * Örn: POST /v1/user/_exports?format=NDJSON*/
+    @PostMapping("/_exports")
+    public ResponseEntity<UserExportDto> startExport(@RequestParam(value = "format", defaultValue = "CSV") UserExportFormat format){
+        UserExportDto export = userExportService.startExport(format);
+        return ResponseEntity.accepted().location(URI.create("/v1/user/_exports/" + export.getId())).body(export);
+    }
+
+    @GetMapping("/_exports")
+    public ResponseEntity<List<UserExportDto>> getExports(){
+        return ResponseEntity.ok(userExportService.getExports());
+    }
+
+    @GetMapping("/_exports/{id}")
+    public ResponseEntity<UserExportDto> getExport(@PathVariable("id") String id){
+        return ResponseEntity.ok(userExportService.getExport(id));
+    }
+
+    @DeleteMapping("/_exports/{id}")
+    public ResponseEntity<Void> deleteExport(@PathVariable("id") String id){
+        userExportService.deleteExport(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    /*Connector sendfile destekliyorsa (Tomcat NIO, varsayılan) body yazılmıyor, dosyayı servlet döndükten sonra Tomcat
+    * kernel'in sendfile'ı ile gönderiyor. Dosya heap'e ve user space'e kopyalanmıyor, request thread'i de beklemiyor.
+    * Range isteklerinde ve sendfile olmayan connector'larda dosya Spring'in Resource desteği ile gönderiliyor.*/
+    @EndpointPriority(RequestPriority.BULK)
+    @GetMapping("/_exports/{id}/file")
+    public ResponseEntity<Resource> downloadExport(@PathVariable("id") String id, HttpServletRequest request) throws IOException {
+        Path file = userExportService.getExportFile(id);
+        long size = Files.size(file);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(GZIP)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString());
+        if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) && request.getHeader(HttpHeaders.RANGE) == null){
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return response.contentLength(size).build();
+        }
+        return response.body(new FileSystemResource(file));
+    }
+
+    @GetMapping("/_cache/stats")
+    public ResponseEntity<UserCacheStatsDto> getUserCacheStats(){
+        return ResponseEntity.ok(userService.getUserCacheStats());
+    }
+
+    @GetMapping("/_cache/mail-filter")
+    public ResponseEntity<MailFilterStatsDto> getMailFilterStats(){
+        return ResponseEntity.ok(userService.getMailFilterStats());
+    }
+
 
     /*Bean anatasyonu nesneyi application context'e atıp singleton bir şekilde yaratıp
     * her yerde aynı instance üzerinden kullanmanı sağlıyor.
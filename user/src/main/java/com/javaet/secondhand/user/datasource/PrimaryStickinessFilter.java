@@ -0,0 +1,72 @@
+package com.javaet.secondhand.user.datasource;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+
+/*Read-your-writes. Yazan request'e "şu ana kadar primary'den oku" cookie'si veriliyor, client'ın bu süre içindeki
+* okumaları replica'ya değil primary'e gidiyor. Böylece replica yazmayı henüz almadıysa bile client kendi yazdığını
+* hemen görüyor. Süre user.datasource.routing.sticky-window, replica gecikmesinden biraz uzun olmalı.*/
+public class PrimaryStickinessFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE_NAME = "user-read-primary-until";
+    private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+    private final Duration stickyWindow;
+    private final Clock clock;
+
+    public PrimaryStickinessFilter(Duration stickyWindow, Clock clock) {
+        this.stickyWindow = stickyWindow;
+        this.clock = clock;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = clock.millis();
+        if(WRITE_METHODS.contains(request.getMethod())){
+            //Body yazılmaya başlamadan önce eklenmeli, sonrasında header eklenemiyor.
+            Cookie cookie = new Cookie(COOKIE_NAME, String.valueOf(now + stickyWindow.toMillis()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, stickyWindow.toSeconds()));
+            response.addCookie(cookie);
+        }
+        else if(!pinnedUntil(request, now)){
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        ReplicaRoutingDataSource.pinToPrimary();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.unpin();
+        }
+    }
+
+    private static boolean pinnedUntil(HttpServletRequest request, long now){
+        Cookie[] cookies = request.getCookies();
+        if(cookies == null){
+            return false;
+        }
+        for(Cookie cookie : cookies){
+            if(COOKIE_NAME.equals(cookie.getName())){
+                try {
+                    return Long.parseLong(cookie.getValue()) > now;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,153 @@
+package com.javaet.secondhand.user.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*readOnly transaction'lar sağlıklı replica'lar arasında sırayla dağıtılıyor, geri kalan her şey primary'e gidiyor.
+* Transaction'ın readOnly olduğu bağlantı alındığı anda belli değil, bu yüzden önüne LazyConnectionDataSourceProxy
+* konuyor ve asıl bağlantı ilk sorguda alınıyor.
+*
+* Replica'ların gecikmesi checkReplicas ile periyodik olarak ölçülüyor. maxLag'den fazla geride kalan ya da cevap
+* vermeyen replica okuma almıyor, hiç sağlıklı replica yoksa okumalar da primary'e gidiyor.*/
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    public static final String PRIMARY = "primary";
+
+    //PrimaryStickinessFilter'ın set ettiği, bu thread'deki okumaların da primary'e gitmesi gerektiğini söyleyen bayrak.
+    private static final ThreadLocal<Boolean> primaryPinned = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private final Duration maxLag;
+    private final String lagQuery;
+    private final Map<String, Double> lagSeconds = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<String> healthyReplicas = List.of();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration maxLag, String lagQuery) {
+        this.primary = primary;
+        this.replicas = new LinkedHashMap<>(replicas);
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public static void pinToPrimary(){
+        primaryPinned.set(Boolean.TRUE);
+    }
+
+    public static void unpin(){
+        primaryPinned.remove();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        checkReplicas();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || primaryPinned.get() != null){
+            return PRIMARY;
+        }
+        List<String> healthy = healthyReplicas;
+        if(healthy.isEmpty()){
+            return PRIMARY;
+        }
+        return healthy.get(Math.floorMod(next.getAndIncrement(), healthy.size()));
+    }
+
+    @Scheduled(fixedDelayString = "${user.datasource.routing.lag-check-interval:PT1S}")
+    public void checkReplicas(){
+        List<String> healthy = new ArrayList<>(replicas.size());
+        replicas.forEach((name, replica) -> {
+            Double lag = measureLag(name, replica);
+            lagSeconds.put(name, lag == null ? Double.NaN : lag);
+            if(lag != null && lag <= maxLag.toSeconds()){
+                healthy.add(name);
+            }
+        });
+        if(!healthy.equals(healthyReplicas)){
+            logger.info("Healthy read replicas changed: " + healthyReplicas + " -> " + healthy);
+        }
+        healthyReplicas = List.copyOf(healthy);
+    }
+
+    public List<String> getHealthyReplicas(){
+        return healthyReplicas;
+    }
+
+    /*null -> replica'ya ulaşılamadı ya da replikasyon durmuş.*/
+    private Double measureLag(String name, DataSource replica){
+        try(Connection connection = replica.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery(lagQuery)){
+            if(!resultSet.next()){
+                return null;
+            }
+            Object lag = resultSet.getObject(lagColumn(resultSet.getMetaData()));
+            return lag == null ? null : ((Number) lag).doubleValue();
+        } catch (SQLException | RuntimeException e) {
+            logger.warn(String.format("Read replica %s couldn't be checked: %s", name, e.getMessage()));
+            return null;
+        }
+    }
+
+    private static int lagColumn(ResultSetMetaData metaData) throws SQLException {
+        for(int column = 1; column <= metaData.getColumnCount(); column++){
+            String label = metaData.getColumnLabel(column);
+            if("Seconds_Behind_Source".equalsIgnoreCase(label) || "Seconds_Behind_Master".equalsIgnoreCase(label)){
+                return column;
+            }
+        }
+        return 1;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        replicas.keySet().forEach(name -> {
+            Gauge.builder("user.datasource.replica.lag", lagSeconds, lags -> lags.getOrDefault(name, Double.NaN))
+                    .tag("replica", name).baseUnit("seconds").register(registry);
+            Gauge.builder("user.datasource.replica.healthy", this, routing -> routing.healthyReplicas.contains(name) ? 1 : 0)
+                    .tag("replica", name).register(registry);
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(DataSource dataSource : replicas.values()){
+            if(dataSource instanceof Closeable){
+                ((Closeable) dataSource).close();
+            }
+        }
+    }
+}
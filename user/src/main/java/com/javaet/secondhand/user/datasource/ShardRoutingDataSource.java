@@ -0,0 +1,46 @@
+package com.javaet.secondhand.user.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*Bağlantıyı bu thread'in UserShardRouter.onShard ile seçtiği shard'dan alıyor. Shard seçilmeden yapılan işler
+* (hibernate'in startup'taki sorguları, schema) shard 0'a gidiyor.*/
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for(int shard = 0; shard < shards.size(); shard++){
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return UserShardRouter.currentShard();
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(DataSource dataSource : shards){
+            if(dataSource instanceof Closeable){
+                ((Closeable) dataSource).close();
+            }
+        }
+    }
+}
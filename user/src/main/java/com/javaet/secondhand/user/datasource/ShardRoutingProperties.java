@@ -0,0 +1,81 @@
+package com.javaet.secondhand.user.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*user.datasource.sharding.* ayarları. Açıkken spring.datasource.* kullanılmıyor, shard 0 dahil her shard'ın
+* bağlantısı shards listesinden veriliyor. Listenin sırası shard numarası, sonradan değiştirilmemeli.*/
+@ConfigurationProperties("user.datasource.sharding")
+public class ShardRoutingProperties {
+
+    private boolean enabled;
+    private List<Shard> shards = new ArrayList<>();
+    //Scatter-gather sorgularının çalıştığı thread'ler. Bir sayfa isteği shard sayısı kadar thread kullanıyor.
+    private int queryThreads = 16;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<Shard> shards) {
+        this.shards = shards;
+    }
+
+    public int getQueryThreads() {
+        return queryThreads;
+    }
+
+    public void setQueryThreads(int queryThreads) {
+        this.queryThreads = queryThreads;
+    }
+
+    public static class Shard {
+
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.javaet.secondhand.user.datasource;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*Pooled sequence'ın shard'lı hali. Sequence her shard'ın kendi veritabanında, değer o anki shard'ın bağlantısından
+* okunuyor ve shard numarası id'nin üst bit'lerine yazılıyor (UserShardRouter.encodeId). Böylece id'ler shard'lar
+* arasında çakışmıyor ve id'den shard bulunabiliyor.
+*
+* Hibernate'in kendi optimizer'ı tek bir blok tutuyor, bir shard'dan alınan blok başka bir shard'da kullanılırsa iki
+* shard'ın sequence'ından aynı değerler gelebilir. Bu yüzden her shard'ın bloğu ayrı bir optimizer'da.*/
+public class ShardedSequenceGenerator extends SequenceStyleGenerator {
+
+    private final ConcurrentMap<Integer, Optimizer> optimizers = new ConcurrentHashMap<>();
+    private String optimizationStrategy;
+    private Class<?> returnedClass;
+    private int incrementSize;
+    private int initialValue;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        incrementSize = determineIncrementSize(params);
+        optimizationStrategy = determineOptimizationStrategy(params, incrementSize);
+        incrementSize = determineAdjustedIncrementSize(optimizationStrategy, incrementSize);
+        initialValue = ConfigurationHelper.getInt(INITIAL_PARAM, params, -1);
+        returnedClass = type.getReturnedClass();
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        int shard = UserShardRouter.currentShard();
+        Optimizer optimizer = optimizers.computeIfAbsent(shard,
+                key -> OptimizerFactory.buildOptimizer(optimizationStrategy, returnedClass, incrementSize, initialValue));
+        Number value = (Number) optimizer.generate(getDatabaseStructure().buildCallback(session));
+        return UserShardRouter.encodeId(value.longValue(), shard);
+    }
+
+    //insert ... select'de id'yi veritabanı sequence'dan verir, shard bit'leri yazılmaz.
+    @Override
+    public boolean supportsBulkInsertionIdentifierGeneration() {
+        return false;
+    }
+}
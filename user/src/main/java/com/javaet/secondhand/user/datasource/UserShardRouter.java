@@ -0,0 +1,181 @@
+package com.javaet.secondhand.user.datasource;
+
+import com.javaet.secondhand.user.cache.MailBloomFilter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*Kullanıcının hangi shard'da olduğu. Mail ile gelen işlemler mail'in hash'inden (jump consistent hash), id ile gelenler
+* id'nin kendisinden shard'ı buluyor. Id'nin üst SHARD_BITS bit'i shard, kalanı o shard'ın sequence'ı. Shard 0'ın
+* id'leri sequence değerinin aynısı, sharding kapalıyken (tek shard) id'ler değişmiyor.
+*
+* Shard'ı seçilen işlem onShard içerisinde çalışıyor. Shard bu thread için set ediliyor, ShardRoutingDataSource
+* bağlantıyı ona göre alıyor. ReplicaRoutingDataSource'daki gibi bağlantı transaction başladıktan sonra alınıyor, shard
+* transaction'dan önce seçilmeli. Açık bir transaction'ın içinden başka bir shard'a geçilemiyor.
+*
+* onShards birden fazla shard'daki işlemleri paralel çalıştırıp sonuçları shard sırasıyla dönüyor (scatter-gather).
+* Id'ler shard'a göre ayrık aralıklarda olduğu için shard sırası id sırası, shard'lardan id sırasıyla okunan sonuçlar
+* sırayla eklenince de id sırasında kalıyor.*/
+public class UserShardRouter implements Closeable {
+
+    public static final int SHARD_BITS = 10;
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+    //İşaret bit'i kullanılmıyor, id'ler pozitif kalıyor.
+    private static final int SHARD_SHIFT = Long.SIZE - 1 - SHARD_BITS;
+    private static final long SEQUENCE_MASK = (1L << SHARD_SHIFT) - 1;
+
+    private static final ThreadLocal<Integer> currentShard = new ThreadLocal<>();
+
+    private final int shardCount;
+    //Tek shard varken null, her şey çağıranın thread'inde çalışıyor.
+    private final ExecutorService executor;
+
+    public UserShardRouter(int shardCount, int queryThreads) {
+        if(shardCount < 1 || shardCount > MAX_SHARDS){
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS + ": " + shardCount);
+        }
+        this.shardCount = shardCount;
+        this.executor = shardCount == 1 ? null
+                : Executors.newFixedThreadPool(queryThreads, new CustomizableThreadFactory("user-shard-query-"));
+    }
+
+    /*Sharding kapalıyken. Her şey shard 0'da.*/
+    public static UserShardRouter singleShard(){
+        return new UserShardRouter(1, 1);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /*Jump consistent hash. Shard sayısı N'den N+1'e çıkınca kullanıcıların sadece ~1/(N+1)'i yer değiştiriyor.
+    * Mail MailBloomFilter'daki gibi büyük/küçük harf ve aksandan bağımsız hash'leniyor, MySQL collation'ına göre aynı
+    * olan iki mail aynı shard'ın unique index'ine takılıyor.*/
+    public int shardOf(String mail){
+        long key = MailBloomFilter.hash(mail);
+        long bucket = -1;
+        long jump = 0;
+        while(jump < shardCount){
+            bucket = jump;
+            key = key * 2862933555777941757L + 1;
+            jump = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    /*Id bu shard'lardan birine ait değilse -1, böyle bir kullanıcı yok.*/
+    public int shardOf(long id){
+        if(id <= 0){
+            return -1;
+        }
+        int shard = (int) (id >>> SHARD_SHIFT);
+        return shard < shardCount ? shard : -1;
+    }
+
+    public static long encodeId(long sequenceValue, int shard){
+        if(sequenceValue < 0 || sequenceValue > SEQUENCE_MASK){
+            throw new IllegalArgumentException("Sequence value out of range: " + sequenceValue);
+        }
+        return ((long) shard << SHARD_SHIFT) | sequenceValue;
+    }
+
+    /*Bu thread'in çalıştığı shard. onShard dışında 0.*/
+    public static int currentShard(){
+        Integer shard = currentShard.get();
+        return shard == null ? 0 : shard;
+    }
+
+    public <T> T onShard(int shard, Supplier<T> action){
+        if(shard < 0 || shard >= shardCount){
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        Integer previous = currentShard.get();
+        if(previous != null && previous != shard && TransactionSynchronizationManager.isActualTransactionActive()){
+            throw new IllegalStateException("Can't switch from shard " + previous + " to " + shard + " inside a transaction");
+        }
+        currentShard.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if(previous == null){
+                currentShard.remove();
+            }
+            else{
+                currentShard.set(previous);
+            }
+        }
+    }
+
+    public void runOnShard(int shard, Runnable action){
+        onShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /*Her shard'da action paralel çalışıyor, sonuçlar shards sırasıyla dönüyor. Bir shard'daki hata çağırana fırlatılıyor.*/
+    public <T> List<T> onShards(Collection<Integer> shards, IntFunction<T> action){
+        if(executor == null || shards.size() <= 1){
+            List<T> results = new ArrayList<>(shards.size());
+            shards.forEach(shard -> results.add(onShard(shard, () -> action.apply(shard))));
+            return results;
+        }
+        List<CompletableFuture<T>> futures = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> onShard(shard, () -> action.apply(shard)), executor))
+                .collect(Collectors.toList());
+        List<T> results = new ArrayList<>(futures.size());
+        for(CompletableFuture<T> future : futures){
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if(e.getCause() instanceof RuntimeException){
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    public List<Integer> shardsFrom(int firstShard){
+        return IntStream.range(firstShard, shardCount).boxed().collect(Collectors.toList());
+    }
+
+    public List<Integer> allShards(){
+        return shardsFrom(0);
+    }
+
+    /*Değerler shard'larına göre, shard sırasıyla. Shard'ı -1 olanlar (bilinmeyen id'ler) dahil edilmiyor.*/
+    public <E> Map<Integer, List<E>> groupByShard(Collection<E> values, ToIntFunction<E> shardOf){
+        Map<Integer, List<E>> groups = new TreeMap<>();
+        for(E value : values){
+            int shard = shardOf.applyAsInt(value);
+            if(shard >= 0){
+                groups.computeIfAbsent(shard, key -> new ArrayList<>()).add(value);
+            }
+        }
+        return groups;
+    }
+
+    @Override
+    public void close() {
+        if(executor != null){
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.javaet.secondhand.user.dto
+
+data class BulkImportFailureDto(val row:Long,
+                                val mail:String?,
+                                val reason:String) {
+}
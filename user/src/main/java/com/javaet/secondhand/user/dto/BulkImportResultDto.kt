@@ -0,0 +1,11 @@
+package com.javaet.secondhand.user.dto
+
+data class BulkImportResultDto(val received:Long,
+                               val imported:Long,
+                               val failed:Long,
+                               val failures:List<BulkImportFailureDto>,
+                               val elapsedMillis:Long,
+                               val rowsPerSecond:Double) {
+}
+
+/*failures listesi en fazla UserService.MAX_REPORTED_FAILURES kadar satır içerir, failed ise her zaman gerçek sayıdır.*/
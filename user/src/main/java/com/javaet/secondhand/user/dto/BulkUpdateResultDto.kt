@@ -0,0 +1,5 @@
+package com.javaet.secondhand.user.dto
+
+data class BulkUpdateResultDto(val requested:Int,
+                               val updated:Int) {
+}
@@ -0,0 +1,5 @@
+package com.javaet.secondhand.user.dto
+
+data class MailAvailabilityDto(val mail:String,
+                               val available:Boolean) {
+}
@@ -0,0 +1,18 @@
+package com.javaet.secondhand.user.dto
+
+data class MailFilterStatsDto(val enabled:Boolean,
+                              val ready:Boolean,
+                              val expectedInsertions:Long,
+                              val configuredFpp:Double,
+                              val elements:Long,
+                              val counters:Long,
+                              val hashFunctions:Int,
+                              val memoryBytes:Long,
+                              val expectedFpp:Double,
+                              val lookups:Long,
+                              val definiteMisses:Long,
+                              val saturatedCounters:Long) {
+}
+
+/*expectedFpp -> şu anki eleman sayısı ile beklenen yanlış pozitif oranı. elements expectedInsertions'ı geçtikçe
+* configuredFpp'nin üstüne çıkıyor. definiteMisses veritabanına gitmeden cevaplanan lookup sayısı.*/
@@ -0,0 +1,6 @@
+package com.javaet.secondhand.user.dto
+
+data class PurgeProgressDto(val requested:Int,
+                            val processed:Int,
+                            val deleted:Int) {
+}
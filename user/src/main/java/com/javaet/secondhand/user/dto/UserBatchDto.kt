@@ -0,0 +1,5 @@
+package com.javaet.secondhand.user.dto
+
+data class UserBatchDto(val users:List<UserDto>,
+                        val misses:List<String>) {
+}
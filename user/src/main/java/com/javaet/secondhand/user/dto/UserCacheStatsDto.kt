@@ -0,0 +1,8 @@
+package com.javaet.secondhand.user.dto
+
+data class UserCacheStatsDto(val hitCount:Long,
+                             val missCount:Long,
+                             val evictionCount:Long,
+                             val hitRate:Double,
+                             val size:Long) {
+}
@@ -0,0 +1,18 @@
+package com.javaet.secondhand.user.dto
+
+import com.javaet.secondhand.user.model.UserChangeType
+import java.time.Instant
+
+data class UserChangeEventDto(val position:Long,
+                              val type:UserChangeType,
+                              val userId:Long,
+                              val mail:String,
+                              val firstName:String?,
+                              val lastName:String?,
+                              val middleName:String?,
+                              val active:Boolean?,
+                              val version:Long?,
+                              val occurredAt:Instant) {
+}
+
+/*DELETED event'lerinde kullanıcının silinmeden önceki hali var.*/
@@ -0,0 +1,8 @@
+package com.javaet.secondhand.user.dto
+
+data class UserChangePageDto(val changes:List<UserChangeEventDto>,
+                             val nextCursor:Long,
+                             val hasMore:Boolean) {
+}
+
+/*nextCursor -> bir sonraki istekte after parametresine verilir. Yeni değişiklik yoksa after'ın kendisi döner.*/
@@ -1,6 +1,7 @@
 package com.javaet.secondhand.user.dto;
 
 import com.javaet.secondhand.user.model.User;
+import com.javaet.secondhand.user.model.UserChangeEvent;
 import com.javaet.secondhand.user.model.UserInformation;
 import org.springframework.stereotype.Component;
 
@@ -20,5 +21,11 @@ public class UserDtoConverter {
                 .collect(Collectors.toList());
     }
 
+    public UserChangeEventDto convert(UserChangeEvent from){
+        return new UserChangeEventDto(from.getStreamPosition(),from.getType(),from.getUserId(),from.getMail(),
+                from.getFirstName(),from.getLastName(),from.getMiddleName(),from.getActive(),from.getVersion(),
+                from.getOccurredAt());
+    }
+
     /*ApplicationContext'e yollayabiliyorum Component anatasyonu ile.*/
 }
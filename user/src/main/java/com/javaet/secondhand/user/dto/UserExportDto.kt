@@ -0,0 +1,22 @@
+package com.javaet.secondhand.user.dto
+
+import com.javaet.secondhand.user.export.UserExportFormat
+import com.javaet.secondhand.user.export.UserExportStatus
+import java.time.Instant
+
+data class UserExportDto(val id:String,
+                         val format:UserExportFormat,
+                         val status:UserExportStatus,
+                         val rowsWritten:Long,
+                         val rowsPerSecond:Long,
+                         val progress:Double,
+                         val partitions:Int,
+                         val completedPartitions:Int,
+                         val fileBytes:Long,
+                         val startedAt:Instant,
+                         val finishedAt:Instant?,
+                         val error:String?) {
+}
+
+/*progress -> taranan id aralığının oranı (0-1), id'ler seyrekse satır sayısıyla birebir gitmez. fileBytes sadece
+* COMPLETED olduğunda dolu, dosya GET /v1/user/_exports/{id}/file ile indirilir.*/
@@ -0,0 +1,14 @@
+package com.javaet.secondhand.user.dto
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder
+
+@JsonPropertyOrder("id", "mail", "firstName", "lastName", "middleName", "active")
+data class UserExportRowDto(val id:Long,
+                            val mail:String,
+                            val firstName:String?,
+                            val lastName:String?,
+                            val middleName:String?,
+                            val active:Boolean?) {
+}
+
+/*Export dosyasındaki bir satır. Csv'de kolonlar bu sırayla.*/
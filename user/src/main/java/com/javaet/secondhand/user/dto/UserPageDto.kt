@@ -0,0 +1,8 @@
+package com.javaet.secondhand.user.dto
+
+data class UserPageDto(val users:List<UserDto>,
+                       val nextCursor:Long?) {
+}
+
+/*nextCursor -> sayfadaki son kullanıcının id'si. Bir sonraki sayfa için after parametresine verilir.
+* null ise okunacak başka kullanıcı kalmamıştır.*/
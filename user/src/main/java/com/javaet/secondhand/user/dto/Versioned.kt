@@ -0,0 +1,5 @@
+package com.javaet.secondhand.user.dto
+
+data class Versioned<T>(val value:T,
+                        val eTag:String) {
+}
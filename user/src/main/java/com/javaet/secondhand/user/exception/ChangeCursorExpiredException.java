@@ -0,0 +1,12 @@
+package com.javaet.secondhand.user.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.GONE)
+public class ChangeCursorExpiredException extends RuntimeException{
+
+    public ChangeCursorExpiredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,43 @@
+package com.javaet.secondhand.user.exception;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/*Controller'dan çıkan her exception'ı exception tipi ve endpoint (controller metodu) ile sayar. Exception'ı
+* kendisi çözmüyor, null döndüğü için response'u yine GeneralExceptionHandler ve @ResponseStatus belirliyor.
+* En önce çalışsın diye HIGHEST_PRECEDENCE.*/
+@Component
+public class ExceptionMetricsResolver implements HandlerExceptionResolver, Ordered {
+
+    private final MeterRegistry meterRegistry;
+
+    public ExceptionMetricsResolver(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        String endpoint = handler instanceof HandlerMethod ? ((HandlerMethod) handler).getMethod().getName() : "unknown";
+
+        Counter.builder("user.exceptions")
+                .description("Exceptions thrown by user endpoints")
+                .tag("exception", ex.getClass().getSimpleName())
+                .tag("endpoint", endpoint)
+                .register(meterRegistry)
+                .increment();
+        return null;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
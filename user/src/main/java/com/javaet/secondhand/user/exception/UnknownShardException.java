@@ -0,0 +1,12 @@
+package com.javaet.secondhand.user.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownShardException extends RuntimeException{
+
+    public UnknownShardException(String message) {
+        super(message);
+    }
+}
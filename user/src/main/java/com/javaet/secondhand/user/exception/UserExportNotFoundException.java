@@ -0,0 +1,12 @@
+package com.javaet.secondhand.user.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class UserExportNotFoundException extends RuntimeException{
+
+    public UserExportNotFoundException(String message) {
+        super(message);
+    }
+}
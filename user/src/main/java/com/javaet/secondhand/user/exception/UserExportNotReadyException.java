@@ -0,0 +1,12 @@
+package com.javaet.secondhand.user.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class UserExportNotReadyException extends RuntimeException{
+
+    public UserExportNotReadyException(String message) {
+        super(message);
+    }
+}
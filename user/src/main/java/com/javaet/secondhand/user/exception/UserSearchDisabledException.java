@@ -0,0 +1,12 @@
+package com.javaet.secondhand.user.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class UserSearchDisabledException extends RuntimeException{
+
+    public UserSearchDisabledException(String message) {
+        super(message);
+    }
+}
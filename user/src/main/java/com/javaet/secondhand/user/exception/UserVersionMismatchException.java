@@ -0,0 +1,12 @@
+package com.javaet.secondhand.user.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class UserVersionMismatchException extends RuntimeException{
+
+    public UserVersionMismatchException(String message) {
+        super(message);
+    }
+}
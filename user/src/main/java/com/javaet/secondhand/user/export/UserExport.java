@@ -0,0 +1,130 @@
+package com.javaet.secondhand.user.export;
+
+import com.javaet.secondhand.user.dto.UserExportDto;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*Bir export işinin durumu. Parçaları farklı thread'ler yazıyor, durum GET ile başka thread'lerden okunuyor. Her
+* parçanın sayaçlarını sadece onu yazan thread güncelliyor, toplamlar okunurken hesaplanıyor.*/
+final class UserExport {
+
+    private final String id;
+    private final UserExportFormat format;
+    private final Path file;
+    private final List<Partition> partitions;
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger completedPartitions = new AtomicInteger();
+    private volatile UserExportStatus status = UserExportStatus.RUNNING;
+    private volatile boolean cancelRequested;
+    private volatile Instant finishedAt;
+    private volatile long elapsedNanos;
+    private volatile long fileBytes;
+    private volatile String error;
+
+    UserExport(String id, UserExportFormat format, Path file, List<Partition> partitions) {
+        this.id = id;
+        this.format = format;
+        this.file = file;
+        this.partitions = partitions;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    UserExportFormat getFormat() {
+        return format;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    UserExportStatus getStatus() {
+        return status;
+    }
+
+    Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void cancel(){
+        cancelRequested = true;
+    }
+
+    void partitionCompleted(){
+        completedPartitions.incrementAndGet();
+    }
+
+    void completed(long fileBytes){
+        this.fileBytes = fileBytes;
+        finish(UserExportStatus.COMPLETED);
+    }
+
+    void cancelled(){
+        finish(UserExportStatus.CANCELLED);
+    }
+
+    void failed(String error){
+        this.error = error;
+        finish(UserExportStatus.FAILED);
+    }
+
+    private void finish(UserExportStatus status){
+        elapsedNanos = System.nanoTime() - startNanos;
+        finishedAt = Instant.now();
+        this.status = status;
+    }
+
+    UserExportDto toDto(){
+        long rows = 0;
+        long span = 0;
+        long scanned = 0;
+        for(Partition partition : partitions){
+            rows += partition.rows;
+            span += partition.to - partition.from;
+            scanned += partition.lastId - partition.from;
+        }
+        long elapsed = status == UserExportStatus.RUNNING ? System.nanoTime() - startNanos : elapsedNanos;
+        long rowsPerSecond = elapsed > 0 ? rows * 1_000_000_000L / elapsed : 0;
+        double progress = status == UserExportStatus.COMPLETED || span == 0 ? 1.0 : (double) scanned / span;
+        return new UserExportDto(id, format, status, rows, rowsPerSecond, progress, partitions.size(),
+                completedPartitions.get(), fileBytes, startedAt, finishedAt, error);
+    }
+
+    /*Bir shard'daki (from, to] id aralığı. Geçici dosyası export bitince diğerleriyle birleştirilip siliniyor.*/
+    static final class Partition {
+        final int shard;
+        final long from;
+        final long to;
+        final Path file;
+        volatile long rows;
+        volatile long lastId;
+
+        Partition(int shard, long from, long to, Path file) {
+            this.shard = shard;
+            this.from = from;
+            this.to = to;
+            this.file = file;
+            this.lastId = from;
+        }
+
+        //Sadece parçayı yazan thread çağırıyor.
+        void written(long id){
+            rows++;
+            lastId = id;
+        }
+    }
+}
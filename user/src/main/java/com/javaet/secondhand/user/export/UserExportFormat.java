@@ -0,0 +1,16 @@
+package com.javaet.secondhand.user.export;
+
+public enum UserExportFormat {
+    CSV("csv"),
+    NDJSON("ndjson");
+
+    private final String extension;
+
+    UserExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,317 @@
+package com.javaet.secondhand.user.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.dto.UserExportDto;
+import com.javaet.secondhand.user.dto.UserExportRowDto;
+import com.javaet.secondhand.user.exception.UserExportInProgressException;
+import com.javaet.secondhand.user.exception.UserExportNotFoundException;
+import com.javaet.secondhand.user.exception.UserExportNotReadyException;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/*Tüm kullanıcıları gzip'li csv veya ndjson dosyasına yazan arka plan işleri.
+*
+* Her shard'ın id aralığı user.export.partitions parçaya bölünüyor ve parçalar user.export.threads thread ile paralel
+* okunuyor. Her parça kendi readOnly transaction'ında primary key üzerinden tek bir aralık taraması, satırlar ileri
+* yönlü bir cursor ile okunup kendi geçici dosyasına ayrı bir gzip member'ı olarak yazılıyor. Bellekte parça başına
+* sadece fetch size kadar satır ve gzip buffer'ı var, tablonun boyutundan bağımsız.
+*
+* Hepsi bitince parçaların dosyaları id sırasıyla tek dosyaya ekleniyor (FileChannel.transferTo, veri heap'e alınmıyor).
+* Art arda eklenmiş gzip member'ları tek bir geçerli gzip dosyası, tekrar sıkıştırmaya gerek yok. Parçalar ayrı
+* transaction'larda okunduğu için dosya tablonun tek bir anının kopyası değil, export sürerken değişen kullanıcılar
+* herhangi bir halleriyle gelebilir.
+*
+* İşlerin kaydı bellekte, restart'ta kaybolur. Bitmiş export'lar user.export.retention kadar tutuluyor.*/
+@Component
+public class UserExportService implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserExportService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UserInformationRepository userInformationRepository;
+    private final UserShardRouter userShardRouter;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ObjectWriter ndjsonWriter;
+    private final ObjectWriter csvWriter;
+    private final byte[] csvHeader;
+    private final Path directory;
+    private final int partitionsPerShard;
+    private final int maxRunning;
+    private final Duration retention;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, UserExport> exports = new ConcurrentHashMap<>();
+
+    public UserExportService(UserInformationRepository userInformationRepository, UserShardRouter userShardRouter,
+                             PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                             @Value("${user.export.directory:exports}") Path directory,
+                             @Value("${user.export.partitions:16}") int partitionsPerShard,
+                             @Value("${user.export.threads:4}") int threads,
+                             @Value("${user.export.max-running:1}") int maxRunning,
+                             @Value("${user.export.retention:1d}") Duration retention) {
+        this.userInformationRepository = userInformationRepository;
+        this.userShardRouter = userShardRouter;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.ndjsonWriter = objectMapper.writerFor(UserExportRowDto.class).withRootValueSeparator("\n");
+        CsvMapper csvMapper = CsvMapper.builder().findAndAddModules().build();
+        CsvSchema schema = csvMapper.schemaFor(UserExportRowDto.class);
+        this.csvWriter = csvMapper.writerFor(UserExportRowDto.class).with(schema);
+        StringJoiner header = new StringJoiner(",", "", "\n");
+        schema.forEach(column -> header.add(column.getName()));
+        this.csvHeader = header.toString().getBytes(StandardCharsets.UTF_8);
+        this.directory = directory;
+        this.partitionsPerShard = Math.max(1, partitionsPerShard);
+        this.maxRunning = maxRunning;
+        this.retention = retention;
+        this.executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("user-export-"));
+    }
+
+    public synchronized UserExportDto startExport(UserExportFormat format){
+        long running = exports.values().stream().filter(export -> export.getStatus() == UserExportStatus.RUNNING).count();
+        if(running >= maxRunning){
+            throw new UserExportInProgressException("There are already " + running + " running exports");
+        }
+        String id = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        UserExport export = new UserExport(id, format,
+                directory.resolve("users-" + id + "." + format.getExtension() + ".gz"), partition(id));
+        exports.put(id, export);
+
+        List<CompletableFuture<Void>> parts = export.getPartitions().stream()
+                .map(partition -> CompletableFuture.runAsync(() -> writePartition(export, partition), executor))
+                .collect(Collectors.toList());
+        CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .whenCompleteAsync((ignored, failure) -> finish(export, failure), executor);
+        logger.info(String.format("User export %s started with %d partitions", id, export.getPartitions().size()));
+        return export.toDto();
+    }
+
+    /*Son başlatılan başta.*/
+    public List<UserExportDto> getExports(){
+        return exports.values().stream()
+                .map(UserExport::toDto)
+                .sorted(Comparator.comparing(UserExportDto::getStartedAt).reversed())
+                .collect(Collectors.toList());
+    }
+
+    public UserExportDto getExport(String id){
+        return findExport(id).toDto();
+    }
+
+    public Path getExportFile(String id){
+        UserExport export = findExport(id);
+        if(export.getStatus() != UserExportStatus.COMPLETED){
+            throw new UserExportNotReadyException("Export is " + export.getStatus() + ": " + id);
+        }
+        return export.getFile();
+    }
+
+    /*Çalışan export iptal ediliyor, parçalar bir sonraki satırda duruyor ve kaydı CANCELLED olarak kalıyor.
+    * Bitmiş export'un dosyası ve kaydı siliniyor.*/
+    public void deleteExport(String id){
+        UserExport export = findExport(id);
+        if(export.getStatus() == UserExportStatus.RUNNING){
+            export.cancel();
+            return;
+        }
+        exports.remove(id);
+        deleteQuietly(export.getFile());
+    }
+
+    @Scheduled(fixedDelayString = "${user.export.cleanup-interval:PT1H}")
+    public void deleteExpiredExports(){
+        Instant expiredBefore = Instant.now().minus(retention);
+        for(UserExport export : exports.values()){
+            if(export.getFinishedAt() != null && export.getFinishedAt().isBefore(expiredBefore)){
+                exports.remove(export.getId());
+                deleteQuietly(export.getFile());
+            }
+        }
+    }
+
+    private UserExport findExport(String id){
+        UserExport export = exports.get(id);
+        if(export == null){
+            throw new UserExportNotFoundException("Export couldn't be found by following id: " + id);
+        }
+        return export;
+    }
+
+    /*Her shard'ın [min, max] id aralığı eşit parçalara bölünüyor. Shard'lar ve parçalar sırayla, yani id sırasıyla.*/
+    private List<UserExport.Partition> partition(String id){
+        List<UserExport.Partition> partitions = new ArrayList<>();
+        for(int shard : userShardRouter.allShards()){
+            Optional<Long> min = userShardRouter.onShard(shard, () ->
+                    readOnlyTransactionTemplate.execute(status -> userInformationRepository.findMinId()));
+            Optional<Long> max = userShardRouter.onShard(shard, () ->
+                    readOnlyTransactionTemplate.execute(status -> userInformationRepository.findMaxId()));
+            if(min.isEmpty() || max.isEmpty()){
+                continue;
+            }
+            long from = min.get() - 1;
+            long span = max.get() - from;
+            long step = (span + partitionsPerShard - 1) / partitionsPerShard;
+            for(long start = from; start < max.get(); start += step){
+                partitions.add(new UserExport.Partition(shard, start, Math.min(start + step, max.get()),
+                        directory.resolve("users-" + id + "." + partitions.size() + ".part")));
+            }
+        }
+        return partitions;
+    }
+
+    private void writePartition(UserExport export, UserExport.Partition partition){
+        if(export.isCancelRequested()){
+            return;
+        }
+        userShardRouter.runOnShard(partition.shard, () -> readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try(Stream<UserInformation> users = userInformationRepository.streamDetachedByIdBetween(partition.from, partition.to);
+                OutputStream out = new GZIPOutputStream(Files.newOutputStream(partition.file), BUFFER_SIZE);
+                SequenceWriter writer = rowWriter(export.getFormat()).writeValues(out)){
+                Iterator<UserInformation> iterator = users.iterator();
+                while(iterator.hasNext()){
+                    if(export.isCancelRequested()){
+                        throw new CancellationException();
+                    }
+                    UserInformation user = iterator.next();
+                    writer.write(new UserExportRowDto(user.getId(), user.getMail(), user.getFirstName(),
+                            user.getLastName(), user.getMiddleName(), user.getActive()));
+                    partition.written(user.getId());
+                }
+                //Ndjson'da ayraç satırların arasında, parçalar birleşince son satırla sonraki parçanın ilki ayrı kalsın.
+                if(export.getFormat() == UserExportFormat.NDJSON && partition.rows > 0){
+                    writer.flush();
+                    out.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        export.partitionCompleted();
+    }
+
+    private ObjectWriter rowWriter(UserExportFormat format){
+        return format == UserExportFormat.CSV ? csvWriter : ndjsonWriter;
+    }
+
+    private void finish(UserExport export, Throwable failure){
+        try {
+            if(export.isCancelRequested()){
+                export.cancelled();
+                deleteQuietly(export.getFile());
+                logger.info(String.format("User export %s cancelled", export.getId()));
+            }
+            else if(failure != null){
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                export.failed(cause.getMessage());
+                logger.warn(String.format("User export %s failed", export.getId()), cause);
+            }
+            else{
+                merge(export);
+                export.completed(Files.size(export.getFile()));
+                UserExportDto result = export.toDto();
+                logger.info(String.format("User export %s completed, %d rows, %d rows/s, %d bytes", export.getId(),
+                        result.getRowsWritten(), result.getRowsPerSecond(), result.getFileBytes()));
+            }
+        } catch (IOException | RuntimeException e) {
+            export.failed(e.getMessage());
+            logger.warn(String.format("User export %s failed", export.getId()), e);
+        } finally {
+            export.getPartitions().forEach(partition -> deleteQuietly(partition.file));
+        }
+    }
+
+    /*Başa csv header'ı (ndjson'da boş) bir gzip member'ı olarak yazılıyor, kullanıcı olmasa da dosya geçerli bir gzip.
+    * Dosya önce .tmp olarak yazılıp taşınıyor, yarım dosya indirilemiyor.*/
+    private void merge(UserExport export) throws IOException {
+        Path tmp = export.getFile().resolveSibling(export.getFile().getFileName() + ".tmp");
+        try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer header = ByteBuffer.wrap(gzip(export.getFormat() == UserExportFormat.CSV ? csvHeader : new byte[0]));
+            while(header.hasRemaining()){
+                out.write(header);
+            }
+            for(UserExport.Partition partition : export.getPartitions()){
+                try(FileChannel in = FileChannel.open(partition.file, StandardOpenOption.READ)){
+                    long size = in.size();
+                    long position = 0;
+                    while(position < size){
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, export.getFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try(GZIPOutputStream out = new GZIPOutputStream(buffer)){
+            out.write(bytes);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void deleteQuietly(Path path){
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Export file could not be deleted: " + path, e);
+        }
+    }
+
+    /*Çalışan export'lar iptal ediliyor, yarım dosyaları finish'de siliniyor.*/
+    @Override
+    public void close() {
+        exports.values().forEach(UserExport::cancel);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,8 @@
+package com.javaet.secondhand.user.export;
+
+public enum UserExportStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+}
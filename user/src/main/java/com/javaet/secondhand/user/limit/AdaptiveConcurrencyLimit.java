@@ -0,0 +1,118 @@
+package com.javaet.secondhand.user.limit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/*AIMD eşzamanlılık limiti. Her endpoint'in gecikmesi kendi uzun vadeli ortalaması (baseline) ile karşılaştırılıyor.
+* Gecikme baseline'ın latencyTolerance katını geçerse ya da request 5xx ile biterse sistem doymaya başlamış
+* demektir, limit backoffRatio ile çarpılıp düşürülüyor. Aksi halde limit gerçekten kullanılıyorsa (in-flight
+* limitin yarısından fazlaysa) bir artırılıyor. Böylece limit DB pool'u ve Tomcat doymadan hemen önceki
+* eşzamanlılığa yerleşiyor, fazlası kuyrukta beklemek yerine hemen reddediliyor.
+*
+* Endpoint'ler arası gecikme farkı büyük olduğu için tek bir baseline yerine endpoint başına baseline tutuluyor.
+* Süresi veri boyutuna bağlı olan bulk endpoint'ler gecikme sinyaline katılmıyor, sadece hataları sayılıyor.*/
+public class AdaptiveConcurrencyLimit {
+
+    //Baseline'ın yeni örneklere ne kadar hızlı uyduğu. Yaklaşık son 100 request'in ortalaması.
+    private static final double BASELINE_SMOOTHING = 0.01;
+    //Baseline oturmadan gecikme sinyali kullanılmıyor.
+    private static final int BASELINE_WARMUP_SAMPLES = 20;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, Baseline> baselines = new ConcurrentHashMap<>();
+    private final LongSupplier nanoTime;
+    private volatile double limit;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double latencyTolerance) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double latencyTolerance,
+                             LongSupplier nanoTime) {
+        if(minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit){
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = initialLimit;
+        this.nanoTime = nanoTime;
+    }
+
+    /*Öncelik sınıfının payı doluysa null dönüyor.*/
+    public Permit tryAcquire(String endpoint, RequestPriority priority, boolean measureLatency){
+        int allowed = Math.max(1, (int) (limit * priority.getShare()));
+        while (true){
+            int current = inFlight.get();
+            if(current >= allowed){
+                return null;
+            }
+            if(inFlight.compareAndSet(current, current + 1)){
+                return new Permit(endpoint, measureLatency, current + 1, nanoTime.getAsLong());
+            }
+        }
+    }
+
+    public void release(Permit permit, boolean failed){
+        inFlight.decrementAndGet();
+        long latency = nanoTime.getAsLong() - permit.startNanos;
+        boolean overloaded = failed;
+        if(permit.measureLatency && !failed){
+            overloaded = baselines.computeIfAbsent(permit.endpoint, endpoint -> new Baseline()).exceeded(latency, latencyTolerance);
+        }
+        onSample(overloaded, permit.inFlight);
+    }
+
+    private synchronized void onSample(boolean overloaded, int inFlightAtStart){
+        if(overloaded){
+            limit = Math.max(minLimit, limit * backoffRatio);
+        }
+        else if(inFlightAtStart * 2 >= limit){
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    public int getLimit(){
+        return (int) limit;
+    }
+
+    public int getInFlight(){
+        return inFlight.get();
+    }
+
+    public static final class Permit {
+        private final String endpoint;
+        private final boolean measureLatency;
+        private final int inFlight;
+        private final long startNanos;
+
+        private Permit(String endpoint, boolean measureLatency, int inFlight, long startNanos) {
+            this.endpoint = endpoint;
+            this.measureLatency = measureLatency;
+            this.inFlight = inFlight;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final class Baseline {
+        private double nanos;
+        private int samples;
+
+        /*Gecikme baseline'dan çok büyükse true. Yavaş örnekler de baseline'a giriyor ki gecikme kalıcı olarak
+        * arttığında (örneğin daha büyük veri) limit sonsuza kadar düşmesin.*/
+        synchronized boolean exceeded(long latency, double tolerance){
+            boolean exceeded = samples >= BASELINE_WARMUP_SAMPLES && latency > nanos * tolerance;
+            //İlk örneklerde düz ortalama, sonra üstel ortalama.
+            nanos += Math.max(BASELINE_SMOOTHING, 1.0 / (samples + 1)) * (latency - nanos);
+            samples++;
+            return exceeded;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.javaet.secondhand.user.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/*Request'ler controller'a girmeden önce adaptif limitten ve varsa endpoint'in kendi limitinden izin alıyor.
+* Adaptif limit dolduysa 503, endpoint limiti dolduysa 429 dönüyor, ikisinde de Retry-After ile. Reddedilen request
+* ne Tomcat thread'ini ne de DB bağlantısını bekleyerek tutuyor.
+*
+* StreamingResponseBody dönen endpoint'lerde izin body yazılıp async dispatch bitene kadar tutuluyor.*/
+public class ConcurrencyLimitInterceptor implements AsyncHandlerInterceptor, MeterBinder {
+
+    private static final String PERMIT_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".permit";
+
+    private final AdaptiveConcurrencyLimit limit;
+    private final Map<String, Semaphore> endpointLimits = new HashMap<>();
+    private final Duration retryAfter;
+    private MeterRegistry meterRegistry;
+
+    public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimit limit, Map<String, Integer> endpointLimits, Duration retryAfter) {
+        this.limit = limit;
+        endpointLimits.forEach((endpoint, permits) -> this.endpointLimits.put(endpoint, new Semaphore(permits)));
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        //Async dispatch'de izin ilk dispatch'de zaten alınmıştı.
+        if(!(handler instanceof HandlerMethod) || request.getDispatcherType() == DispatcherType.ASYNC){
+            return true;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        String endpoint = handlerMethod.getMethod().getName();
+        RequestPriority priority = priority(handlerMethod, request);
+
+        Semaphore endpointLimit = endpointLimits.get(endpoint);
+        if(endpointLimit != null && !endpointLimit.tryAcquire()){
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, endpoint, priority, "endpoint_limit");
+            return false;
+        }
+        AdaptiveConcurrencyLimit.Permit permit = limit.tryAcquire(endpoint, priority, priority != RequestPriority.BULK);
+        if(permit == null){
+            if(endpointLimit != null){
+                endpointLimit.release();
+            }
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, endpoint, priority, "limit");
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, new Acquired(permit, endpointLimit));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Acquired acquired = (Acquired) request.getAttribute(PERMIT_ATTRIBUTE);
+        if(acquired == null){
+            return;
+        }
+        request.removeAttribute(PERMIT_ATTRIBUTE);
+        limit.release(acquired.permit, ex != null || response.getStatus() >= 500);
+        if(acquired.endpointLimit != null){
+            acquired.endpointLimit.release();
+        }
+    }
+
+    private static RequestPriority priority(HandlerMethod handlerMethod, HttpServletRequest request){
+        EndpointPriority endpointPriority = handlerMethod.getMethodAnnotation(EndpointPriority.class);
+        if(endpointPriority != null){
+            return endpointPriority.value();
+        }
+        return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod()) ? RequestPriority.READ : RequestPriority.WRITE;
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String endpoint, RequestPriority priority,
+                        String reason) throws IOException {
+        if(meterRegistry != null){
+            Counter.builder("user.limiter.rejections")
+                    .description("Requests rejected by the concurrency limiter")
+                    .tag("endpoint", endpoint)
+                    .tag("priority", priority.name().toLowerCase())
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment();
+        }
+        writeRetryLater(response, status, retryAfter, "Too many concurrent requests for " + endpoint + ", retry later");
+    }
+
+    static void writeRetryLater(HttpServletResponse response, HttpStatus status, Duration retryAfter, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(message);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder("user.limiter.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Current adaptive concurrency limit").register(registry);
+        Gauge.builder("user.limiter.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .description("Requests currently holding a limiter permit").register(registry);
+        endpointLimits.forEach((endpoint, semaphore) ->
+                Gauge.builder("user.limiter.endpoint.available", semaphore, Semaphore::availablePermits)
+                        .tag("endpoint", endpoint).register(registry));
+    }
+
+    private static final class Acquired {
+        private final AdaptiveConcurrencyLimit.Permit permit;
+        private final Semaphore endpointLimit;
+
+        private Acquired(AdaptiveConcurrencyLimit.Permit permit, Semaphore endpointLimit) {
+            this.permit = permit;
+            this.endpointLimit = endpointLimit;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.javaet.secondhand.user.limit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/*user.limiter.* ayarları.*/
+@ConfigurationProperties("user.limiter")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 200;
+    private double backoffRatio = 0.9;
+    //Gecikme endpoint'in baseline'ının bu katını geçerse limit düşürülüyor.
+    private double latencyTolerance = 2.0;
+    private Duration retryAfter = Duration.ofSeconds(1);
+    //Controller metodu adı -> o endpoint'de aynı anda çalışabilecek en fazla request. Adaptif limitin üstüne ek sınır.
+    private Map<String, Integer> endpointLimits = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public void setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public Map<String, Integer> getEndpointLimits() {
+        return endpointLimits;
+    }
+
+    public void setEndpointLimits(Map<String, Integer> endpointLimits) {
+        this.endpointLimits = endpointLimits;
+    }
+}
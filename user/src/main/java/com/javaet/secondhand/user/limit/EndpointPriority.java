@@ -0,0 +1,13 @@
+package com.javaet.secondhand.user.limit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*Controller metodunun önceliği. Verilmezse GET okuma, diğer metotlar yazma sayılıyor.*/
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface EndpointPriority {
+    RequestPriority value();
+}
@@ -0,0 +1,45 @@
+package com.javaet.secondhand.user.limit;
+
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+/*Hikari'den bağlantı alınamaması ve sorgu timeout'ları 500 değil, Retry-After ile 503 dönüyor. Bunlar hatalı
+* request değil, geçici aşırı yük. ExceptionMetricsResolver'dan sonra çalışıyor ki exception yine sayılsın.*/
+public class OverloadExceptionResolver implements HandlerExceptionResolver, Ordered {
+
+    private final Duration retryAfter;
+
+    public OverloadExceptionResolver(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        for(Throwable cause = ex; cause != null; cause = cause.getCause()){
+            if(cause instanceof SQLTransientConnectionException || cause instanceof SQLTimeoutException){
+                try {
+                    ConcurrencyLimitInterceptor.writeRetryLater(response, HttpStatus.SERVICE_UNAVAILABLE, retryAfter,
+                            "User service is overloaded, retry later");
+                } catch (IOException e) {
+                    return null;
+                }
+                return new ModelAndView();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+}
@@ -0,0 +1,20 @@
+package com.javaet.secondhand.user.limit;
+
+/*Limit dolmaya yaklaştığında önce düşük öncelikli request'ler reddediliyor. share, öncelik sınıfının adaptif limitin
+* ne kadarını kullanabileceği. Yazmalar limitin tamamını, bulk işler yarısını kullanabiliyor, böylece yük altında
+* bulk okumalar createUser gibi yazmaların yerini almıyor.*/
+public enum RequestPriority {
+    WRITE(1.0),
+    READ(0.9),
+    BULK(0.5);
+
+    private final double share;
+
+    RequestPriority(double share) {
+        this.share = share;
+    }
+
+    public double getShare() {
+        return share;
+    }
+}
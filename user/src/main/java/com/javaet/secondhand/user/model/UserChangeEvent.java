@@ -0,0 +1,106 @@
+package com.javaet.secondhand.user.model;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/*Outbox. Kullanıcıyı değiştiren her işlem aynı transaction içerisinde buraya kullanıcının o anki halini yazıyor.
+* UserChangeRelay yayınlanmamış (streamPosition'ı null) satırları sırayla sink'e gönderip streamPosition veriyor.
+* Id'ler commit sırasıyla artmayabilir, küçük id'li bir transaction daha geç commit edilebilir. Consumer'lar bu yüzden
+* id'yi değil relay'in verdiği streamPosition'ı cursor olarak kullanıyor.*/
+@Entity
+@Table(indexes = {
+        @Index(name = "ux_user_change_event_position", columnList = "streamPosition", unique = true),
+        @Index(name = "ix_user_change_event_published_at", columnList = "publishedAt")
+})
+public class UserChangeEvent {
+
+    /*Satırlar UserChangeEventRepository'de INSERT ... SELECT ile yazılıyor, id'yi veritabanı veriyor.*/
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long streamPosition;
+
+    @Enumerated(EnumType.STRING)
+    private UserChangeType type;
+
+    private Long userId;
+    private String mail;
+    private String firstName;
+    private String lastName;
+    private String middleName;
+    private Boolean isActive;
+    private Long version;
+    private Instant occurredAt;
+    private Instant publishedAt;
+
+    public UserChangeEvent() {
+
+    }
+
+    public UserChangeEvent(UserChangeType type, Long userId, String mail, String firstName, String lastName,
+                           String middleName, Boolean isActive, Long version, Instant occurredAt) {
+        this.type = type;
+        this.userId = userId;
+        this.mail = mail;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.middleName = middleName;
+        this.isActive = isActive;
+        this.version = version;
+        this.occurredAt = occurredAt;
+    }
+
+    public void publish(Long streamPosition, Instant publishedAt){
+        this.streamPosition = streamPosition;
+        this.publishedAt = publishedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getStreamPosition() {
+        return streamPosition;
+    }
+
+    public UserChangeType getType() {
+        return type;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getMail() {
+        return mail;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getMiddleName() {
+        return middleName;
+    }
+
+    public Boolean getActive() {
+        return isActive;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public Instant getOccurredAt() {
+        return occurredAt;
+    }
+
+    public Instant getPublishedAt() {
+        return publishedAt;
+    }
+}
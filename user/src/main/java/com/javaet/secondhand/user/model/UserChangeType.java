@@ -0,0 +1,9 @@
+package com.javaet.secondhand.user.model;
+
+public enum UserChangeType {
+    CREATED,
+    UPDATED,
+    ACTIVATED,
+    DEACTIVATED,
+    DELETED
+}
@@ -1,22 +1,51 @@
 package com.javaet.secondhand.user.model;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
 import javax.persistence.*;
 import java.util.Objects;
 
+/*mail için @Column(unique = true) yerine isimli bir unique index var. Unique constraint da bir index demek ama ismi
+* hibernate tarafından üretiliyor, migration ve EXPLAIN çıktılarında takip edebilmek için adını biz veriyoruz.
+* (is_active, id) index'i aktif kullanıcıları id sırasıyla sayfalayan sorgu için, sorgu bu index üzerinden aralık
+* taraması yapıp sıralama yapmadan dönebiliyor. Tablonun kendisi db/migration altındaki script ile güncelleniyor.
+* DynamicUpdate ile save edilen entity için UPDATE'e sadece değişen kolonlar yazılıyor.*/
 @Entity
+@DynamicUpdate
+@Table(indexes = {
+        @Index(name = "ux_user_information_mail", columnList = "mail", unique = true),
+        @Index(name = "ix_user_information_active_id", columnList = "isActive, id")
+})
 public class UserInformation {
 
+    /*IDENTITY hibernate'in insert batching'ini kapatıyor, her insert'ten sonra id'yi okumak zorunda kalıyor.
+    * Pooled sequence ile id'ler 50'şer blok halinde alınıyor ve insert'ler JDBC batch olarak gönderilebiliyor.
+    * Sequence desteklemeyen MySQL'de hibernate bunu user_information_seq tablosu ile taklit ediyor.
+    * Sequence her shard'da ayrı, shard numarası id'nin üst bit'lerine yazılıyor (ShardedSequenceGenerator). Shard 0'da ve
+    * sharding kapalıyken id sequence değerinin aynısı.*/
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_information_seq")
+    @GenericGenerator(name = "user_information_seq", strategy = "com.javaet.secondhand.user.datasource.ShardedSequenceGenerator",
+            parameters = {
+                    @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "user_information_seq"),
+                    @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+            })
     private Long id;
 
-    @Column(unique = true)
     private String mail;
     private String firstName;
     private String lastName;
     private String middleName;
     private Boolean isActive;
 
+    /*Her güncellemede hibernate tarafından arttırılıyor. ETag'ler (id, version) ikilisinden üretiliyor, JPQL ile yapılan
+    * toplu güncellemeler de version'ı kendisi arttırıyor.*/
+    @Version
+    private Long version;
+
     public UserInformation(Long id, String mail, String firstName, String lastName, String middleName,Boolean isActive) {
         this.id = id;
         this.mail = mail;
@@ -26,6 +55,12 @@ public class UserInformation {
         this.isActive = isActive;
     }
 
+    public UserInformation(Long id, String mail, String firstName, String lastName, String middleName,Boolean isActive,
+                           Long version) {
+        this(id, mail, firstName, lastName, middleName, isActive);
+        this.version = version;
+    }
+
     public UserInformation(Long id,String mail, String firstName, String lastName, String middleName) {
         this.id = id;
         this.mail = mail;
@@ -70,6 +105,10 @@ public class UserInformation {
         return isActive;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     /*Modelde hiç setter yok. Bunun sebebi immutability olması.*/
 
     @Override
@@ -0,0 +1,36 @@
+package com.javaet.secondhand.user.model;
+
+import java.util.Objects;
+
+/*Sadece id ve version okunan sorgular için. ETag kontrolünde kullanıcının tamamını yüklememek için kullanılıyor.*/
+public class UserVersion {
+
+    private final Long id;
+    private final Long version;
+
+    public UserVersion(Long id, Long version) {
+        this.id = id;
+        this.version = version;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UserVersion that = (UserVersion) o;
+        return Objects.equals(id, that.id) && Objects.equals(version, that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, version);
+    }
+}
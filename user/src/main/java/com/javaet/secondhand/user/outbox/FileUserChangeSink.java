@@ -0,0 +1,51 @@
+package com.javaet.secondhand.user.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.javaet.secondhand.user.dto.UserChangeEventDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/*user.outbox.sink=file ile her event dosyaya bir json satırı olarak ekleniyor. Batch diske yazılmadan (force)
+* dönülmüyor, relay position'ları ancak bundan sonra commit ediyor.*/
+@Component
+@ConditionalOnProperty(name = "user.outbox.sink", havingValue = "file")
+public class FileUserChangeSink implements UserChangeSink {
+
+    private final Path file;
+    private final ObjectWriter writer;
+
+    public FileUserChangeSink(@Value("${user.outbox.file:user-changes.ndjson}") Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.writer = objectMapper.writer();
+    }
+
+    @Override
+    public synchronized void publish(List<UserChangeEventDto> events) {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)){
+            ByteArrayOutputStream lines = new ByteArrayOutputStream(events.size() * 256);
+            for(UserChangeEventDto event : events){
+                writer.writeValue(lines, event);
+                lines.write('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
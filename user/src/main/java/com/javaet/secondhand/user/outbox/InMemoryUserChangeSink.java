@@ -0,0 +1,39 @@
+package com.javaet.secondhand.user.outbox;
+
+import com.javaet.secondhand.user.dto.UserChangeEventDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/*Varsayılan sink. Son capacity kadar event'i bellekte tutuyor, testlerde ve broker olmayan ortamlarda kullanılıyor.
+* Consumer'lar bu durumda event'leri GET /v1/user/changes üzerinden okuyor.*/
+@Component
+@ConditionalOnProperty(name = "user.outbox.sink", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryUserChangeSink implements UserChangeSink {
+
+    private final int capacity;
+    private final Deque<UserChangeEventDto> events = new ArrayDeque<>();
+
+    public InMemoryUserChangeSink(@Value("${user.outbox.in-memory.capacity:10000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void publish(List<UserChangeEventDto> batch) {
+        for(UserChangeEventDto event : batch){
+            if(events.size() == capacity){
+                events.removeFirst();
+            }
+            events.addLast(event);
+        }
+    }
+
+    public synchronized List<UserChangeEventDto> getEvents(){
+        return new ArrayList<>(events);
+    }
+}
@@ -0,0 +1,121 @@
+package com.javaet.secondhand.user.outbox;
+
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.dto.UserChangeEventDto;
+import com.javaet.secondhand.user.dto.UserDtoConverter;
+import com.javaet.secondhand.user.model.UserChangeEvent;
+import com.javaet.secondhand.user.repository.UserChangeEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/*Outbox'daki yayınlanmamış event'leri batchSize'lık gruplar halinde sink'e gönderiyor. Her grup tek bir transaction:
+* satırlar kilitleniyor, sırayla position veriliyor, sink'e gönderiliyor ve commit ediliyor. Sink hata verirse
+* transaction geri alınıyor ve aynı event'ler bir sonraki çalışmada tekrar gönderiliyor.
+*
+* İki instance aynı anda position verirse unique index yüzünden biri geri alınıyor, o gruptaki event'ler sink'e
+* iki kere gitmiş olabilir. Consumer'lar (userId, version) ile tekrarları ayıklayabilir.
+*
+* Sharding açıksa her shard'ın kendi outbox'ı var, shard'lar sırayla relay ediliyor. Position'lar shard başına.*/
+@Component
+public class UserChangeRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeRelay.class);
+
+    private final UserChangeEventRepository userChangeEventRepository;
+    private final UserChangeSink userChangeSink;
+    private final UserDtoConverter userDtoConverter;
+    private final UserShardRouter userShardRouter;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration retention;
+
+    public UserChangeRelay(UserChangeEventRepository userChangeEventRepository, UserChangeSink userChangeSink,
+                           UserDtoConverter userDtoConverter, UserShardRouter userShardRouter,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${user.outbox.batch-size:500}") int batchSize,
+                           @Value("${user.outbox.retention:7d}") Duration retention) {
+        this.userChangeEventRepository = userChangeEventRepository;
+        this.userChangeSink = userChangeSink;
+        this.userDtoConverter = userDtoConverter;
+        this.userShardRouter = userShardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.retention = retention;
+    }
+
+    @Scheduled(fixedDelayString = "${user.outbox.relay-interval:PT1S}")
+    public void scheduledRelay(){
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            logger.warn("User change relay failed, it will be retried: " + e.getMessage());
+        }
+    }
+
+    /*Yayınlanmamış event kalmayana kadar çalışıyor. Dönen değer gönderilen event sayısı.*/
+    public int relay(){
+        int relayed = 0;
+        for(int shard : userShardRouter.allShards()){
+            relayed += userShardRouter.onShard(shard, this::relayShard);
+        }
+        return relayed;
+    }
+
+    private int relayShard(){
+        int relayed = 0;
+        while(true){
+            Integer count = transactionTemplate.execute(status -> relayBatch());
+            relayed += count;
+            if(count < batchSize){
+                return relayed;
+            }
+        }
+    }
+
+    private int relayBatch(){
+        List<UserChangeEvent> events = userChangeEventRepository.findUnpublished(PageRequest.of(0, batchSize));
+        if(events.isEmpty()){
+            return 0;
+        }
+        long position = userChangeEventRepository.findLastPosition().orElse(0L);
+        Instant publishedAt = Instant.now();
+        List<UserChangeEventDto> batch = new ArrayList<>(events.size());
+        for(UserChangeEvent event : events){
+            event.publish(++position, publishedAt);
+            batch.add(userDtoConverter.convert(event));
+        }
+        userChangeSink.publish(batch);
+        return events.size();
+    }
+
+    /*Outbox sınırsız büyümesin diye retention'dan eski yayınlanmış event'ler siliniyor. Cursor'ı bundan eski kalan
+    * consumer'lar 410 alıp tam tarama yapmak zorunda.*/
+    @Scheduled(fixedDelayString = "${user.outbox.cleanup-interval:PT10M}")
+    public void deleteExpiredEvents(){
+        for(int shard : userShardRouter.allShards()){
+            userShardRouter.runOnShard(shard, this::deleteExpiredShardEvents);
+        }
+    }
+
+    private void deleteExpiredShardEvents(){
+        Long lastPosition = userChangeEventRepository.findLastPosition().orElse(null);
+        if(lastPosition == null){
+            return;
+        }
+        int deleted = userChangeEventRepository.deletePublishedBefore(Instant.now().minus(retention), lastPosition);
+        if(deleted > 0){
+            logger.info(String.format("Deleted %d user change events older than %s", deleted, retention));
+        }
+    }
+}
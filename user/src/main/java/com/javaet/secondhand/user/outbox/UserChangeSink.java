@@ -0,0 +1,13 @@
+package com.javaet.secondhand.user.outbox;
+
+import com.javaet.secondhand.user.dto.UserChangeEventDto;
+
+import java.util.List;
+
+/*UserChangeRelay'in outbox'daki event'leri gönderdiği yer. Kafka gibi bir broker için bu interface'i implement eden
+* bir bean eklemek yeterli. Event'ler position sırasıyla geliyor. publish exception fırlatırsa batch'e position
+* verilmiyor ve bir sonraki denemede aynı event'ler tekrar gönderiliyor, yani teslimat at-least-once.*/
+public interface UserChangeSink {
+
+    void publish(List<UserChangeEventDto> events);
+}
@@ -0,0 +1,64 @@
+package com.javaet.secondhand.user.repository;
+
+import com.javaet.secondhand.user.model.UserChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UserChangeEventRepository extends JpaRepository<UserChangeEvent,Long> {
+
+    /*Değişen kullanıcıların o anki hali tek bir INSERT ... SELECT ile outbox'a yazılıyor. Toplu işlemlerde satır başına
+    * ayrı bir insert gitmiyor, sadece id'si bilinen kullanıcılar için de önce okumak gerekmiyor. Native sorgu
+    * çalışmadan önce hibernate bekleyen değişiklikleri flush ediyor, aynı transaction'da save edilen kullanıcı da
+    * görülüyor. type UserChangeType'ın adı.*/
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "insert into user_change_event " +
+            "(type, user_id, mail, first_name, last_name, middle_name, is_active, version, occurred_at) " +
+            "select :type, id, mail, first_name, last_name, middle_name, is_active, version, current_timestamp " +
+            "from user_information where id in :ids")
+    int insertEvents(@Param("type") String type, @Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "insert into user_change_event " +
+            "(type, user_id, mail, first_name, last_name, middle_name, is_active, version, occurred_at) " +
+            "select :type, id, mail, first_name, last_name, middle_name, is_active, version, current_timestamp " +
+            "from user_information where mail = :mail")
+    int insertEventsByMail(@Param("type") String type, @Param("mail") String mail);
+
+    /*Relay için. SKIP LOCKED (lock timeout -2) ile birden fazla instance aynı satırları beklemeden farklı satırları alıyor.*/
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("select e from UserChangeEvent e where e.streamPosition is null order by e.id")
+    List<UserChangeEvent> findUnpublished(Pageable pageable);
+
+    @Query("select max(e.streamPosition) from UserChangeEvent e")
+    Optional<Long> findLastPosition();
+
+    @Query("select min(e.streamPosition) from UserChangeEvent e")
+    Optional<Long> findFirstPosition();
+
+    List<UserChangeEvent> findByStreamPositionGreaterThanOrderByStreamPositionAsc(Long streamPosition, Pageable pageable);
+
+    /*Son yayınlanan event hiç silinmiyor. Tablo tamamen boşalırsa position'lar 1'den başlar ve consumer'ların
+    * cursor'ları yanlış event'leri gösterir.*/
+    @Transactional
+    @Modifying
+    @Query("delete from UserChangeEvent e where e.publishedAt < :before and e.streamPosition < :lastPosition")
+    int deletePublishedBefore(@Param("before") Instant before, @Param("lastPosition") Long lastPosition);
+}
@@ -1,14 +1,132 @@
 package com.javaet.secondhand.user.repository;
 
+import com.javaet.secondhand.user.dto.UserDto;
 import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.model.UserVersion;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface UserInformationRepository extends JpaRepository<UserInformation,Long> {
+public interface UserInformationRepository extends JpaRepository<UserInformation,Long>, UserInformationRepositoryCustom {
 
     Optional<UserInformation> findByMail(String mail);
 
+    /*Okuma endpoint'leri için. Sonuçlar entity olarak yüklenmiyor, constructor ile oluşturuluyor. Persistence context'e
+    * girmiyorlar, hibernate ne EntityEntry ne de dirty checking snapshot'ı tutuyor.
+    * Dönen nesneler detached, UserCache'dekiler gibi sadece okunmalı. Sayfa ETag'i ve cursor için id ve version da
+    * gerektiği için UserDto yerine UserInformation oluşturuluyor.*/
+    @Query("select new com.javaet.secondhand.user.model.UserInformation(u.id, u.mail, u.firstName, u.lastName, " +
+            "u.middleName, u.isActive, u.version) from UserInformation u where u.mail = :mail")
+    Optional<UserInformation> findDetachedByMail(@Param("mail") String mail);
+
+    @Query("select new com.javaet.secondhand.user.model.UserInformation(u.id, u.mail, u.firstName, u.lastName, " +
+            "u.middleName, u.isActive, u.version) from UserInformation u where u.mail in :mails")
+    List<UserInformation> findDetachedByMailIn(@Param("mails") Collection<String> mails);
+
+    /*Keyset pagination. Offset yerine son okunan id'den devam ediyoruz, böylece sayfa ne kadar ileride olursa
+    * olsun sorgu primary key üzerinden aralık taraması yapıyor. Fetch size en büyük sayfa (MAX_PAGE_SIZE + 1),
+    * cursor ile okuyan driver'larda sayfa tek seferde geliyor.*/
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "501"))
+    @Query("select new com.javaet.secondhand.user.model.UserInformation(u.id, u.mail, u.firstName, u.lastName, " +
+            "u.middleName, u.isActive, u.version) from UserInformation u where u.id > :id order by u.id")
+    List<UserInformation> findDetachedByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    /*Sadece aktif kullanıcılar. (is_active, id) index'i üzerinden okunuyor.*/
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "501"))
+    @Query("select new com.javaet.secondhand.user.model.UserInformation(u.id, u.mail, u.firstName, u.lastName, " +
+            "u.middleName, u.isActive, u.version) from UserInformation u where u.isActive = true and u.id > :id order by u.id")
+    List<UserInformation> findActiveDetachedByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    /*ETag kontrolleri için. Kullanıcının tamamı yerine sadece id ve version okunuyor.*/
+    @Query("select new com.javaet.secondhand.user.model.UserVersion(u.id, u.version) from UserInformation u where u.mail = :mail")
+    Optional<UserVersion> findVersionByMail(@Param("mail") String mail);
+
+    @Query("select new com.javaet.secondhand.user.model.UserVersion(u.id, u.version) from UserInformation u " +
+            "where u.id > :id order by u.id")
+    List<UserVersion> findVersionsByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    @Query("select new com.javaet.secondhand.user.model.UserVersion(u.id, u.version) from UserInformation u " +
+            "where u.isActive = true and u.id > :id order by u.id")
+    List<UserVersion> findActiveVersionsByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    /*GET /v1/user/stream için. Satırlar doğrudan UserDto'ya dönüşüyor, entity oluşmadığı için detach da gerekmiyor.*/
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.javaet.secondhand.user.dto.UserDto(u.mail, u.firstName, u.lastName, u.middleName) " +
+            "from UserInformation u order by u.id")
+    Stream<UserDto> streamAllAsDto();
+
+    /*UserSnapshotWriter ve UserSearchIndexInitializer için. Tüm tabloyu listeye almadan satır satır okuyor, transaction
+    * içerisinde çağrılmalı ve stream kapatılmalı. MySQL'de gerçekten cursor ile okuması için connection url'ine
+    * useCursorFetch=true eklenmeli. Sıralama gerekmiyor, snapshot dosyası yazılırken mail'in byte'larına göre sıralanıyor.*/
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.javaet.secondhand.user.model.UserInformation(u.id, u.mail, u.firstName, u.lastName, " +
+            "u.middleName, u.isActive, u.version) from UserInformation u")
+    Stream<UserInformation> streamAllDetached();
+
+    /*UserExportService için. Export id aralıklarına bölünüp paralel okunuyor, her parça primary key üzerinden bir aralık
+    * taraması. Sonuçlar sırayla, persistence context'e girmeden okunuyor.*/
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.javaet.secondhand.user.model.UserInformation(u.id, u.mail, u.firstName, u.lastName, " +
+            "u.middleName, u.isActive, u.version) from UserInformation u where u.id > :from and u.id <= :to order by u.id")
+    Stream<UserInformation> streamDetachedByIdBetween(@Param("from") long from, @Param("to") long to);
+
+    @Query("select min(u.id) from UserInformation u")
+    Optional<Long> findMinId();
+
+    @Query("select max(u.id) from UserInformation u")
+    Optional<Long> findMaxId();
+
+    /*MailBloomFilterInitializer için. Sadece mail kolonu okunuyor, sıralamaya gerek yok.*/
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.mail from UserInformation u")
+    Stream<String> streamAllMails();
+
+    @Query("select u.mail from UserInformation u where u.mail in :mails")
+    List<String> findExistingMails(@Param("mails") Collection<String> mails);
+
+    boolean existsByMail(String mail);
+
+    /*Silinecek kullanıcıların mail'leri, silmeden önce aynı transaction'da okunuyor.*/
+    @Query("select u.mail from UserInformation u where u.id in :ids")
+    List<String> findMailsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /*Entity'i yükleyip save etmek yerine tek bir UPDATE atıyoruz. Dönen değer eşleşen satır sayısı,
+    * 0 ise kullanıcı yok demektir. JPQL update'lerinde hibernate version'ı arttırmadığı için elle arttırıyoruz,
+    * yoksa ETag'ler değişmez.*/
+    @Transactional
+    @Modifying
+    @Query("update UserInformation u set u.isActive = :isActive, u.version = u.version + 1 where u.id = :id")
+    int updateActive(@Param("id") Long id, @Param("isActive") Boolean isActive);
+
+    @Transactional
+    @Modifying
+    @Query("update UserInformation u set u.isActive = :isActive, u.version = u.version + 1 where u.id in :ids")
+    int updateActiveByIdIn(@Param("ids") Collection<Long> ids, @Param("isActive") Boolean isActive);
+
+    /*deleteById önce findById ile entity'i yüklüyor sonra siliyor. Burada tek bir DELETE atılıyor, dönen değer
+    * silinen satır sayısı.*/
+    @Transactional
+    @Modifying
+    @Query("delete from UserInformation u where u.id = :id")
+    int deleteUserById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserInformation u where u.id in :ids")
+    int deleteUsersByIdIn(@Param("ids") Collection<Long> ids);
+
 }
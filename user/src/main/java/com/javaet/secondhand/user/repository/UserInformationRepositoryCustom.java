@@ -0,0 +1,12 @@
+package com.javaet.secondhand.user.repository;
+
+import com.javaet.secondhand.user.model.UserVersion;
+
+import java.util.Map;
+
+public interface UserInformationRepositoryCustom {
+
+    /*Sadece verilen kolonları güncelleyen tek bir UPDATE atıyor. expected null değilse id ve version da WHERE'e
+    * ekleniyor. Dönen değer güncellenen satır sayısı, 0 ise kullanıcı yok, aktif değil ya da version tutmuyor demektir.*/
+    int patchUser(String mail, Map<String, String> changes, UserVersion expected);
+}
@@ -0,0 +1,61 @@
+package com.javaet.secondhand.user.repository;
+
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.model.UserVersion;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*Spring Data isimden (UserInformationRepositoryCustom + Impl) bulup UserInformationRepository'e ekliyor.
+* Hangi kolonların güncelleneceği isteğe göre değiştiği için sorgu @Query yerine Criteria API ile kuruluyor.*/
+public class UserInformationRepositoryCustomImpl implements UserInformationRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    public UserInformationRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /*Entity yüklenmediği için okuma-değiştirme-yazma arasında satır kilitli kalmıyor, version kontrolü
+    * UPDATE'in WHERE'i içerisinde yapılıyor. changes'in key'leri entity alan isimleri, servis tarafında kontrol ediliyor.*/
+    @Override
+    @Transactional
+    public int patchUser(String mail, Map<String, String> changes, UserVersion expected) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<UserInformation> update = builder.createCriteriaUpdate(UserInformation.class);
+        Root<UserInformation> user = update.from(UserInformation.class);
+
+        changes.forEach(update::set);
+        //JPQL update'lerinde olduğu gibi hibernate version'ı kendisi arttırmıyor.
+        update.set(user.<Long>get("version"), builder.sum(user.<Long>get("version"), 1L));
+
+        //Sayısal değerler parametre olarak verilmezse hibernate bunları sorguya gömüyor, her version için ayrı bir
+        //SQL oluşuyor ve statement cache'i işe yaramıyor.
+        ParameterExpression<Long> id = builder.parameter(Long.class);
+        ParameterExpression<Long> version = builder.parameter(Long.class);
+        List<Predicate> conditions = new ArrayList<>();
+        conditions.add(builder.equal(user.get("mail"), mail));
+        conditions.add(builder.isTrue(user.<Boolean>get("isActive")));
+        if(expected != null){
+            conditions.add(builder.equal(user.get("id"), id));
+            conditions.add(builder.equal(user.get("version"), version));
+        }
+        update.where(conditions.toArray(new Predicate[0]));
+
+        Query query = entityManager.createQuery(update);
+        if(expected != null){
+            query.setParameter(id, expected.getId());
+            query.setParameter(version, expected.getVersion());
+        }
+        return query.executeUpdate();
+    }
+}
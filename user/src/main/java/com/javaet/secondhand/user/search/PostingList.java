@@ -0,0 +1,50 @@
+package com.javaet.secondhand.user.search;
+
+import java.util.Arrays;
+
+/*Sıralı ve tekrarsız slot listesi. Integer nesneleri yerine int[] tutuluyor, milyonlarca kullanıcıda Set<Long>'a göre
+* çok daha az bellek harcıyor. Yeni kullanıcılar en sondaki slot'u aldığı için ekleme neredeyse her zaman sona yapılıyor.*/
+final class PostingList {
+
+    private int[] slots = new int[4];
+    private int size;
+
+    void add(int slot){
+        int index = Arrays.binarySearch(slots, 0, size, slot);
+        if(index >= 0){
+            return;
+        }
+        index = -index - 1;
+        if(size == slots.length){
+            slots = Arrays.copyOf(slots, size + (size >> 1) + 1);
+        }
+        System.arraycopy(slots, index, slots, index + 1, size - index);
+        slots[index] = slot;
+        size++;
+    }
+
+    void remove(int slot){
+        int index = Arrays.binarySearch(slots, 0, size, slot);
+        if(index < 0){
+            return;
+        }
+        System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+        size--;
+    }
+
+    boolean contains(int slot){
+        return Arrays.binarySearch(slots, 0, size, slot) >= 0;
+    }
+
+    int get(int index){
+        return slots[index];
+    }
+
+    int size(){
+        return size;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+}
@@ -0,0 +1,516 @@
+package com.javaet.secondhand.user.search;
+
+import com.javaet.secondhand.user.model.UserInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/*İsim ve mail ile kısmi arama için bellekte tutulan index. MySQL'de LIKE '%x%' tüm tabloyu taradığı için arama
+* veritabanına hiç gitmiyor.
+*
+* - İsimler sıralı bir sözlükte tutuluyor, isim -> kullanıcılar. Tam eşleşme ve başıyla eşleşme buradan bulunuyor.
+* - En az 3 karakterlik terimler için isimlerin ve mail'in 3'lü karakter parçaları (trigram) -> kullanıcılar tutuluyor.
+*   İçinde geçme aramasında adaylar terimin trigram listelerinin kesişimi, adaylar gerçekten terimi içeriyor mu diye
+*   kontrol ediliyor. 2 karakterlik terimler sadece isimlerin başıyla eşleşiyor.
+*
+* Her terim için en iyi eşleşme puanlanıyor: ismin tamamı 3, başı 2, isim veya mail içinde geçmesi 1. Toplam puana göre
+* ilk limit kadar kullanıcı dönülüyor, puan eşitse önce bulunan önde. Adaylar en seçici terimin tam, prefix ve içinde geçme
+* eşleşmeleri sırasıyla taranıyor. Sonuçlar dolduğunda ve kalan adayların alabileceği en yüksek puan en kötü sonucu
+* geçemiyorsa tarama bitiyor. Böylece yaygın bir isim aranınca on binlerce aday tek tek kontrol edilmiyor.
+* Büyük/küçük harf ve Türkçe karakterler (ş->s, ı->i gibi) normalize ediliyor.
+*
+* Kullanıcılar bir dizide tutuluyor, listelerde kullanıcının dizideki yeri (slot) var. Silinen kullanıcının slot'u sonraki
+* eklemede tekrar kullanılıyor.
+*
+* Index startup'ta UserSearchIndexInitializer ile tablodan dolduruluyor, sonrasında UserService her yazma işleminde
+* güncelliyor. Okumalar birbirini beklemiyor, yazmalar kısa süreli write lock alıyor.
+*
+* Mail filter gibi sadece bu instance'ın yazmalarını görüyor. Başka instance'ın yarattığı kullanıcı aramada çıkmıyor,
+* sildiği ya da deaktif ettiği kullanıcı restart'a kadar çıkmaya devam ediyor. 1M kullanıcıda ~324MB heap tutuyor.
+* Bu yüzden varsayılan olarak kapalı, tabloya tek bir instance'ın yazdığı kurulumlarda user.search.enabled=true ile
+* açılmalı. Kapalıyken yazmalar hiçbir şey yapmıyor, arama endpoint'i 404 dönüyor.*/
+@Component
+public class UserSearchIndex {
+
+    public static final int MIN_TERM_LENGTH = 2;
+
+    private static final int TRIGRAM_LENGTH = 3;
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int SUBSTRING = 1;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    //En kötü sonuç başta, heap dolduğunda ilk o atılıyor. Puan eşitse sonra bulunan daha kötü.
+    private static final Comparator<Hit> WORST_FIRST = (first, second) -> first.score != second.score
+            ? Integer.compare(first.score, second.score)
+            : Integer.compare(second.order, first.order);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Document[] documents = new Document[1024];
+    private int slotCount;
+    private final Map<Long, Integer> slotsById = new HashMap<>();
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private final Map<Long, PostingList> trigrams = new HashMap<>();
+    private final NavigableMap<String, PostingList> names = new TreeMap<>();
+
+    private final boolean enabled;
+    private boolean building;
+    private final Set<Long> removedWhileBuilding = new HashSet<>();
+
+    public UserSearchIndex(@Value("${user.search.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void put(UserInformation user){
+        putAll(List.of(user));
+    }
+
+    public void putAll(Collection<UserInformation> users){
+        write(() -> users.forEach(this::index));
+    }
+
+    public void remove(Long id){
+        removeAll(List.of(id));
+    }
+
+    public void removeAll(Collection<Long> ids){
+        write(() -> ids.forEach(id -> {
+            removeDocument(id);
+            if(building){
+                removedWhileBuilding.add(id);
+            }
+        }));
+    }
+
+    public void setActive(Collection<Long> ids, boolean active){
+        write(() -> ids.forEach(id -> {
+            Integer slot = slotsById.get(id);
+            if(slot != null){
+                documents[slot].active = active;
+            }
+        }));
+    }
+
+    /*Tablo taranırken gelen yazmalar doğrudan index'e işleniyor. Tarama snapshot'ından gelen eski hali onları ezmesin
+    * diye load sadece index'de olmayan ve tarama sırasında silinmemiş kullanıcıları ekliyor.*/
+    public void startBuild(){
+        write(() -> {
+            building = true;
+            removedWhileBuilding.clear();
+        });
+    }
+
+    public void load(Collection<UserInformation> users){
+        write(() -> users.forEach(user -> {
+            if(!slotsById.containsKey(user.getId()) && !removedWhileBuilding.contains(user.getId())){
+                index(user);
+            }
+        }));
+    }
+
+    public void finishBuild(){
+        write(() -> {
+            building = false;
+            removedWhileBuilding.clear();
+        });
+    }
+
+    public int size(){
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return slotsById.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /*activeOnly true ise sadece aktif kullanıcılar dönülüyor. MIN_TERM_LENGTH'den kısa terimler yok sayılıyor.*/
+    public List<UserInformation> search(String query, int limit, boolean activeOnly){
+        String[] terms = terms(query);
+        if(terms.length == 0){
+            return List.of();
+        }
+
+        Search search = new Search(terms, limit, activeOnly);
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            search.run();
+        } finally {
+            readLock.unlock();
+        }
+
+        List<Hit> ranked = new ArrayList<>(search.hits);
+        ranked.sort(WORST_FIRST.reversed());
+        List<UserInformation> users = new ArrayList<>(ranked.size());
+        ranked.forEach(hit -> users.add(hit.user));
+        return users;
+    }
+
+    //Terimin alabileceği en yüksek puan, hiçbir kullanıcıyla eşleşemiyorsa 0.
+    private int maxScore(String term){
+        if(names.containsKey(term)){
+            return EXACT;
+        }
+        String next = names.higherKey(term);
+        if(next != null && next.startsWith(term)){
+            return PREFIX;
+        }
+        return term.length() >= TRIGRAM_LENGTH && trigramLists(term) != null ? SUBSTRING : 0;
+    }
+
+    //Terimle eşleşebilecek kullanıcı sayısı için tahmin, en küçük olan terimin adayları taranıyor.
+    private int candidateCount(String term){
+        if(term.length() >= TRIGRAM_LENGTH){
+            return trigramLists(term).get(0).size();
+        }
+        int count = 0;
+        for(PostingList list : prefixLists(term, true)){
+            count += list.size();
+        }
+        return count;
+    }
+
+    private Collection<PostingList> prefixLists(String term, boolean inclusive){
+        return names.subMap(term, inclusive, term + Character.MAX_VALUE, false).values();
+    }
+
+    //Terimin trigram listeleri, en kısası başta. İçermeyen bir trigram varsa null.
+    private List<PostingList> trigramLists(String term){
+        List<PostingList> lists = new ArrayList<>();
+        for(long trigram : trigrams(term)){
+            PostingList list = trigrams.get(trigram);
+            if(list == null){
+                return null;
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        return lists;
+    }
+
+    private final class Search {
+        private final String[] terms;
+        private final int limit;
+        private final boolean activeOnly;
+        private final PriorityQueue<Hit> hits;
+        private final BitSet visited = new BitSet(slotCount);
+        private int order;
+
+        private Search(String[] terms, int limit, boolean activeOnly) {
+            this.terms = terms;
+            this.limit = limit;
+            this.activeOnly = activeOnly;
+            this.hits = new PriorityQueue<>(limit + 1, WORST_FIRST);
+        }
+
+        private void run(){
+            String driver = null;
+            int driverCandidates = Integer.MAX_VALUE;
+            int maxScoreSum = 0;
+            int driverMaxScore = 0;
+            for(String term : terms){
+                int maxScore = maxScore(term);
+                if(maxScore == 0){
+                    return;
+                }
+                maxScoreSum += maxScore;
+                int candidates = candidateCount(term);
+                if(candidates < driverCandidates){
+                    driver = term;
+                    driverCandidates = candidates;
+                    driverMaxScore = maxScore;
+                }
+            }
+            //Diğer terimlerden alınabilecek en yüksek puan.
+            int others = maxScoreSum - driverMaxScore;
+
+            PostingList exact = names.get(driver);
+            if(exact != null && !scan(exact, null, EXACT + others)){
+                return;
+            }
+            if(!scanPrefixes(driver, PREFIX + others)){
+                return;
+            }
+            if(driver.length() >= TRIGRAM_LENGTH){
+                List<PostingList> lists = trigramLists(driver);
+                scan(lists.get(0), lists.subList(1, lists.size()), SUBSTRING + others);
+            }
+        }
+
+        //Birden fazla isim aynı prefix ile başlıyorsa listeler slot sırasıyla gezilebilsin diye birleştiriliyor.
+        private boolean scanPrefixes(String term, int bound){
+            List<PostingList> lists = new ArrayList<>(prefixLists(term, false));
+            if(lists.size() == 1){
+                return scan(lists.get(0), null, bound);
+            }
+            BitSet slots = new BitSet(slotCount);
+            for(PostingList list : lists){
+                for(int i = 0; i < list.size(); i++){
+                    slots.set(list.get(i));
+                }
+            }
+            if(isComplete(bound)){
+                return false;
+            }
+            for(int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)){
+                if(!offer(slot, bound)){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        //filters verilirse sadece hepsinde bulunan slot'lar aday.
+        private boolean scan(PostingList list, List<PostingList> filters, int bound){
+            if(isComplete(bound)){
+                return false;
+            }
+            for(int i = 0; i < list.size(); i++){
+                int slot = list.get(i);
+                if(filters != null && !containsAll(filters, slot)){
+                    continue;
+                }
+                if(!offer(slot, bound)){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        //Aday puanlanıyor. false dönerse bu ve sonraki adaylar sonuçlara giremez.
+        private boolean offer(int slot, int bound){
+            if(visited.get(slot)){
+                return true;
+            }
+            visited.set(slot);
+            Document document = documents[slot];
+            if(!activeOnly || document.active){
+                int score = score(document, terms);
+                //Sonradan bulunan aday puanı eşitse zaten daha kötü, heap doluysa nesne yaratmadan geçiyoruz.
+                if(score > 0 && (hits.size() < limit || score > hits.peek().score)){
+                    hits.add(new Hit(document, score, order++));
+                    if(hits.size() > limit){
+                        hits.poll();
+                    }
+                }
+            }
+            return !isComplete(bound);
+        }
+
+        private boolean isComplete(int bound){
+            return hits.size() == limit && hits.peek().score >= bound;
+        }
+    }
+
+    private static boolean containsAll(List<PostingList> lists, int slot){
+        for(PostingList list : lists){
+            if(!list.contains(slot)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Bütün terimler eşleşmeli, eşleşmeyen terim varsa 0.
+    private static int score(Document document, String[] terms){
+        int total = 0;
+        for(String term : terms){
+            boolean substring = term.length() >= TRIGRAM_LENGTH;
+            int best = 0;
+            for(String name : document.names){
+                best = Math.max(best, score(name, term, substring));
+            }
+            //Mail sadece içinde geçme olarak puanlanıyor, isim sözlüğünde olmadığı için üst sınır hesabı böyle doğru kalıyor.
+            if(substring && best == 0 && document.mail.contains(term)){
+                best = SUBSTRING;
+            }
+            if(best == 0){
+                return 0;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private static int score(String token, String term, boolean substring){
+        if(token.equals(term)){
+            return EXACT;
+        }
+        if(token.startsWith(term)){
+            return PREFIX;
+        }
+        return substring && token.contains(term) ? SUBSTRING : 0;
+    }
+
+    //Kullanıcı zaten varsa aynı slot'ta güncelleniyor.
+    private void index(UserInformation user){
+        Integer existing = slotsById.get(user.getId());
+        int slot;
+        if(existing != null){
+            slot = existing;
+            unindex(slot);
+        } else {
+            slot = allocateSlot();
+            slotsById.put(user.getId(), slot);
+        }
+
+        Document document = new Document(user);
+        documents[slot] = document;
+        for(String name : document.names){
+            names.computeIfAbsent(name, key -> new PostingList()).add(slot);
+        }
+        for(long trigram : trigrams(document)){
+            trigrams.computeIfAbsent(trigram, key -> new PostingList()).add(slot);
+        }
+    }
+
+    private void removeDocument(Long id){
+        Integer slot = slotsById.remove(id);
+        if(slot == null){
+            return;
+        }
+        unindex(slot);
+        documents[slot] = null;
+        if(freeSlotCount == freeSlots.length){
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private void unindex(int slot){
+        Document document = documents[slot];
+        for(String name : document.names){
+            PostingList list = names.get(name);
+            list.remove(slot);
+            if(list.isEmpty()){
+                names.remove(name);
+            }
+        }
+        for(long trigram : trigrams(document)){
+            PostingList list = trigrams.get(trigram);
+            list.remove(slot);
+            if(list.isEmpty()){
+                trigrams.remove(trigram);
+            }
+        }
+    }
+
+    private int allocateSlot(){
+        if(freeSlotCount > 0){
+            return freeSlots[--freeSlotCount];
+        }
+        if(slotCount == documents.length){
+            documents = Arrays.copyOf(documents, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private static Set<Long> trigrams(Document document){
+        Set<Long> keys = trigrams(document.mail);
+        for(String name : document.names){
+            keys.addAll(trigrams(name));
+        }
+        return keys;
+    }
+
+    //3 karakter 16'şar bit olarak tek bir long'a yerleştiriliyor.
+    private static Set<Long> trigrams(String token){
+        Set<Long> keys = new HashSet<>();
+        for(int i = 0; i + TRIGRAM_LENGTH <= token.length(); i++){
+            keys.add(((long) token.charAt(i) << 32) | ((long) token.charAt(i + 1) << 16) | token.charAt(i + 2));
+        }
+        return keys;
+    }
+
+    static String[] terms(String query){
+        return Arrays.stream(WHITESPACE.split(normalize(query).trim()))
+                .filter(term -> term.length() >= MIN_TERM_LENGTH)
+                .collect(LinkedHashSet<String>::new, Set::add, Set::addAll)
+                .toArray(String[]::new);
+    }
+
+    static String normalize(String value){
+        if(value == null){
+            return "";
+        }
+        String lowerCase = value.toLowerCase(Locale.ROOT);
+        if(lowerCase.chars().allMatch(c -> c < 128)){
+            return lowerCase;
+        }
+        //İ küçültülünce i + birleşik nokta oluyor, ı'nın ise ayrıştırılmış hali yok.
+        String decomposed = Normalizer.normalize(lowerCase.replace('ı', 'i'), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("");
+    }
+
+    private void write(Runnable action){
+        if(!enabled){
+            return;
+        }
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            action.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static final class Document {
+        private final UserInformation user;
+        private final String[] names;
+        private final String mail;
+        private boolean active;
+
+        private Document(UserInformation user) {
+            this.user = user;
+            this.names = Arrays.stream(new String[]{user.getFirstName(), user.getMiddleName(), user.getLastName()})
+                    .flatMap(name -> Arrays.stream(WHITESPACE.split(normalize(name).trim())))
+                    .filter(name -> !name.isEmpty())
+                    .distinct()
+                    .toArray(String[]::new);
+            this.mail = normalize(user.getMail());
+            this.active = Boolean.TRUE.equals(user.getActive());
+        }
+    }
+
+    private static final class Hit {
+        private final UserInformation user;
+        private final int score;
+        private final int order;
+
+        private Hit(Document document, int score, int order) {
+            this.user = document.user;
+            this.score = score;
+            this.order = order;
+        }
+    }
+}
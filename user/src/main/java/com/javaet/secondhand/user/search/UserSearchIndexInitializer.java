@@ -0,0 +1,74 @@
+package com.javaet.secondhand.user.search;
+
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*Uygulama ayağa kalktıktan sonra tablo bir kez taranıp arama index'i dolduruluyor. Tarama bitene kadar arama sonuçları
+* eksik olabilir, bu sırada gelen yazmalar index'e doğrudan işleniyor. Sharding açıksa shard'lar sırayla taranıyor.
+* Kullanıcılar entity olarak yüklenmiyor, tarama persistence context'i doldurmuyor.*/
+@Component
+public class UserSearchIndexInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSearchIndexInitializer.class);
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final UserSearchIndex userSearchIndex;
+    private final UserInformationRepository userInformationRepository;
+    private final UserShardRouter userShardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    public UserSearchIndexInitializer(UserSearchIndex userSearchIndex, UserInformationRepository userInformationRepository,
+                                      UserShardRouter userShardRouter, PlatformTransactionManager transactionManager) {
+        this.userSearchIndex = userSearchIndex;
+        this.userInformationRepository = userInformationRepository;
+        this.userShardRouter = userShardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build(){
+        if(!userSearchIndex.isEnabled()){
+            return;
+        }
+        long start = System.nanoTime();
+        userSearchIndex.startBuild();
+        try {
+            for(int shard : userShardRouter.allShards()){
+                userShardRouter.runOnShard(shard, this::loadShard);
+            }
+        } finally {
+            userSearchIndex.finishBuild();
+        }
+        logger.info(String.format("User search index built with %d users in %d ms", userSearchIndex.size(),
+                (System.nanoTime() - start) / 1_000_000));
+    }
+
+    private void loadShard(){
+        transactionTemplate.executeWithoutResult(status -> {
+            List<UserInformation> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            try(Stream<UserInformation> users = userInformationRepository.streamAllDetached()){
+                users.forEach(user -> {
+                    batch.add(user);
+                    if(batch.size() == LOAD_BATCH_SIZE){
+                        userSearchIndex.load(batch);
+                        batch.clear();
+                    }
+                });
+            }
+            userSearchIndex.load(batch);
+        });
+    }
+}
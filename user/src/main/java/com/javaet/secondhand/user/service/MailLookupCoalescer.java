@@ -0,0 +1,70 @@
+package com.javaet.secondhand.user.service;
+
+import com.javaet.secondhand.user.cache.MailBloomFilter;
+import com.javaet.secondhand.user.model.UserInformation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/*Aynı anda gelen batch isteklerinde aynı mail birden fazla kez sorgulanmasın diye. Sorgusu devam eden bir mail
+* isteniyorsa yeni sorgu atılmıyor, devam eden sorgunun sonucu bekleniyor. Sonuçlar sorgu bitince bırakılıyor,
+* yani bu bir cache değil.
+*
+* Sorgu MySQL'in collation'ı ile büyük/küçük harf ve aksan farkını yok sayıyor. Dönen kullanıcılar istenen mail'lerle
+* birebir değil, MailBloomFilter.normalize ile eşleştiriliyor.*/
+class MailLookupCoalescer {
+
+    private final ConcurrentMap<String, CompletableFuture<Optional<UserInformation>>> inFlight = new ConcurrentHashMap<>();
+
+    Map<String, Optional<UserInformation>> load(Collection<String> mails,
+                                                Function<Collection<String>, List<UserInformation>> query){
+        Map<String, CompletableFuture<Optional<UserInformation>>> futures = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Optional<UserInformation>>> owned = new HashMap<>();
+
+        for(String mail : mails){
+            CompletableFuture<Optional<UserInformation>> future = new CompletableFuture<>();
+            CompletableFuture<Optional<UserInformation>> existing = inFlight.putIfAbsent(mail, future);
+            if(existing == null){
+                owned.put(mail, future);
+                futures.put(mail, future);
+            }
+            else{
+                futures.put(mail, existing);
+            }
+        }
+
+        if(!owned.isEmpty()){
+            try {
+                Map<String, UserInformation> found = new HashMap<>();
+                query.apply(new ArrayList<>(owned.keySet())).forEach(user -> found.put(MailBloomFilter.normalize(user.getMail()), user));
+                owned.forEach((mail, future) -> future.complete(Optional.ofNullable(found.get(MailBloomFilter.normalize(mail)))));
+            } catch (RuntimeException e) {
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.forEach(inFlight::remove);
+            }
+        }
+
+        Map<String, Optional<UserInformation>> result = new LinkedHashMap<>();
+        try {
+            futures.forEach((mail, future) -> result.put(mail, future.join()));
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return result;
+    }
+}
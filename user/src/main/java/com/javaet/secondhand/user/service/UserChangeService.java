@@ -0,0 +1,75 @@
+package com.javaet.secondhand.user.service;
+
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.dto.UserChangePageDto;
+import com.javaet.secondhand.user.dto.UserDtoConverter;
+import com.javaet.secondhand.user.exception.ChangeCursorExpiredException;
+import com.javaet.secondhand.user.exception.UnknownShardException;
+import com.javaet.secondhand.user.model.UserChangeEvent;
+import com.javaet.secondhand.user.repository.UserChangeEventRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*Downstream servisler GET /v1/user'ı baştan sona okuyup fark çıkarmak yerine buradan sadece son cursor'dan sonraki
+* değişiklikleri okuyor. İlk kez başlayan bir consumer after vermeden okuyor, outbox'da kalan en eski event'den başlıyor.*/
+@Service
+public class UserChangeService {
+
+    public static final int DEFAULT_CHANGES_LIMIT = 100;
+    public static final int MAX_CHANGES_LIMIT = 1000;
+
+    private final UserChangeEventRepository userChangeEventRepository;
+    private final UserDtoConverter userDtoConverter;
+    private final UserShardRouter userShardRouter;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    public UserChangeService(UserChangeEventRepository userChangeEventRepository, UserDtoConverter userDtoConverter,
+                             UserShardRouter userShardRouter, PlatformTransactionManager transactionManager) {
+        this.userChangeEventRepository = userChangeEventRepository;
+        this.userDtoConverter = userDtoConverter;
+        this.userShardRouter = userShardRouter;
+        //firstPosition ve sayfa aynı snapshot'dan okunsun. Replica routing açıksa replica'dan okunuyor.
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    public UserChangePageDto getChanges(Long after, int limit){
+        return getChanges(0, after, limit);
+    }
+
+    /*Sharding açıksa her shard'ın kendi outbox'ı ve position'ları var, consumer her shard için ayrı bir cursor tutuyor.*/
+    public UserChangePageDto getChanges(int shard, Long after, int limit){
+        if(shard < 0 || shard >= userShardRouter.getShardCount()){
+            throw new UnknownShardException("Shard must be between 0 and " + (userShardRouter.getShardCount() - 1) + ": " + shard);
+        }
+        return userShardRouter.onShard(shard, () -> readOnlyTransactionTemplate.execute(status -> readChanges(after, limit)));
+    }
+
+    private UserChangePageDto readChanges(Long after, int limit){
+        int pageSize = Math.max(1, Math.min(limit, MAX_CHANGES_LIMIT));
+        if(after != null){
+            //Retention yüzünden after'dan hemen sonraki event silinmişse arada kaçırılan değişiklikler var demektir.
+            Long firstPosition = userChangeEventRepository.findFirstPosition().orElse(null);
+            if(firstPosition != null && after < firstPosition - 1){
+                throw new ChangeCursorExpiredException("Changes after " + after + " are not retained anymore, oldest position: "
+                        + firstPosition);
+            }
+        }
+
+        long from = after == null ? 0L : after;
+        List<UserChangeEvent> events = userChangeEventRepository.findByStreamPositionGreaterThanOrderByStreamPositionAsc(from,
+                PageRequest.of(0, pageSize + 1));
+        boolean hasMore = events.size() > pageSize;
+        if(hasMore){
+            events = events.subList(0, pageSize);
+        }
+        long nextCursor = events.isEmpty() ? from : events.get(events.size() - 1).getStreamPosition();
+        return new UserChangePageDto(events.stream().map(userDtoConverter::convert).collect(Collectors.toList()),
+                nextCursor, hasMore);
+    }
+}
@@ -1,21 +1,67 @@
 package com.javaet.secondhand.user.service;
 
+import com.javaet.secondhand.user.cache.MailBloomFilter;
+import com.javaet.secondhand.user.cache.UserCache;
+import com.javaet.secondhand.user.datasource.UserShardRouter;
+import com.javaet.secondhand.user.dto.BulkImportFailureDto;
+import com.javaet.secondhand.user.dto.BulkImportResultDto;
+import com.javaet.secondhand.user.dto.BulkUpdateResultDto;
 import com.javaet.secondhand.user.dto.CreateUserRequest;
+import com.javaet.secondhand.user.dto.MailFilterStatsDto;
+import com.javaet.secondhand.user.dto.PurgeProgressDto;
 import com.javaet.secondhand.user.dto.UpdateUserRequest;
+import com.javaet.secondhand.user.dto.UserBatchDto;
+import com.javaet.secondhand.user.dto.UserCacheStatsDto;
 import com.javaet.secondhand.user.dto.UserDto;
 import com.javaet.secondhand.user.dto.UserDtoConverter;
+import com.javaet.secondhand.user.dto.UserPageDto;
+import com.javaet.secondhand.user.dto.Versioned;
+import com.javaet.secondhand.user.exception.InvalidPatchException;
+import com.javaet.secondhand.user.exception.InvalidSearchQueryException;
+import com.javaet.secondhand.user.exception.TooManyMailsException;
+import com.javaet.secondhand.user.exception.UserAlreadyExistsException;
 import com.javaet.secondhand.user.exception.UserIsNotActiveException;
 import com.javaet.secondhand.user.exception.UserNotFoundException;
+import com.javaet.secondhand.user.exception.UserSearchDisabledException;
+import com.javaet.secondhand.user.exception.UserVersionMismatchException;
+import com.javaet.secondhand.user.model.UserChangeType;
 import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.model.UserVersion;
+import com.javaet.secondhand.user.repository.UserChangeEventRepository;
 import com.javaet.secondhand.user.repository.UserInformationRepository;
+import com.javaet.secondhand.user.search.UserSearchIndex;
+import com.javaet.secondhand.user.snapshot.UserSnapshot;
 import com.javaet.secondhand.user.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class UserService {
@@ -25,18 +71,121 @@ public class UserService {
     * En büyük artısıda nesnenin kolay test edilebilirliği oluyor.*/
     private final UserDtoConverter userDtoConverter;
     private final UserInformationRepository userInformationRepository;
+    private final UserChangeEventRepository userChangeEventRepository;
+    private final EntityManager entityManager;
+    private final UserCache userCache;
+    private final UserSearchIndex userSearchIndex;
+    private final MailBloomFilter mailBloomFilter;
+    private final UserSnapshot userSnapshot;
+    private final UserShardRouter userShardRouter;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final int importBatchSize;
+    private final MailLookupCoalescer mailLookupCoalescer = new MailLookupCoalescer();
 
-    public UserService(UserInformationRepository userInformationRepository,UserDtoConverter userDtoConverter) {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_REPORTED_FAILURES = 1000;
+    public static final int MAX_BATCH_MAILS = 100;
+    public static final int PURGE_CHUNK_SIZE = 1000;
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+    public static final int MAX_SEARCH_LIMIT = 100;
+    public static final Set<String> PATCHABLE_FIELDS = Set.of("firstName", "lastName", "middleName");
+    private static final Pattern USER_ETAG = Pattern.compile("\"(\\d+)\\.(\\d+)\"");
+
+    public UserService(UserInformationRepository userInformationRepository,UserChangeEventRepository userChangeEventRepository,
+                       UserDtoConverter userDtoConverter,EntityManager entityManager,UserCache userCache,
+                       UserSearchIndex userSearchIndex,MailBloomFilter mailBloomFilter,UserSnapshot userSnapshot,
+                       UserShardRouter userShardRouter,PlatformTransactionManager transactionManager,
+                       @Value("${user.import.batch-size:500}") int importBatchSize) {
         this.userDtoConverter = userDtoConverter;
         this.userInformationRepository = userInformationRepository;
+        this.userChangeEventRepository = userChangeEventRepository;
+        this.entityManager = entityManager;
+        this.userCache = userCache;
+        this.userSearchIndex = userSearchIndex;
+        this.mailBloomFilter = mailBloomFilter;
+        this.userSnapshot = userSnapshot;
+        this.userShardRouter = userShardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        //Replica routing açıksa bu template ile yapılan okumalar replica'lara gidiyor.
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.importBatchSize = importBatchSize;
+    }
+
+    /*findAll tüm tabloyu heap'e alıyordu. Artık id'ye göre sayfa sayfa okuyoruz. Bir fazla kayıt çekip sonraki sayfa
+    * olup olmadığını anlıyoruz, ayrıca count sorgusu atmıyoruz.*/
+    public UserPageDto getAllUser(Long after, int size) {
+        return getUserPage(after, size, false).getValue();
+    }
+
+    public UserPageDto getActiveUsers(Long after, int size) {
+        return getUserPage(after, size, true).getValue();
+    }
+
+    /*Sayfa ETag'i ile birlikte dönüyor. ETag sayfadaki ve bir sonraki kullanıcının (id, version)'larından üretiliyor,
+    * sayfaya kullanıcı eklenince, silinince ya da güncellenince değişiyor.*/
+    public Versioned<UserPageDto> getUserPage(Long after, int size, boolean activeOnly) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<UserInformation> users = readFromShards(after, pageSize + 1, (from, pageable) -> activeOnly
+                ? userInformationRepository.findActiveDetachedByIdGreaterThan(from, pageable)
+                : userInformationRepository.findDetachedByIdGreaterThan(from, pageable));
+        String eTag = pageETag(users.stream().map(user -> new UserVersion(user.getId(), user.getVersion()))
+                .collect(Collectors.toList()));
+
+        Long nextCursor = null;
+        if(users.size() > pageSize){
+            users = users.subList(0, pageSize);
+            nextCursor = users.get(pageSize - 1).getId();
+        }
+        return new Versioned<>(new UserPageDto(userDtoConverter.convert(users), nextCursor), eTag);
     }
 
-    public List<UserDto> getAllUser() {
-        /*return userInformationRepository.findAll()
-                .stream()
-                .map(userDtoConverter::convert)
-                .collect(Collectors.toList());*/
-        return userDtoConverter.convert(userInformationRepository.findAll());
+    /*If-None-Match kontrolü için. Kullanıcılar yüklenmeden sadece (id, version)'lar okunuyor, sayfa değişmediyse
+    * kullanıcılar ne okunuyor ne de serileştiriliyor.*/
+    public String getUserPageETag(Long after, int size, boolean activeOnly) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return pageETag(readFromShards(after, pageSize + 1, (from, pageable) -> activeOnly
+                ? userInformationRepository.findActiveVersionsByIdGreaterThan(from, pageable)
+                : userInformationRepository.findVersionsByIdGreaterThan(from, pageable)));
+    }
+
+    /*Cursor'ın shard'ı ve sonrakiler paralel okunuyor (scatter-gather), her biri kendi readOnly transaction'ında.
+    * Bir shard'ın id'lerinin hepsi bir sonrakininkilerden küçük, shard sırasıyla eklenen sonuçlar id sırasında kalıyor
+    * ve ilk limit kadarı sayfa oluyor. Cursor'dan önceki shard'larda okunacak bir şey yok.*/
+    private <T> List<T> readFromShards(Long after, int limit, BiFunction<Long, Pageable, List<T>> query){
+        Long from = after == null ? 0L : after;
+        int firstShard = from <= 0 ? 0 : userShardRouter.shardOf(from);
+        if(firstShard < 0){
+            return List.of();
+        }
+        Pageable pageable = PageRequest.of(0, limit);
+        List<List<T>> shardPages = userShardRouter.onShards(userShardRouter.shardsFrom(firstShard),
+                shard -> readOnlyTransactionTemplate.execute(status -> query.apply(from, pageable)));
+        List<T> merged = new ArrayList<>(limit);
+        for(List<T> shardPage : shardPages){
+            for(T item : shardPage){
+                if(merged.size() == limit){
+                    return merged;
+                }
+                merged.add(item);
+            }
+        }
+        return merged;
+    }
+
+    /*Kullanıcılar tek tek consumer'a veriliyor. Sorgu doğrudan UserDto döndüğü için persistence context'e bir şey
+    * girmiyor, tablo ne kadar büyük olursa olsun heap kullanımı sabit kalıyor. Shard'lar sırayla, her biri kendi
+    * transaction'ında okunuyor, sıra yine id sırası.*/
+    public void streamAllUsers(Consumer<UserDto> consumer) {
+        for(int shard : userShardRouter.allShards()){
+            userShardRouter.runOnShard(shard, () -> readOnlyTransactionTemplate.executeWithoutResult(status -> {
+                try(Stream<UserDto> users = userInformationRepository.streamAllAsDto()){
+                    users.forEach(consumer);
+                }
+            }));
+        }
     }
 
     /*
@@ -46,10 +195,91 @@ public class UserService {
     * yaz. Method signature'ına bunu yazarak uyarıyorsun.
     * */
 
+    /*En sık çağrılan endpoint. Önce cache'e bakıyoruz, yoksa veritabanından okuyup cache'e koyuyoruz.*/
     public UserDto getUserByMail(String mail){
-        UserInformation userInformation = findUserByMail(mail);
+        UserInformation userInformation = userCache.get(mail, this::readUserByMail);
         return userDtoConverter.convert(userInformation);
     }
+
+    public Versioned<UserDto> getVersionedUserByMail(String mail){
+        UserInformation userInformation = userCache.get(mail, this::readUserByMail);
+        return new Versioned<>(userDtoConverter.convert(userInformation),
+                eTag(userInformation.getId(), userInformation.getVersion()));
+    }
+
+    /*Kullanıcı cache'de ya da snapshot'da varsa ETag oradan, yoksa sadece (id, version) okunarak hesaplanıyor.*/
+    public String getUserETag(String mail){
+        UserInformation cached = userCache.getIfPresent(mail);
+        if(cached != null){
+            return eTag(cached.getId(), cached.getVersion());
+        }
+        if(!mailBloomFilter.mightContain(mail)){
+            throw new UserNotFoundException("User couldn't be found by following mail: "+mail);
+        }
+        Optional<UserInformation> snapshotUser = userSnapshot.find(mail);
+        if(snapshotUser.isPresent()){
+            return eTag(snapshotUser.get().getId(), snapshotUser.get().getVersion());
+        }
+        UserVersion userVersion = onMailShard(mail, () -> readOnlyTransactionTemplate.execute(status -> userInformationRepository.findVersionByMail(mail)))
+                .orElseThrow(() -> new UserNotFoundException("User couldn't be found by following mail: "+mail));
+        return eTag(userVersion.getId(), userVersion.getVersion());
+    }
+    /*İlan ve mesajlaşma servisleri satıcı/alıcıları tek tek GET ile çekiyordu. Burada cache'de olanlar cache'den,
+    * kalanlar tek bir WHERE mail IN (...) sorgusu ile okunuyor. Aynı anda başka bir batch isteği aynı mail'i zaten
+    * sorguluyorsa o sorgunun sonucu bekleniyor. Cache'i burada doldurmuyoruz, eşzamanlı bir update ile yarışıp
+    * eski veriyi cache'e koyabilirdik. Mail filter'ın kesinlikle yok dediği mail'ler sorguya hiç girmiyor.*/
+    public UserBatchDto getUsersByMail(List<String> mails){
+        Set<String> distinctMails = new LinkedHashSet<>(mails);
+        if(distinctMails.size() > MAX_BATCH_MAILS){
+            throw new TooManyMailsException("At most " + MAX_BATCH_MAILS + " mails can be requested at once, requested: "
+                    + distinctMails.size());
+        }
+
+        Map<String, UserInformation> users = new HashMap<>();
+        List<String> notCached = new ArrayList<>();
+        for(String mail : distinctMails){
+            UserInformation cached = userCache.getIfPresent(mail);
+            if(cached != null){
+                users.put(mail, cached);
+            }
+            else if(mailBloomFilter.mightContain(mail)){
+                Optional<UserInformation> snapshotUser = userSnapshot.find(mail);
+                if(snapshotUser.isPresent()){
+                    users.put(mail, snapshotUser.get());
+                }
+                else{
+                    notCached.add(mail);
+                }
+            }
+        }
+        if(!notCached.isEmpty()){
+            mailLookupCoalescer.load(notCached, this::readUsersByMail)
+                    .forEach((mail, user) -> user.ifPresent(found -> users.put(mail, found)));
+        }
+
+        List<UserDto> found = new ArrayList<>();
+        List<String> misses = new ArrayList<>();
+        for(String mail : distinctMails){
+            UserInformation user = users.get(mail);
+            if(user != null){
+                found.add(userDtoConverter.convert(user));
+            }
+            else{
+                misses.add(mail);
+            }
+        }
+        return new UserBatchDto(found, misses);
+    }
+
+    /*Mail'ler shard'larına göre gruplanıp her shard'a tek bir IN sorgusu paralel olarak gönderiliyor.*/
+    private List<UserInformation> readUsersByMail(Collection<String> mails){
+        Map<Integer, List<String>> mailsByShard = userShardRouter.groupByShard(mails, userShardRouter::shardOf);
+        List<UserInformation> users = new ArrayList<>(mails.size());
+        userShardRouter.onShards(mailsByShard.keySet(), shard -> readOnlyTransactionTemplate.execute(status ->
+                userInformationRepository.findDetachedByMailIn(mailsByShard.get(shard)))).forEach(users::addAll);
+        return users;
+    }
+
     /*
     * Kotlinde ki immutable muhabbetinden dolayı setle null oluşan objeyi initalize edemiyorum.
     * Constructor geçmek zorundayım. Bu seferde tüm elemanları constructor'da istiyor. Id'yi mecburen
@@ -64,20 +294,231 @@ public class UserService {
 
         //false verelim isActive parametresini active veya deactiveUser metodlarım zaten var.
 
-        return userDtoConverter.convert(userInformationRepository.save(userInformation));
+        //Kullanıcı ve outbox event'i aynı transaction'da yazılıyor. Cache ve index commit'ten sonra güncelleniyor.
+        //Mail filter'a commit'ten önce ekleniyor, commit ile ekleme arasında yapılan bir okuma yanlış 404 almasın.
+        String mail = createUserRequest.getMail();
+        mailBloomFilter.add(mail);
+        UserInformation savedUserInformation;
+        try {
+            savedUserInformation = onMailShard(mail, () -> transactionTemplate.execute(status -> {
+                UserInformation saved = userInformationRepository.save(userInformation);
+                userChangeEventRepository.insertEvents(UserChangeType.CREATED.name(), List.of(saved.getId()));
+                return saved;
+            }));
+        } catch (RuntimeException e) {
+            mailBloomFilter.remove(mail);
+            if(e instanceof DataIntegrityViolationException && mailExists(mail)){
+                throw new UserAlreadyExistsException("User already exists with following mail: "+mail);
+            }
+            throw e;
+        }
+        userCache.put(savedUserInformation);
+        userSearchIndex.put(savedUserInformation);
+        userSnapshot.put(savedUserInformation);
+        return userDtoConverter.convert(savedUserInformation);
+    }
+
+    /*Violation mail'in unique index'inden mi geldi? Filter kesinlikle yok diyorsa sorguya gerek yok. Satırı yazan
+    * transaction primary'de commit olmuş, replica'da henüz görünmeyebilir, bu yüzden primary'den okunuyor.*/
+    private boolean mailExists(String mail){
+        return mailBloomFilter.mightContain(mail)
+                && Boolean.TRUE.equals(onMailShard(mail, () -> transactionTemplate.execute(status -> userInformationRepository.existsByMail(mail))));
+    }
+
+    /*Kayıt formu için. Filter kesinlikle yok diyorsa veritabanına gidilmiyor. Sadece bir ipucu, arada başka biri aynı
+    * mail ile kayıt olabilir, asıl kontrol createUser'da unique index ile yapılıyor.*/
+    public boolean isMailAvailable(String mail){
+        if(!mailBloomFilter.mightContain(mail)){
+            return true;
+        }
+        return !Boolean.TRUE.equals(onMailShard(mail, () -> readOnlyTransactionTemplate.execute(status -> userInformationRepository.existsByMail(mail))));
+    }
+
+    public MailFilterStatsDto getMailFilterStats(){
+        return mailBloomFilter.stats();
+    }
+
+    /*Partner dosyalarından gelen kullanıcılar importBatchSize'lık gruplar halinde, her grup kendi transaction'ında
+    * yazılıyor. Bir satırdaki hata tüm import'u durdurmuyor, satır numarası ile failures'a ekleniyor.
+    * Import edilen kullanıcılar da createUser'daki gibi deaktif olarak yaratılıyor.*/
+    public BulkImportResultDto importUsers(Iterator<CreateUserRequest> requests) {
+        long startedAt = System.nanoTime();
+        BulkImport bulkImport = new BulkImport();
+        List<ImportRow> batch = new ArrayList<>(importBatchSize);
+        Set<String> mailsInBatch = new HashSet<>();
+
+        while(true){
+            CreateUserRequest request;
+            try {
+                if(!requests.hasNext()){
+                    break;
+                }
+                request = requests.next();
+            } catch (RuntimeException e) {
+                //Bozuk bir satırdan sonra json/csv okumaya güvenli bir şekilde devam edemiyoruz.
+                bulkImport.fail(bulkImport.received + 1, null, "Row couldn't be parsed: " + e.getMessage());
+                break;
+            }
+
+            long row = ++bulkImport.received;
+            String mail = request.getMail();
+            if(mail == null || mail.isBlank()){
+                bulkImport.fail(row, mail, "Mail is required");
+                continue;
+            }
+            //Collation büyük/küçük harf ve aksan ayırt etmiyor, A@x.com ve a@x.com aynı grupta unique index'e takılırdı.
+            if(!mailsInBatch.add(MailBloomFilter.normalize(mail))){
+                bulkImport.fail(row, mail, "Mail is duplicated in the import");
+                continue;
+            }
+
+            batch.add(new ImportRow(row, new UserInformation(mail, request.getFirstName(), request.getLastName(),
+                    request.getMiddleName(), false)));
+
+            if(batch.size() >= importBatchSize){
+                writeBatch(batch, bulkImport);
+                batch.clear();
+                mailsInBatch.clear();
+            }
+        }
+        if(!batch.isEmpty()){
+            writeBatch(batch, bulkImport);
+        }
+
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        double rowsPerSecond = elapsedMillis == 0 ? bulkImport.imported : bulkImport.imported * 1000.0 / elapsedMillis;
+        logger.info(String.format("User import finished, received: %d, imported: %d, failed: %d, %.1f rows/sec",
+                bulkImport.received, bulkImport.imported, bulkImport.failed, rowsPerSecond));
+
+        return new BulkImportResultDto(bulkImport.received, bulkImport.imported, bulkImport.failed,
+                bulkImport.failures, elapsedMillis, rowsPerSecond);
+    }
+
+    /*Grup shard'lara bölünüp shard'lar sırayla yazılıyor.*/
+    private void writeBatch(List<ImportRow> batch, BulkImport bulkImport){
+        userShardRouter.groupByShard(batch, importRow -> userShardRouter.shardOf(importRow.user.getMail()))
+                .forEach((shard, rows) -> userShardRouter.runOnShard(shard, () -> writeShardBatch(rows, bulkImport)));
+    }
+
+    private void writeShardBatch(List<ImportRow> batch, BulkImport bulkImport){
+        //Yeni mail'lerin çoğunu filter eliyor, hepsi elenirse sorgu hiç atılmıyor.
+        List<String> mails = new ArrayList<>(batch.size());
+        batch.forEach(importRow -> {
+            if(mailBloomFilter.mightContain(importRow.user.getMail())){
+                mails.add(importRow.user.getMail());
+            }
+        });
+        //IN sorgusu collation ile eşleşiyor, dönen mail'ler kayıtlı yazılışları. Karşılaştırma da aynı şekilde yapılıyor.
+        Set<String> existingMails = new HashSet<>();
+        if(!mails.isEmpty()){
+            userInformationRepository.findExistingMails(mails).forEach(existing -> existingMails.add(MailBloomFilter.normalize(existing)));
+        }
+
+        List<ImportRow> newRows = new ArrayList<>(batch.size());
+        for(ImportRow importRow : batch){
+            if(existingMails.contains(MailBloomFilter.normalize(importRow.user.getMail()))){
+                bulkImport.fail(importRow.row, importRow.user.getMail(), "Mail already exists");
+            }
+            else{
+                newRows.add(importRow);
+            }
+        }
+        if(newRows.isEmpty()){
+            return;
+        }
+
+        try {
+            List<UserInformation> users = new ArrayList<>(newRows.size());
+            newRows.forEach(importRow -> users.add(importRow.user));
+            saveBatch(users);
+            bulkImport.imported += users.size();
+        } catch (DataIntegrityViolationException e) {
+            //Kontrolden sonra başka biri aynı mail'i yazmış olabilir. Hatalı satırı bulmak için bu grubu tek tek yazıyoruz.
+            logger.warn("User import batch failed, retrying rows one by one: " + e.getMessage());
+            for(ImportRow importRow : newRows){
+                try {
+                    saveBatch(List.of(importRow.user));
+                    bulkImport.imported++;
+                } catch (DataIntegrityViolationException ex) {
+                    bulkImport.fail(importRow.row, importRow.user.getMail(), "Mail already exists");
+                }
+            }
+        }
+    }
+
+    /*saveAllAndFlush ile insert'ler hibernate.jdbc.batch_size'lık JDBC batch'leri halinde gidiyor. clear ile
+    * persistence context boşaltılıyor, böylece import ne kadar büyük olursa olsun bellekte sadece bir grup kalıyor.*/
+    private void saveBatch(List<UserInformation> users){
+        List<String> mails = users.stream().map(UserInformation::getMail).collect(Collectors.toList());
+        mailBloomFilter.addAll(mails);
+        List<UserInformation> savedUsers;
+        try {
+            savedUsers = transactionTemplate.execute(status -> {
+                List<UserInformation> saved = userInformationRepository.saveAllAndFlush(users);
+                userChangeEventRepository.insertEvents(UserChangeType.CREATED.name(),
+                        saved.stream().map(UserInformation::getId).collect(Collectors.toList()));
+                entityManager.clear();
+                return saved;
+            });
+        } catch (RuntimeException e) {
+            mailBloomFilter.removeAll(mails);
+            throw e;
+        }
+        userSearchIndex.putAll(savedUsers);
+        savedUsers.forEach(userSnapshot::put);
+    }
+
+    /*Aynı mail silinip tekrar yaratılırsa version yine 0'dan başlıyor, id de ETag'e bu yüzden dahil.*/
+    private static String eTag(Long id, Long version){
+        return "\"" + id + "." + version + "\"";
     }
 
+    /*Sayfa ETag'i weak. Tomcat strong ETag'i olan response'ları gzip'lemiyor, sıkıştırma asıl büyük olan sayfa
+    * response'larında işe yarıyor. If-None-Match karşılaştırması weak olduğu için 304'ler etkilenmiyor.*/
+    private static String pageETag(List<UserVersion> userVersions){
+        long hash = 17;
+        for(UserVersion userVersion : userVersions){
+            hash = 31 * hash + Objects.hashCode(userVersion.getId());
+            hash = 31 * hash + Objects.hashCode(userVersion.getVersion());
+        }
+        return "W/\"p" + userVersions.size() + "-" + Long.toHexString(hash) + "\"";
+    }
+
+    /*PUT kullanıcının tüm alanlarını değiştiriyor, aynı kullanıcıya eşzamanlı gelen PUT'larda son yazan kazanıyor.
+    * Önceden kullanıcı transaction dışında okunup kopyası okunan version ile save ediliyordu, ikinci PUT optimistic
+    * lock hatası ile 500 alıyordu. Artık patch'deki gibi tek bir UPDATE atılıyor, version koşulu yok. Güncel hali aynı
+    * transaction'da okunuyor, UPDATE satırı commit'e kadar kilitli tuttuğu için okunan bu PUT'un yazdığı.*/
     public UserDto updateUser(String mail,UpdateUserRequest updateUserRequest) {
+        Map<String, String> changes = Map.of("firstName", updateUserRequest.getFirstName(),
+                "lastName", updateUserRequest.getLastName(), "middleName", updateUserRequest.getMiddleName());
+
+        UserInformation savedUserInformation = onMailShard(mail, () -> transactionTemplate.execute(status -> {
+            if(userInformationRepository.patchUser(mail, changes, null) == 0){
+                //UPDATE aktif olmayan kullanıcıyla eşleşmiyor, hangisi olduğunu anlamak için okuyoruz.
+                findActiveUserByMail(mail);
+                throw new UserIsNotActiveException();
+            }
+            userChangeEventRepository.insertEventsByMail(UserChangeType.UPDATED.name(), mail);
+            return findUserByMail(mail);
+        }));
+        userCache.put(savedUserInformation);
+        userSearchIndex.put(savedUserInformation);
+        userSnapshot.put(savedUserInformation);
+        return userDtoConverter.convert(savedUserInformation);
+    }
+
+    /*Write-behind'da güncelleme kabul edilmeden önce 404 ya da 400 dönebilmek için. Kullanıcı çoğunlukla cache'den geliyor.*/
+    public void checkUserIsUpdatable(String mail) {
+        onMailShard(mail, () -> findActiveUserByMail(mail));
+    }
+
+    private UserInformation findActiveUserByMail(String mail){
         UserInformation userInformation = findUserByMail(mail);
         if(!userInformation.getActive()){
             logger.warn(String.format("The user wanted update is not active!, user mail: %s",mail));
             throw new UserIsNotActiveException();
         }
-        //Model nesnesi
-        UserInformation updatedUserInformation = new UserInformation(userInformation.getId(),userInformation.getMail(),updateUserRequest.getFirstName(), updateUserRequest.getLastName(),
-                updateUserRequest.getMiddleName(),userInformation.getActive());
-
-        return userDtoConverter.convert(userInformationRepository.save(updatedUserInformation));
+        return userInformation;
     }
 
     public void deactivateUser(Long id) {
@@ -88,38 +529,268 @@ public class UserService {
         changeActivateUser(id,true);
     }
 
+    public BulkUpdateResultDto deactivateUsers(List<Long> ids) {
+        return changeActivateUsers(ids,false);
+    }
+
+    public BulkUpdateResultDto activateUsers(List<Long> ids) {
+        return changeActivateUsers(ids,true);
+    }
+
+    /*Varlık kontrolü ayrıca yapılmıyor, DELETE hiçbir satırı etkilemezse kullanıcı yok demektir. Event kullanıcının
+    * silinmeden önceki hali ile yazılıyor, kullanıcı yoksa exception transaction'ı geri alıyor.*/
     public void deleteUser(Long id) {
-        if(doesUserExist(id)){
-            userInformationRepository.deleteById(id);
+        List<String> mails = userShardRouter.onShard(shardOfUser(id), () -> transactionTemplate.execute(status -> {
+            userChangeEventRepository.insertEvents(UserChangeType.DELETED.name(), List.of(id));
+            List<String> deletedMails = findMailsForFilter(List.of(id));
+            if(userInformationRepository.deleteUserById(id) == 0){
+                throw new UserNotFoundException("User couldn't be found by following id: "+id);
+            }
+            return deletedMails;
+        }));
+        userCache.invalidate(id);
+        userSearchIndex.remove(id);
+        userSnapshot.invalidate(List.of(id));
+        mailBloomFilter.removeAll(mails);
+    }
+
+    //Mail filter sadece id ile silemiyor. Filter kapalıysa fazladan sorgu atılmıyor.
+    private List<String> findMailsForFilter(List<Long> ids){
+        return mailBloomFilter.isEnabled() ? userInformationRepository.findMailsByIdIn(ids) : List.of();
+    }
+
+    /*GDPR silme işleri için. Id'ler PURGE_CHUNK_SIZE'lık parçalar halinde DELETE ... WHERE id IN (...) ile siliniyor.
+    * Her parça ayrı bir transaction, binlerce id'lik bir iş tabloda uzun süre lock tutmuyor ve yarıda kalırsa
+    * o ana kadar silinenler silinmiş kalıyor. Her parçadan sonra ilerleme progressListener'a bildiriliyor.*/
+    public PurgeProgressDto purgeUsers(List<Long> ids,Consumer<PurgeProgressDto> progressListener){
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        PurgeProgressDto progress = new PurgeProgressDto(distinctIds.size(),0,0);
+        for(int from = 0; from < distinctIds.size(); from += PURGE_CHUNK_SIZE){
+            List<Long> chunk = distinctIds.subList(from,Math.min(from + PURGE_CHUNK_SIZE,distinctIds.size()));
+            int deleted = 0;
+            for(Map.Entry<Integer, List<Long>> shardIds : userShardRouter.groupByShard(chunk, userShardRouter::shardOf).entrySet()){
+                deleted += userShardRouter.onShard(shardIds.getKey(), () -> purgeOnShard(shardIds.getValue()));
+            }
+            chunk.forEach(userCache::invalidate);
+            userSearchIndex.removeAll(chunk);
+            userSnapshot.invalidate(chunk);
+            progress = new PurgeProgressDto(distinctIds.size(),from + chunk.size(),progress.getDeleted() + deleted);
+            progressListener.accept(progress);
         }
-        else{
-            throw new UserNotFoundException("User couldn't be found by following id: "+id);
+        return progress;
+    }
+
+    /*Dönen değer silinen kullanıcı sayısı.*/
+    private int purgeOnShard(List<Long> ids){
+        List<String> deletedMails = new ArrayList<>();
+        Integer deleted = transactionTemplate.execute(status -> {
+            userChangeEventRepository.insertEvents(UserChangeType.DELETED.name(), ids);
+            deletedMails.addAll(findMailsForFilter(ids));
+            return userInformationRepository.deleteUsersByIdIn(ids);
+        });
+        //Eşzamanlı başka bir silme aynı satırların bir kısmını silmişse hangi mail'lerin bizim olduğunu bilmiyoruz.
+        //İki kez çıkarmak yerine filter'da bırakıyoruz, sadece yanlış pozitif.
+        if(deleted == deletedMails.size()){
+            mailBloomFilter.removeAll(deletedMails);
         }
+        return deleted;
+    }
+
+    /*JSON merge patch. Kullanıcı yüklenmeden sadece gönderilen alanlar tek bir UPDATE ile yazılıyor, commit'ten sonra
+    * güncel hali cache ve arama index'i için tekrar okunuyor. ifMatch GET'te dönen ETag ise UPDATE sadece version
+    * hala aynıysa uygulanıyor, arada biri kullanıcıyı güncellediyse 412 dönüyor.*/
+    public Versioned<UserDto> patchUser(String mail, Map<String, Object> patch, String ifMatch){
+        Map<String, String> changes = toChanges(patch);
+        UserVersion expected = ifMatch == null ? null : parseUserETag(ifMatch);
+        return onMailShard(mail, () -> patchUserOnShard(mail, changes, expected));
     }
 
-    //state'e bakıyorsa is, fiil eylem varsa does.
-    private boolean doesUserExist(Long id){
-        return userInformationRepository.existsById(id);
+    private Versioned<UserDto> patchUserOnShard(String mail, Map<String, String> changes, UserVersion expected){
+        if(changes.isEmpty()){
+            checkPatchable(findUserByMail(mail), expected);
+        } else if(transactionTemplate.execute(status -> patchAndRecord(mail, changes, expected)) == 0){
+            //Hangi koşulun tutmadığını anlamak için sadece hata durumunda okuyoruz.
+            checkPatchable(findUserByMail(mail), expected);
+            throw new UserVersionMismatchException("User has been modified concurrently, mail: " + mail);
+        }
+
+        UserInformation userInformation = findUserByMail(mail);
+        if(!changes.isEmpty()){
+            userCache.put(userInformation);
+            userSearchIndex.put(userInformation);
+            userSnapshot.put(userInformation);
+        }
+        return new Versioned<>(userDtoConverter.convert(userInformation),
+                eTag(userInformation.getId(), userInformation.getVersion()));
+    }
+
+    private int patchAndRecord(String mail, Map<String, String> changes, UserVersion expected){
+        int updated = userInformationRepository.patchUser(mail, changes, expected);
+        if(updated > 0){
+            userChangeEventRepository.insertEventsByMail(UserChangeType.UPDATED.name(), mail);
+        }
+        return updated;
+    }
+
+    private static Map<String, String> toChanges(Map<String, Object> patch){
+        Map<String, String> changes = new HashMap<>();
+        patch.forEach((field, value) -> {
+            if(!PATCHABLE_FIELDS.contains(field)){
+                throw new InvalidPatchException("Field can't be patched: " + field);
+            }
+            if(value == null){
+                //Diğer kayıtlarda olduğu gibi middleName'i null yerine boş bırakıyoruz.
+                if(!"middleName".equals(field)){
+                    throw new InvalidPatchException("Field can't be removed: " + field);
+                }
+                changes.put(field, "");
+            } else if(value instanceof String){
+                changes.put(field, (String) value);
+            } else {
+                throw new InvalidPatchException("Field must be a string: " + field);
+            }
+        });
+        return changes;
+    }
+
+    /*If-Match strong karşılaştırma istiyor, weak ya da bizim üretmediğimiz bir ETag hiçbir zaman eşleşmez.*/
+    private static UserVersion parseUserETag(String ifMatch){
+        if("*".equals(ifMatch.trim())){
+            return null;
+        }
+        Matcher matcher = USER_ETAG.matcher(ifMatch.trim());
+        if(!matcher.matches()){
+            throw new UserVersionMismatchException("If-Match doesn't match current user version: " + ifMatch);
+        }
+        return new UserVersion(Long.valueOf(matcher.group(1)), Long.valueOf(matcher.group(2)));
+    }
+
+    private void checkPatchable(UserInformation userInformation, UserVersion expected){
+        if(!userInformation.getActive()){
+            logger.warn(String.format("The user wanted update is not active!, user mail: %s",userInformation.getMail()));
+            throw new UserIsNotActiveException();
+        }
+        if(expected != null && !(expected.getId().equals(userInformation.getId())
+                && expected.getVersion().equals(userInformation.getVersion()))){
+            throw new UserVersionMismatchException("If-Match doesn't match current user version, mail: " + userInformation.getMail());
+        }
+    }
+
+    /*Mail ile gelen işlemler kullanıcının shard'ında çalışıyor.*/
+    private <T> T onMailShard(String mail, Supplier<T> action){
+        return userShardRouter.onShard(userShardRouter.shardOf(mail), action);
+    }
+
+    //Id'deki shard yoksa kullanıcı da yok.
+    private int shardOfUser(Long id){
+        int shard = userShardRouter.shardOf(id);
+        if(shard < 0){
+            throw new UserNotFoundException("User couldn't be found by following id: "+id);
+        }
+        return shard;
     }
 
     private UserInformation findUserByMail(String mail){
         return userInformationRepository.findByMail(mail).orElseThrow(()->new UserNotFoundException("User couldn't be found by following mail: "+mail));
     }
 
-    private UserInformation findUserById(Long id){
-        return userInformationRepository.findById(id).orElseThrow(()->new UserNotFoundException("User couldn't be found by following id: "+id));
+    /*Cache'e girmeyen okumalar. Transaction sadece cache miss'de açılıyor, cache hit bağlantı almıyor. Kullanıcı entity
+    * olarak yüklenmiyor, cache'e detached bir nesne giriyor. Yazma yolları findUserByMail ile kendi transaction'larında
+    * (primary'de) okumaya devam ediyor. Mail filter kesinlikle yok diyorsa sorgu atılmadan 404. Yeni açılmış bir
+    * instance'da cache boşken kullanıcılar map'lenmiş snapshot'dan geliyor.
+    * Okunan kullanıcı TTL boyunca cache'de kalıyor, bu yüzden okuma replica'ya değil primary'e gidiyor. Replica'dan
+    * okunsaydı max-lag kadar geride kalmış bir kullanıcı TTL boyunca, primary'e yapışık (sticky) client'lara da dönerdi.*/
+    private UserInformation readUserByMail(String mail){
+        if(!mailBloomFilter.mightContain(mail)){
+            throw new UserNotFoundException("User couldn't be found by following mail: "+mail);
+        }
+        Optional<UserInformation> snapshotUser = userSnapshot.find(mail);
+        if(snapshotUser.isPresent()){
+            return snapshotUser.get();
+        }
+        return onMailShard(mail, () -> transactionTemplate.execute(status -> userInformationRepository.findDetachedByMail(mail)))
+                .orElseThrow(()->new UserNotFoundException("User couldn't be found by following mail: "+mail));
     }
 
+    /*Önceden kullanıcıyı yükleyip yeni bir kopyasını save ediyorduk, merge yüzünden bir SELECT daha gidebiliyordu.
+    * Şimdi tek bir UPDATE atıyoruz. Hiçbir satır eşleşmediyse kullanıcı yok demektir.*/
     private void changeActivateUser(Long id,Boolean isActive){
-        UserInformation userInformation = findUserById(id);
+        userShardRouter.runOnShard(shardOfUser(id), () -> transactionTemplate.executeWithoutResult(status -> {
+            if(userInformationRepository.updateActive(id,isActive) == 0){
+                throw new UserNotFoundException("User couldn't be found by following id: "+id);
+            }
+            userChangeEventRepository.insertEvents(changeType(isActive).name(), List.of(id));
+        }));
+        userCache.invalidate(id);
+        userSearchIndex.setActive(List.of(id),isActive);
+        userSnapshot.invalidate(List.of(id));
+    }
 
-        UserInformation updatedUserInformation = new UserInformation(userInformation.getId(),
-                userInformation.getMail(),
-                userInformation.getFirstName(),
-                userInformation.getLastName(),
-                userInformation.getMiddleName(),
-                isActive);
+    /*Moderasyon taramaları için. Tüm id'ler tek bir UPDATE ... WHERE id IN (...) ile güncelleniyor.
+    * Var olmayan id'ler hata fırlatmıyor, updated ile requested arasındaki fark olarak görülüyor. Sharding açıksa her
+    * shard'ın id'leri kendi transaction'ında güncelleniyor, shard'lardan biri hata verirse öncekiler güncellenmiş kalıyor.*/
+    private BulkUpdateResultDto changeActivateUsers(List<Long> ids,Boolean isActive){
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        if(distinctIds.isEmpty()){
+            return new BulkUpdateResultDto(0,0);
+        }
+        int updated = 0;
+        for(Map.Entry<Integer, List<Long>> shardIds : userShardRouter.groupByShard(distinctIds, userShardRouter::shardOf).entrySet()){
+            Set<Long> idsOnShard = new LinkedHashSet<>(shardIds.getValue());
+            updated += userShardRouter.onShard(shardIds.getKey(), () -> transactionTemplate.execute(status -> {
+                int count = userInformationRepository.updateActiveByIdIn(idsOnShard,isActive);
+                userChangeEventRepository.insertEvents(changeType(isActive).name(), idsOnShard);
+                return count;
+            }));
+        }
+        distinctIds.forEach(userCache::invalidate);
+        userSearchIndex.setActive(distinctIds,isActive);
+        userSnapshot.invalidate(distinctIds);
+        return new BulkUpdateResultDto(distinctIds.size(),updated);
+    }
+
+    private static UserChangeType changeType(Boolean isActive){
+        return isActive ? UserChangeType.ACTIVATED : UserChangeType.DEACTIVATED;
+    }
+
+    /*Arama veritabanına gitmiyor, UserSearchIndex'den sıralı olarak dönüyor. Index kapalıysa arama yok.*/
+    public List<UserDto> searchUsers(String query,int limit,boolean activeOnly){
+        if(!userSearchIndex.isEnabled()){
+            throw new UserSearchDisabledException("User search is disabled, set user.search.enabled=true to enable it");
+        }
+        if(query == null || query.trim().length() < UserSearchIndex.MIN_TERM_LENGTH){
+            throw new InvalidSearchQueryException("Search query must have at least " + UserSearchIndex.MIN_TERM_LENGTH
+                    + " characters");
+        }
+        int searchLimit = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+        return userDtoConverter.convert(userSearchIndex.search(query, searchLimit, activeOnly));
+    }
 
-        userInformationRepository.save(updatedUserInformation);
+    public UserCacheStatsDto getUserCacheStats(){
+        return userCache.stats();
+    }
+
+    private static final class ImportRow {
+        private final long row;
+        private final UserInformation user;
+
+        private ImportRow(long row, UserInformation user) {
+            this.row = row;
+            this.user = user;
+        }
+    }
+
+    private static final class BulkImport {
+        private long received;
+        private long imported;
+        private long failed;
+        private final List<BulkImportFailureDto> failures = new ArrayList<>();
+
+        private void fail(long row, String mail, String reason){
+            failed++;
+            if(failures.size() < MAX_REPORTED_FAILURES){
+                failures.add(new BulkImportFailureDto(row, mail, reason));
+            }
+        }
     }
-}
+}
\ No newline at end of file
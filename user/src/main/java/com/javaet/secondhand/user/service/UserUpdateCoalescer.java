@@ -0,0 +1,170 @@
+package com.javaet.secondhand.user.service;
+
+import com.javaet.secondhand.user.cache.MailBloomFilter;
+import com.javaet.secondhand.user.dto.UpdateUserRequest;
+import com.javaet.secondhand.user.dto.UserDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/*PUT /v1/user/{mail} için write-behind (user.write-behind.enabled). Bir kullanıcıya gelen ilk güncelleme window kadar
+* bekletiliyor, bu sürede aynı kullanıcıya gelenler onunla birleştiriliyor ve sadece sonuncusu tek bir transaction ile
+* yazılıyor. PUT kullanıcının tüm alanlarını değiştirdiği için son güncelleme öncekileri zaten eziyor. Birleştirilen
+* güncellemelerin hepsinin future'ı yazılan son halle tamamlanıyor.
+*
+* Aynı kullanıcı için aynı anda tek bir yazma çalışıyor. Yazma sürerken gelenler bir sonraki yazmaya birikiyor, yani
+* güncellemeler kullanıcı başına geliş sırasıyla uygulanıyor. Farklı kullanıcıların yazmaları paralel. Kuyruklar
+* normalize edilmiş mail ile tutuluyor, veritabanı aynı kullanıcı saydığı için büyük/küçük harfi ya da aksanı farklı
+* yazılan mail'ler de aynı kuyruğa giriyor.
+*
+* Future'lar transaction commit olunca tamamlanıyor. Henüz yazılmamış güncellemeler sadece bellekte, process çökerse
+* kaybolur. Kapanırken bekleyenler yazılıyor.*/
+@Component
+public class UserUpdateCoalescer implements MeterBinder, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(UserUpdateCoalescer.class);
+
+    private final BiFunction<String, UpdateUserRequest, UserDto> writer;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, KeyQueue> queues = new ConcurrentHashMap<>();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private volatile boolean closed;
+
+    @Autowired
+    public UserUpdateCoalescer(UserService userService,
+                               @Value("${user.write-behind.enabled:false}") boolean enabled,
+                               @Value("${user.write-behind.window:50ms}") Duration window,
+                               @Value("${user.write-behind.threads:4}") int threads) {
+        this(userService::updateUser, enabled, window, threads);
+    }
+
+    UserUpdateCoalescer(BiFunction<String, UpdateUserRequest, UserDto> writer, boolean enabled, Duration window, int threads) {
+        this.writer = writer;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        //Thread'ler ilk güncellemede oluşuyor, kapalıyken thread açılmıyor.
+        this.executor = Executors.newScheduledThreadPool(threads, new CustomizableThreadFactory("user-write-behind-"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<UserDto> submit(String mail, UpdateUserRequest request){
+        CompletableFuture<UserDto> future = new CompletableFuture<>();
+        updates.increment();
+        while(true){
+            KeyQueue queue = queues.computeIfAbsent(MailBloomFilter.normalize(mail), key -> new KeyQueue(key, mail));
+            synchronized (queue){
+                //Yazması bitip map'den çıkarılmış bir kuyruk, yenisini alıyoruz.
+                if(queue.removed){
+                    continue;
+                }
+                if(closed){
+                    throw new IllegalStateException("Write-behind is closed");
+                }
+                if(queue.pending == null){
+                    queue.pending = new Pending();
+                    if(!queue.scheduled){
+                        queue.scheduled = true;
+                        executor.schedule(() -> flush(queue), windowNanos, TimeUnit.NANOSECONDS);
+                    }
+                }
+                queue.pending.request = request;
+                queue.pending.waiters.add(future);
+                return future;
+            }
+        }
+    }
+
+    /*Bekleyen kalmayana kadar yazıyor. Bir yazma sürerken biriken güncellemeler tekrar window beklemeden yazılıyor.*/
+    private void flush(KeyQueue queue){
+        while(true){
+            Pending batch;
+            synchronized (queue){
+                batch = queue.pending;
+                queue.pending = null;
+                if(batch == null){
+                    queue.scheduled = false;
+                    queue.removed = true;
+                    queues.remove(queue.key, queue);
+                    return;
+                }
+            }
+            writes.increment();
+            try {
+                UserDto user = writer.apply(queue.mail, batch.request);
+                batch.waiters.forEach(waiter -> waiter.complete(user));
+            } catch (RuntimeException e) {
+                logger.warn(String.format("Write-behind update failed, user mail: %s", queue.mail), e);
+                batch.waiters.forEach(waiter -> waiter.completeExceptionally(e));
+            }
+        }
+    }
+
+    /*Gecikmeli görevler shutdown'dan sonra da çalışıyor (ScheduledThreadPoolExecutor'ın varsayılanı), bekleyenler yazılıyor.*/
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            if(!executor.awaitTermination(30, TimeUnit.SECONDS)){
+                logger.warn("Write-behind updates could not be written before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("user.write.behind.updates", updates, LongAdder::sum)
+                .description("Updates submitted to write-behind").register(registry);
+        FunctionCounter.builder("user.write.behind.writes", writes, LongAdder::sum)
+                .description("Coalesced writes to the database").register(registry);
+        Gauge.builder("user.write.behind.pending.users", queues, ConcurrentMap::size)
+                .description("Users with a pending or running write").register(registry);
+    }
+
+    private static final class KeyQueue {
+        private final String key;
+        //Kuyruğu açan güncellemenin yazıldığı hali, yazma bu mail ile yapılıyor.
+        private final String mail;
+        private Pending pending;
+        //Flush görevi zamanlanmış ya da çalışıyor.
+        private boolean scheduled;
+        private boolean removed;
+
+        private KeyQueue(String key, String mail) {
+            this.key = key;
+            this.mail = mail;
+        }
+    }
+
+    private static final class Pending {
+        private UpdateUserRequest request;
+        private final List<CompletableFuture<UserDto>> waiters = new ArrayList<>();
+    }
+}
@@ -0,0 +1,285 @@
+package com.javaet.secondhand.user.snapshot;
+
+import com.javaet.secondhand.user.dto.UserChangeEventDto;
+import com.javaet.secondhand.user.dto.UserChangePageDto;
+import com.javaet.secondhand.user.exception.ChangeCursorExpiredException;
+import com.javaet.secondhand.user.model.UserChangeType;
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.service.UserChangeService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*Yeni açılan bir instance'ın cache'leri soğukken findByMail'lerin veritabanına gitmemesi için. Startup'ta
+* UserSnapshotWriter'ın yazdığı dosya map'leniyor, snapshot'dan sonraki değişiklikler change akışından
+* (GET /v1/user/changes'ın okuduğu yer) okunup bellekteki bir overlay'e işleniyor. Akış basePosition'dan bugüne
+* yetiştikten sonra mail okumaları önce buradan cevaplanıyor.
+*
+* Aynı kullanıcının iki hali (id, version) ile karşılaştırılıyor: id büyük olan yeni (silinip tekrar yaratılan mail'in
+* id'si büyüyor), id aynıysa silinmiş olan ya da version'ı büyük olan. Böylece event'lerin tekrar ya da bu instance'ın
+* kendi yazmalarından sonra gelmesi sorun olmuyor.
+*
+* Sadece bulunan kullanıcılar buradan dönüyor. Mail snapshot'da yoksa, silinmişse ya da akış yetişemediyse okuma
+* veritabanına gidiyor. Diğer instance'ların yazmaları catch-up-interval ve relay gecikmesi kadar geç görünüyor,
+* replica'dan okumadaki gibi. Bu instance'ın mail ile yaptığı yazmalar put ile hemen, sadece id ile yaptığı yazmalar
+* (aktivasyon, silme) invalidate ile o id'nin snapshot kaydı kullanılmayarak görünüyor.*/
+@Component
+public class UserSnapshot implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSnapshot.class);
+    private static final int CATCH_UP_LIMIT = UserChangeService.MAX_CHANGES_LIMIT;
+
+    private final UserChangeService userChangeService;
+    private final boolean enabled;
+    private final Path path;
+
+    private volatile UserSnapshotFile file;
+    private volatile boolean caughtUp;
+    private long cursor;
+    private final ConcurrentMap<String, Entry> overlay = new ConcurrentHashMap<>();
+    //Bu instance'ın sadece id ile değiştirdiği kullanıcılar. Snapshot'daki kayıtları ve o ana kadar gelen halleri eski.
+    private final ConcurrentMap<Long, Invalidation> invalidatedIds = new ConcurrentHashMap<>();
+    //Overlay'e eklemeler ve invalidate'ler arasındaki sıra için. Instant.now() aynı anda iki kez aynı değeri dönebiliyor.
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UserSnapshot(UserChangeService userChangeService,
+                        @Value("${user.snapshot.enabled:false}") boolean enabled,
+                        @Value("${user.snapshot.path:user-snapshot.bin}") Path path) {
+        this.userChangeService = userChangeService;
+        this.enabled = enabled;
+        this.path = path;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load(){
+        if(!enabled){
+            return;
+        }
+        if(!Files.exists(path)){
+            logger.info("No user snapshot found at " + path.toAbsolutePath() + ", mail lookups will query the database");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            swap(UserSnapshotFile.open(path));
+        } catch (IOException e) {
+            logger.warn("User snapshot could not be opened, mail lookups will query the database", e);
+            return;
+        }
+        //Veritabanına ulaşılamazsa startup durmasın, scheduledCatchUp tekrar deniyor. O zamana kadar snapshot kullanılmıyor.
+        try {
+            catchUp();
+        } catch (RuntimeException e) {
+            logger.warn("User snapshot catch-up failed, it will be retried: " + e.getMessage());
+            return;
+        }
+        UserSnapshotFile loaded = file;
+        if(loaded != null){
+            logger.info(String.format("User snapshot with %d users from %s loaded and caught up in %d ms",
+                    loaded.size(), loaded.getCreatedAt(), (System.nanoTime() - start) / 1_000_000));
+        }
+    }
+
+    /*UserSnapshotWriter yeni bir dosya yazınca çağırıyor.*/
+    public void reload(){
+        if(!enabled){
+            return;
+        }
+        try {
+            swap(UserSnapshotFile.open(path));
+        } catch (IOException e) {
+            logger.warn("New user snapshot could not be opened, keeping the current one", e);
+            return;
+        }
+        catchUp();
+    }
+
+    @Scheduled(fixedDelayString = "${user.snapshot.catch-up-interval:PT1S}")
+    public void scheduledCatchUp(){
+        if(file == null){
+            return;
+        }
+        try {
+            catchUp();
+        } catch (RuntimeException e) {
+            logger.warn("User snapshot catch-up failed, it will be retried: " + e.getMessage());
+        }
+    }
+
+    /*Akışın sonuna kadar okuyor. Snapshot'dan sonraki değişiklikler retention yüzünden silinmişse snapshot'ın yerini
+    * tutamayacağımız bir boşluk var demektir, yeni bir snapshot yüklenene kadar kullanılmıyor.*/
+    synchronized void catchUp(){
+        UserSnapshotFile current = file;
+        if(current == null){
+            return;
+        }
+        try {
+            while(true){
+                UserChangePageDto page = userChangeService.getChanges(cursor, CATCH_UP_LIMIT);
+                page.getChanges().forEach(this::apply);
+                cursor = page.getNextCursor();
+                if(!page.getHasMore()){
+                    break;
+                }
+            }
+        } catch (ChangeCursorExpiredException e) {
+            logger.warn("User snapshot is older than the change retention, it is disabled until a new one is loaded: "
+                    + e.getMessage());
+            file = null;
+            caughtUp = false;
+            return;
+        }
+        caughtUp = true;
+    }
+
+    /*Kullanıcı yoksa ya da snapshot kullanılamıyorsa boş döner, çağıran veritabanına gitmeli.*/
+    public Optional<UserInformation> find(String mail){
+        UserSnapshotFile current = file;
+        if(!caughtUp || current == null){
+            return Optional.empty();
+        }
+        Entry entry = overlay.get(mail);
+        UserInformation record = current.find(mail);
+        UserInformation user;
+        if(entry != null && (record == null || entry.isNewerThan(record))){
+            user = entry.deleted || isInvalidated(entry.user.getId(), entry.sequence) ? null : entry.user;
+        }
+        else{
+            user = record == null || isInvalidated(record.getId(), -1) ? null : record;
+        }
+        if(user == null){
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(user);
+    }
+
+    //Id invalidate edildikten sonra akıştan ya da put ile gelen hali kullanılabilir.
+    private boolean isInvalidated(Long id, long mergedSequence){
+        Invalidation invalidation = invalidatedIds.get(id);
+        return invalidation != null && mergedSequence < invalidation.sequence;
+    }
+
+    public void put(UserInformation user){
+        if(enabled){
+            merge(user, false);
+        }
+    }
+
+    public void invalidate(Collection<Long> ids){
+        if(enabled){
+            Instant now = Instant.now();
+            ids.forEach(id -> invalidatedIds.put(id, new Invalidation(sequence.incrementAndGet(), now)));
+        }
+    }
+
+    public boolean isReady(){
+        return caughtUp && file != null;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("user.snapshot.hits", hits, LongAdder::sum)
+                .description("Mail lookups answered from the user snapshot").register(registry);
+        FunctionCounter.builder("user.snapshot.misses", misses, LongAdder::sum)
+                .description("Mail lookups that fell back to the database").register(registry);
+        Gauge.builder("user.snapshot.overlay.size", overlay, Map::size)
+                .description("Users changed since the snapshot").register(registry);
+        Gauge.builder("user.snapshot.users", this, snapshot -> {
+            UserSnapshotFile current = snapshot.file;
+            return current == null ? 0 : current.size();
+        }).description("Users in the mapped snapshot").register(registry);
+    }
+
+    /*Yeni dosyanın basePosition'ından devam ediliyor. Overlay'de yeni dosyadaki kayıttan eski olanlar ve dosya
+    * yazılmaya başlamadan önce invalidate edilen id'ler artık gereksiz.*/
+    private synchronized void swap(UserSnapshotFile next){
+        cursor = next.getBasePosition();
+        overlay.entrySet().removeIf(mapEntry -> {
+            UserInformation user = next.find(mapEntry.getKey());
+            return user != null && !mapEntry.getValue().isNewerThan(user);
+        });
+        invalidatedIds.values().removeIf(invalidation -> invalidation.invalidatedAt.isBefore(next.getCreatedAt()));
+        file = next;
+    }
+
+    private void apply(UserChangeEventDto event){
+        UserInformation user = new UserInformation(event.getUserId(), event.getMail(), event.getFirstName(),
+                event.getLastName(), event.getMiddleName(), event.getActive(), event.getVersion());
+        merge(user, event.getType() == UserChangeType.DELETED);
+    }
+
+    private void merge(UserInformation user, boolean deleted){
+        Entry entry = new Entry(user, deleted, sequence.incrementAndGet());
+        overlay.merge(user.getMail(), entry, (current, next) -> next.isNewerThan(current) ? next : current);
+    }
+
+    private static final class Invalidation {
+        private final long sequence;
+        private final Instant invalidatedAt;
+
+        private Invalidation(long sequence, Instant invalidatedAt) {
+            this.sequence = sequence;
+            this.invalidatedAt = invalidatedAt;
+        }
+    }
+
+    private static final class Entry {
+        private final UserInformation user;
+        private final boolean deleted;
+        private final long sequence;
+
+        private Entry(UserInformation user, boolean deleted, long sequence) {
+            this.user = user;
+            this.deleted = deleted;
+            this.sequence = sequence;
+        }
+
+        private boolean isNewerThan(Entry other){
+            return compare(other.user, other.deleted) >= 0;
+        }
+
+        //Snapshot'daki kayıtla aynıysa kayıt kullanılıyor, o id invalidate edildiyse aynı hal hala eski demektir.
+        private boolean isNewerThan(UserInformation other){
+            return compare(other, false) > 0;
+        }
+
+        private int compare(UserInformation other, boolean otherDeleted){
+            int comparison = Long.compare(user.getId(), other.getId());
+            if(comparison == 0){
+                comparison = Boolean.compare(deleted, otherDeleted);
+            }
+            if(comparison == 0){
+                comparison = Long.compare(version(user), version(other));
+            }
+            return comparison;
+        }
+
+        private static long version(UserInformation user){
+            return user.getVersion() == null ? -1 : user.getVersion();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.javaet.secondhand.user.snapshot;
+
+import com.javaet.secondhand.user.model.UserInformation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/*Kullanıcı dizininin mail'e göre sıralı, salt okunur binary snapshot'ı. Dosya FileChannel.map ile belleğe map'leniyor,
+* açmak dosyanın boyutundan bağımsız olarak anlık. Arama map'lenmiş buffer üzerinde binary search, mail byte'ları
+* yerinde karşılaştırılıyor. Sadece bulunan kayıt UserInformation'a dönüştürülüyor, heap'e başka bir şey alınmıyor.
+*
+* Format (big endian):
+* - Header: magic, format version, kayıt sayısı, boş int, basePosition (long), createdAt (epoch millis).
+* - Kayıt sayısı kadar int offset, kayıtların mail'lerinin UTF-8 byte'larına göre sıralı.
+* - Kayıtlar: mail, id, version, active, firstName, lastName, middleName. String'ler short uzunluk + UTF-8 byte'lar,
+*   null ise uzunluk -1.
+*
+* basePosition snapshot'a giren son değişikliğin akıştaki position'ı. Ondan sonraki değişiklikler UserSnapshot'da
+* change akışından tamamlanıyor. Offset'ler int olduğu için dosya 2GB'ı geçemiyor (kayıt başına ~60 byte ile ~35M kullanıcı).*/
+final class UserSnapshotFile {
+
+    static final int MAGIC = 0x55534E50;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long basePosition;
+    private final Instant createdAt;
+
+    private UserSnapshotFile(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.basePosition = buffer.getLong(16);
+        this.createdAt = Instant.ofEpochMilli(buffer.getLong(24));
+    }
+
+    static UserSnapshotFile open(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE){
+                throw new IOException("Invalid user snapshot size: " + channel.size());
+            }
+            //Map'lenen bölge channel kapandıktan sonra da geçerli.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION){
+                throw new IOException("Not a user snapshot or unsupported format: " + path);
+            }
+            if(HEADER_SIZE + (long) buffer.getInt(8) * Integer.BYTES > channel.size()){
+                throw new IOException("Truncated user snapshot: " + path);
+            }
+            return new UserSnapshotFile(path, buffer);
+        }
+    }
+
+    /*Mail'in tam olarak (byte byte) eşleştiği kayıt, yoksa null.*/
+    UserInformation find(String mail){
+        byte[] key = mail.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            int offset = buffer.getInt(HEADER_SIZE + middle * Integer.BYTES);
+            int comparison = compareMail(buffer, offset, key);
+            if(comparison < 0){
+                low = middle + 1;
+            }
+            else if(comparison > 0){
+                high = middle - 1;
+            }
+            else{
+                return read(offset);
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return count;
+    }
+
+    long getBasePosition() {
+        return basePosition;
+    }
+
+    Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long fileSize(){
+        return buffer.capacity();
+    }
+
+    private UserInformation read(int offset){
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        String mail = readString(record);
+        long id = record.getLong();
+        long version = record.getLong();
+        boolean active = record.get() != 0;
+        return new UserInformation(id, mail, readString(record), readString(record), readString(record), active, version);
+    }
+
+    /*Kayıttaki mail key'den küçükse negatif. Byte'lar işaretsiz karşılaştırılıyor, yazarken de aynı sıra kullanılıyor.*/
+    private static int compareMail(ByteBuffer buffer, int offset, byte[] key){
+        int length = buffer.getShort(offset);
+        int start = offset + Short.BYTES;
+        int common = Math.min(length, key.length);
+        for(int i = 0; i < common; i++){
+            int comparison = Integer.compare(buffer.get(start + i) & 0xff, key[i] & 0xff);
+            if(comparison != 0){
+                return comparison;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static String readString(ByteBuffer record){
+        int length = record.getShort();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*Kullanıcılar geldiği sırayla (id sırası) geçici bir dosyaya yazılıyor, heap'de sadece kayıtların offset'leri
+    * tutuluyor. Offset'ler geçici dosya map'lenerek mail'e göre sıralanıyor, sonra header, offset'ler ve kayıtlar asıl
+    * dosyanın yanında bir .tmp'ye yazılıp atomik olarak yerine taşınıyor. Okuyanlar yarım bir dosya görmüyor.*/
+    static int write(Path target, long basePosition, Instant createdAt, Iterator<UserInformation> users) throws IOException {
+        Path records = target.resolveSibling(target.getFileName() + ".records.tmp");
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            int[] offsets = new int[1024];
+            int count = 0;
+            long size = 0;
+            try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(records), 1 << 16))){
+                while(users.hasNext()){
+                    UserInformation user = users.next();
+                    if(count == offsets.length){
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                    }
+                    offsets[count++] = (int) size;
+                    size += writeRecord(output, user);
+                    if(HEADER_SIZE + (long) count * Integer.BYTES + size > Integer.MAX_VALUE){
+                        throw new IOException("User snapshot would exceed 2GB");
+                    }
+                }
+            }
+
+            int dataStart = HEADER_SIZE + count * Integer.BYTES;
+            try(FileChannel recordChannel = FileChannel.open(records, StandardOpenOption.READ);
+                FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)){
+                Integer[] sorted = sortByMail(recordChannel, offsets, count);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt(0)
+                        .putLong(basePosition).putLong(createdAt.toEpochMilli());
+                writeFully(output, header.flip());
+                ByteBuffer index = ByteBuffer.allocate(1 << 16);
+                for(Integer offset : sorted){
+                    if(!index.hasRemaining()){
+                        writeFully(output, index.flip());
+                        index.clear();
+                    }
+                    index.putInt(dataStart + offset);
+                }
+                writeFully(output, index.flip());
+
+                long transferred = 0;
+                while(transferred < size){
+                    transferred += recordChannel.transferTo(transferred, size - transferred, output);
+                }
+                output.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(records);
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Integer[] sortByMail(FileChannel recordChannel, int[] offsets, int count) throws IOException {
+        Integer[] sorted = new Integer[count];
+        for(int i = 0; i < count; i++){
+            sorted[i] = offsets[i];
+        }
+        if(count > 1){
+            MappedByteBuffer recordBuffer = recordChannel.map(FileChannel.MapMode.READ_ONLY, 0, recordChannel.size());
+            Arrays.sort(sorted, (first, second) -> compareMails(recordBuffer, first, second));
+        }
+        return sorted;
+    }
+
+    private static int compareMails(ByteBuffer buffer, int first, int second){
+        int firstLength = buffer.getShort(first);
+        int secondLength = buffer.getShort(second);
+        int common = Math.min(firstLength, secondLength);
+        for(int i = 0; i < common; i++){
+            int comparison = Integer.compare(buffer.get(first + Short.BYTES + i) & 0xff,
+                    buffer.get(second + Short.BYTES + i) & 0xff);
+            if(comparison != 0){
+                return comparison;
+            }
+        }
+        return Integer.compare(firstLength, secondLength);
+    }
+
+    private static int writeRecord(DataOutputStream output, UserInformation user) throws IOException {
+        int size = writeString(output, user.getMail());
+        output.writeLong(user.getId());
+        output.writeLong(user.getVersion() == null ? 0 : user.getVersion());
+        output.writeBoolean(Boolean.TRUE.equals(user.getActive()));
+        size += Long.BYTES * 2 + 1;
+        size += writeString(output, user.getFirstName());
+        size += writeString(output, user.getLastName());
+        size += writeString(output, user.getMiddleName());
+        return size;
+    }
+
+    private static int writeString(DataOutputStream output, String value) throws IOException {
+        if(value == null){
+            output.writeShort(-1);
+            return Short.BYTES;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > Short.MAX_VALUE){
+            throw new IOException("Value too long for user snapshot: " + bytes.length + " bytes");
+        }
+        output.writeShort(bytes.length);
+        output.write(bytes);
+        return Short.BYTES + bytes.length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+}
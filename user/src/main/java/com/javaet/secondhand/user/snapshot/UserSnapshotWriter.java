@@ -0,0 +1,86 @@
+package com.javaet.secondhand.user.snapshot;
+
+import com.javaet.secondhand.user.model.UserInformation;
+import com.javaet.secondhand.user.repository.UserChangeEventRepository;
+import com.javaet.secondhand.user.repository.UserInformationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+/*Snapshot dosyasını periyodik olarak tablonun tek bir taramasından yeniden yazıyor. Dosyayı paylaşılan bir volume'a
+* sadece bir instance'ın yazması yeterli (user.snapshot.writer.enabled), yeni açılan instance'lar oradan okuyor.
+*
+* Önce akıştaki son position okunuyor, sonra tablo taranıyor. Position'ı olan her event'in yazması relay'den önce
+* commit olduğu için taramada görünüyor. Tarama sırasında olan değişiklikler basePosition'dan sonra geliyor, akıştan
+* tekrar uygulanmaları sorun değil. Tarama replica gecikmesinden etkilenmesin diye primary'den yapılıyor.*/
+@Component
+public class UserSnapshotWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSnapshotWriter.class);
+
+    private final UserInformationRepository userInformationRepository;
+    private final UserChangeEventRepository userChangeEventRepository;
+    private final UserSnapshot userSnapshot;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path path;
+
+    public UserSnapshotWriter(UserInformationRepository userInformationRepository,
+                              UserChangeEventRepository userChangeEventRepository, UserSnapshot userSnapshot,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${user.snapshot.writer.enabled:false}") boolean enabled,
+                              @Value("${user.snapshot.path:user-snapshot.bin}") Path path) {
+        this.userInformationRepository = userInformationRepository;
+        this.userChangeEventRepository = userChangeEventRepository;
+        this.userSnapshot = userSnapshot;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.path = path;
+    }
+
+    @Scheduled(initialDelayString = "${user.snapshot.writer.initial-delay:PT1M}",
+            fixedDelayString = "${user.snapshot.writer.interval:PT1H}")
+    public void scheduledWrite(){
+        if(!enabled){
+            return;
+        }
+        try {
+            write();
+        } catch (RuntimeException e) {
+            logger.warn("User snapshot could not be written, it will be retried: " + e.getMessage());
+        }
+    }
+
+    /*Dönen değer snapshot'a yazılan kullanıcı sayısı.*/
+    public int write(){
+        long start = System.nanoTime();
+        //Bu andan önce invalidate edilen id'lerin son hali taramada görünecek.
+        Instant createdAt = Instant.now();
+        long basePosition = transactionTemplate.execute(status -> userChangeEventRepository.findLastPosition()).orElse(0L);
+        Integer count = transactionTemplate.execute(status -> {
+            try(Stream<UserInformation> users = userInformationRepository.streamAllDetached()){
+                if(path.toAbsolutePath().getParent() != null){
+                    Files.createDirectories(path.toAbsolutePath().getParent());
+                }
+                return UserSnapshotFile.write(path, basePosition, createdAt, users.iterator());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        logger.info(String.format("User snapshot with %d users written to %s in %d ms", count, path.toAbsolutePath(),
+                (System.nanoTime() - start) / 1_000_000));
+        userSnapshot.reload();
+        return count;
+    }
+}
@@ -0,0 +1,6 @@
+-- MySQL. ddl-auto kullanılmayan ortamlarda elle çalıştırılır.
+-- Hibernate'in ürettiği isimsiz unique constraint'in adı UserInformation'daki @Index ile aynı hale getiriliyor.
+ALTER TABLE user_information RENAME INDEX UK_qg58311f9ogakv5xkba3ssa71 TO ux_user_information_mail;
+
+-- Aktif kullanıcıların id sırasıyla sayfalanması için.
+CREATE INDEX ix_user_information_active_id ON user_information (is_active, id);
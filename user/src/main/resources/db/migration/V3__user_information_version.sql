@@ -0,0 +1,2 @@
+-- UserInformation.version (@Version). Var olan kayıtlar 0 ile başlıyor.
+ALTER TABLE user_information ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
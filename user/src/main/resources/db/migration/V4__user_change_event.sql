@@ -0,0 +1,22 @@
+-- MySQL. UserChangeEvent outbox tablosu.
+CREATE TABLE user_change_event (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    stream_position BIGINT,
+    type VARCHAR(255),
+    user_id BIGINT,
+    mail VARCHAR(255),
+    first_name VARCHAR(255),
+    last_name VARCHAR(255),
+    middle_name VARCHAR(255),
+    is_active BIT,
+    version BIGINT,
+    occurred_at DATETIME(6),
+    published_at DATETIME(6),
+    PRIMARY KEY (id)
+);
+
+-- Relay yayınlanmamış (stream_position IS NULL) satırları, GET /v1/user/changes de position aralığını bu index'den okuyor.
+CREATE UNIQUE INDEX ux_user_change_event_position ON user_change_event (stream_position);
+
+-- Retention silmesi için.
+CREATE INDEX ix_user_change_event_published_at ON user_change_event (published_at);
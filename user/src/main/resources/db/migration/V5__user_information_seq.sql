@@ -0,0 +1,9 @@
+-- MySQL. UserInformation.id artık AUTO_INCREMENT yerine pooled sequence ile veriliyor (50'şer blok). MySQL sequence
+-- desteklemediği için hibernate bunu user_information_seq tablosu ile taklit ediyor.
+CREATE TABLE user_information_seq (
+    next_val BIGINT
+);
+
+-- Pooled optimizer okuduğu değerden increment_size - 1 geriye giderek blok veriyor. next_val max(id) + 50 ile
+-- başlatılmazsa yeni id'ler var olan kayıtlarla çakışıyor. Script çalışırken insert yapılmamalı.
+INSERT INTO user_information_seq (next_val) SELECT COALESCE(MAX(id), 0) + 50 FROM user_information;